@@ -20,7 +20,6 @@
 package org.openremote.agent.protocol;
 
 import org.apache.camel.ProducerTemplate;
-import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.impl.DefaultCamelContext;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.timer.TimerService;
@@ -43,7 +42,6 @@ import org.openremote.model.util.TextUtil;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static org.openremote.model.protocol.ProtocolUtil.hasDynamicWriteValue;
@@ -76,33 +74,7 @@ public abstract class AbstractProtocol<T extends Agent<T, ?, U>, U extends Agent
         datapointService = container.getService(ProtocolDatapointService.class);
         messageBrokerContext = container.getService(MessageBrokerService.class).getContext();
 
-        // TODO: Priority should each protocol instance have its' own camel route
         try {
-            messageBrokerContext.addRoutes(new RouteBuilder() {
-                @Override
-                public void configure() throws Exception {
-                    from(ACTUATOR_TOPIC)
-                        .routeId("ProtocolInbound-" + getProtocolName() + getAgent().getId())
-                        .process(exchange -> {
-                            final Protocol<?> protocolInstance = exchange.getIn().getHeader(ACTUATOR_TOPIC_TARGET_PROTOCOL, Protocol.class);
-                            if (protocolInstance != AbstractProtocol.this) {
-                                return;
-                            }
-                            synchronized (this) {
-                                AttributeEvent event = exchange.getIn().getBody(AttributeEvent.class);
-                                Attribute<?> linkedAttribute = getLinkedAttributes().get(event.getAttributeRef());
-
-                                if (linkedAttribute == null) {
-                                    LOG.log(System.Logger.Level.INFO, () -> "Attempt to write to attribute that is not actually linked to this protocol '" + AbstractProtocol.this + "': " + event);
-                                    return;
-                                }
-
-                                processLinkedAttributeWrite(linkedAttribute, event);
-                            }
-                        });
-                }
-            });
-
             doStart(container);
 
         } catch (Exception ex) {
@@ -115,9 +87,6 @@ public abstract class AbstractProtocol<T extends Agent<T, ?, U>, U extends Agent
     final public void stop(Container container) {
         linkedAttributes.clear();
         try {
-            messageBrokerContext.stopRoute("Actuator-" + getProtocolName(), 1, TimeUnit.MILLISECONDS);
-            messageBrokerContext.removeRoute("Actuator-" + getProtocolName());
-
             doStop(container);
 
         } catch (Exception ex) {
@@ -170,6 +139,19 @@ public abstract class AbstractProtocol<T extends Agent<T, ?, U>, U extends Agent
         return linkedAttributes;
     }
 
+    @Override
+    final public boolean processLinkedAttributeWrite(AttributeEvent event) {
+        Attribute<?> linkedAttribute = getLinkedAttributes().get(event.getAttributeRef());
+
+        if (linkedAttribute == null) {
+            LOG.log(System.Logger.Level.INFO, () -> "Attempt to write to attribute that is not actually linked to this protocol '" + this + "': " + event);
+            return true;
+        }
+
+        processLinkedAttributeWrite(linkedAttribute, event);
+        return true;
+    }
+
     final protected void processLinkedAttributeWrite(Attribute<?> attribute, AttributeEvent event) {
         LOG.log(System.Logger.Level.TRACE, () -> "Processing linked attribute write on protocol '" + this + "': " + event);
         AgentLink<?> agentLink = agent.getAgentLink(attribute);
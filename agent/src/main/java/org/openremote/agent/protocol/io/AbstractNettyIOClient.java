@@ -185,7 +185,14 @@ public abstract class AbstractNettyIOClient<T, U extends SocketAddress> implemen
 
     protected abstract Class<? extends Channel> getChannelClass();
 
-    protected abstract EventLoopGroup getWorkerGroup();
+    /**
+     * Get the {@link EventLoopGroup} for the channel; defaults to the group shared by all IO clients and servers (see
+     * {@link NettyEventLoopService}) in which case {@link #getChannelClass} must return a channel type that matches
+     * its' transport. A group returned by an override is shut down on disconnect.
+     */
+    protected EventLoopGroup getWorkerGroup() {
+        return NettyEventLoopService.getEventLoopGroup();
+    }
 
     protected abstract ChannelFuture startChannel();
 
@@ -256,7 +263,6 @@ public abstract class AbstractNettyIOClient<T, U extends SocketAddress> implemen
         LOG.info("Establishing connection: " + getClientUri());
 
         if (workerGroup == null) {
-            // TODO: In Netty 5 you can pass in an executor service; can only pass in thread factory for now
             workerGroup = getWorkerGroup();
         }
 
@@ -359,7 +365,9 @@ public abstract class AbstractNettyIOClient<T, U extends SocketAddress> implemen
             }
         } finally {
             if (workerGroup != null) {
-                workerGroup.shutdownGracefully();
+                if (!NettyEventLoopService.isSharedEventLoopGroup(workerGroup)) {
+                    workerGroup.shutdownGracefully();
+                }
                 workerGroup = null;
             }
         }
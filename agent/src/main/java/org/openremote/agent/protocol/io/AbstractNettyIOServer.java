@@ -23,7 +23,6 @@ import io.netty.bootstrap.AbstractBootstrap;
 import io.netty.channel.*;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import org.openremote.container.Container;
 import org.openremote.model.asset.agent.ConnectionStatus;
@@ -82,8 +81,7 @@ public abstract class AbstractNettyIOServer<T, U extends Channel, V extends Abst
         onConnectionStatusChanged(ConnectionStatus.CONNECTING);
 
         if (workerGroup == null) {
-            // TODO: In Netty 5 you can pass in an executor service; can only pass in thread factory for now
-            workerGroup = new NioEventLoopGroup();
+            workerGroup = getWorkerGroup();
         }
 
         try {
@@ -138,6 +136,14 @@ public abstract class AbstractNettyIOServer<T, U extends Channel, V extends Abst
         }
     }
 
+    /**
+     * Get the {@link EventLoopGroup} for the server; defaults to the group shared by all IO clients and servers (see
+     * {@link NettyEventLoopService}). A group returned by an override is shut down when the server is stopped.
+     */
+    protected EventLoopGroup getWorkerGroup() {
+        return NettyEventLoopService.getEventLoopGroup();
+    }
+
     @Override
     public synchronized void stop() {
         if (connectionStatus == ConnectionStatus.DISCONNECTING || connectionStatus == ConnectionStatus.DISCONNECTED) {
@@ -173,7 +179,9 @@ public abstract class AbstractNettyIOServer<T, U extends Channel, V extends Abst
 
         } finally {
             if (workerGroup != null) {
-                workerGroup.shutdownGracefully();
+                if (!NettyEventLoopService.isSharedEventLoopGroup(workerGroup)) {
+                    workerGroup.shutdownGracefully();
+                }
                 workerGroup = null;
             }
             onConnectionStatusChanged(ConnectionStatus.DISCONNECTED);
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.agent.protocol.io;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.MultithreadEventExecutorGroup;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import org.openremote.model.Container;
+import org.openremote.model.ContainerService;
+
+import java.util.logging.Logger;
+
+import static org.openremote.container.util.MapAccess.getBoolean;
+import static org.openremote.container.util.MapAccess.getInteger;
+
+/**
+ * Manages the Netty {@link EventLoopGroup} shared by all {@link AbstractNettyIOClient}s and
+ * {@link AbstractNettyIOServer}s; channels are multiplexed over a fixed number of event loop threads rather than each
+ * client and server creating its' own. When running on Linux and the native library is available the epoll transport
+ * is used, otherwise NIO; the channel class getters return the channel type matching the transport in use.
+ * <p>
+ * IO clients can be used without a running {@link Container} (e.g. in tests) in which case the group is created on first
+ * use with the default settings. Once the service has been stopped the group is not created again (as nothing would
+ * shut it down) until the service is initialised again or {@link #reset} is called.
+ */
+public class NettyEventLoopService implements ContainerService {
+
+    private static final Logger LOG = Logger.getLogger(NettyEventLoopService.class.getName());
+    public static final int PRIORITY = ContainerService.HIGH_PRIORITY + 400;
+    public static final String OR_IO_EVENT_LOOP_THREADS = "OR_IO_EVENT_LOOP_THREADS";
+    public static final int OR_IO_EVENT_LOOP_THREADS_DEFAULT = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+    public static final String OR_IO_NATIVE_TRANSPORT = "OR_IO_NATIVE_TRANSPORT";
+    public static final boolean OR_IO_NATIVE_TRANSPORT_DEFAULT = true;
+    protected static EventLoopGroup eventLoopGroup;
+    protected static boolean epoll;
+    protected static boolean stopped;
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
+
+    @Override
+    public void init(Container container) throws Exception {
+        EventLoopGroup group;
+
+        synchronized (NettyEventLoopService.class) {
+            stopped = false;
+
+            if (eventLoopGroup != null && !eventLoopGroup.isShuttingDown()) {
+                // Clients/servers may already be using the group that was created on first use
+                LOG.info("Using shared IO event loop group that was created before the service was initialised");
+                group = eventLoopGroup;
+            } else {
+                group = createEventLoopGroup(
+                    Math.max(1, getInteger(container.getConfig(), OR_IO_EVENT_LOOP_THREADS, OR_IO_EVENT_LOOP_THREADS_DEFAULT)),
+                    getBoolean(container.getConfig(), OR_IO_NATIVE_TRANSPORT, OR_IO_NATIVE_TRANSPORT_DEFAULT)
+                );
+            }
+        }
+
+        MeterRegistry meterRegistry = container.getMeterRegistry();
+        if (meterRegistry != null) {
+            Gauge.builder("or.io.event.loop.threads", group, g -> g instanceof MultithreadEventExecutorGroup executorGroup ? executorGroup.executorCount() : 0)
+                .description("Number of threads of the event loop group shared by IO clients and servers")
+                .tag("transport", epoll ? "epoll" : "nio")
+                .register(meterRegistry);
+
+            int index = 0;
+            for (EventExecutor executor : group) {
+                if (executor instanceof SingleThreadEventExecutor eventLoop) {
+                    Gauge.builder("or.io.event.loop.pending.tasks", eventLoop, SingleThreadEventExecutor::pendingTasks)
+                        .description("Number of tasks waiting to be processed by an event loop of the shared event loop group")
+                        .tag("loop", Integer.toString(index))
+                        .register(meterRegistry);
+                }
+                index++;
+            }
+        }
+    }
+
+    @Override
+    public void start(Container container) throws Exception {
+    }
+
+    @Override
+    public void stop(Container container) throws Exception {
+        EventLoopGroup group;
+        synchronized (NettyEventLoopService.class) {
+            group = eventLoopGroup;
+            eventLoopGroup = null;
+            stopped = true;
+        }
+        if (group != null) {
+            group.shutdownGracefully();
+        }
+    }
+
+    /**
+     * Get the shared event loop group, creating it with the default settings if it hasn't been initialised by the
+     * {@link Container}.
+     *
+     * @throws IllegalStateException if the service has been stopped.
+     */
+    public static synchronized EventLoopGroup getEventLoopGroup() {
+        if (stopped) {
+            throw new IllegalStateException("Shared IO event loop group has been stopped");
+        }
+        if (eventLoopGroup == null || eventLoopGroup.isShuttingDown()) {
+            createEventLoopGroup(OR_IO_EVENT_LOOP_THREADS_DEFAULT, OR_IO_NATIVE_TRANSPORT_DEFAULT);
+        }
+        return eventLoopGroup;
+    }
+
+    /**
+     * Allows the shared group to be created on first use again after the service has been stopped (e.g. when IO clients
+     * are used without a running {@link Container} after a container has been stopped).
+     */
+    public static synchronized void reset() {
+        stopped = false;
+    }
+
+    /**
+     * Indicates whether the group is the shared event loop group; the shared group must not be shut down by the
+     * clients and servers that use it.
+     */
+    public static synchronized boolean isSharedEventLoopGroup(EventLoopGroup group) {
+        return group != null && group == eventLoopGroup;
+    }
+
+    public static synchronized Class<? extends SocketChannel> getSocketChannelClass() {
+        getEventLoopGroup();
+        return epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    public static synchronized Class<? extends ServerSocketChannel> getServerSocketChannelClass() {
+        getEventLoopGroup();
+        return epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public static synchronized Class<? extends DatagramChannel> getDatagramChannelClass() {
+        getEventLoopGroup();
+        return epoll ? EpollDatagramChannel.class : NioDatagramChannel.class;
+    }
+
+    protected static synchronized EventLoopGroup createEventLoopGroup(int threads, boolean useNativeTransport) {
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdownGracefully();
+        }
+
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory("IO event loop", true);
+        epoll = useNativeTransport && Epoll.isAvailable();
+
+        if (epoll) {
+            eventLoopGroup = new EpollEventLoopGroup(threads, threadFactory);
+        } else {
+            if (useNativeTransport) {
+                LOG.fine("Native epoll transport is not available so using NIO: " + Epoll.unavailabilityCause());
+            }
+            eventLoopGroup = new NioEventLoopGroup(threads, threadFactory);
+        }
+
+        LOG.info("Created shared IO event loop group: transport=" + (epoll ? "epoll" : "nio") + ", threads=" + threads);
+        return eventLoopGroup;
+    }
+}
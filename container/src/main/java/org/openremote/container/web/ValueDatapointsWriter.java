@@ -0,0 +1,150 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.container.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+import org.openremote.model.datapoint.ValueDatapoint;
+import org.openremote.model.util.ValueUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import static org.openremote.model.datapoint.ValueDatapoint.*;
+
+/**
+ * Writes datapoint arrays in the {@link ValueDatapoint#COLUMNAR_JSON_MEDIA_TYPE} and
+ * {@link ValueDatapoint#BINARY_MEDIA_TYPE} encodings; timestamps and values are streamed straight from the datapoints
+ * into the response so no intermediate objects are created per datapoint.
+ */
+@Provider
+@Produces({COLUMNAR_JSON_MEDIA_TYPE, BINARY_MEDIA_TYPE})
+public class ValueDatapointsWriter implements MessageBodyWriter<ValueDatapoint<?>[]> {
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return ValueDatapoint[].class.isAssignableFrom(type) && (isColumnarJson(mediaType) || isBinary(mediaType));
+    }
+
+    @Override
+    public void writeTo(ValueDatapoint<?>[] datapoints, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+        if (isBinary(mediaType)) {
+            writeBinary(datapoints, entityStream);
+        } else {
+            writeColumnarJson(datapoints, entityStream);
+        }
+    }
+
+    public static void writeColumnarJson(ValueDatapoint<?>[] datapoints, OutputStream outputStream) throws IOException {
+        try (JsonGenerator generator = ValueUtil.JSON.getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("x");
+            for (ValueDatapoint<?> datapoint : datapoints) {
+                generator.writeNumber(datapoint.getTimestamp());
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("y");
+            for (ValueDatapoint<?> datapoint : datapoints) {
+                Object value = datapoint.getValue();
+                if (value instanceof Double || value instanceof Float) {
+                    generator.writeNumber(((Number) value).doubleValue());
+                } else if (value instanceof Long || value instanceof Integer) {
+                    generator.writeNumber(((Number) value).longValue());
+                } else {
+                    generator.writeObject(value);
+                }
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    public static void writeBinary(ValueDatapoint<?>[] datapoints, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        boolean numeric = isNumeric(datapoints);
+
+        out.writeInt(datapoints.length);
+        out.writeByte(numeric ? BINARY_VALUE_TYPE_NUMBER : BINARY_VALUE_TYPE_JSON);
+
+        long previous = 0;
+        for (int i = 0; i < datapoints.length; i++) {
+            long timestamp = datapoints[i].getTimestamp();
+            if (i == 0) {
+                out.writeLong(timestamp);
+            } else {
+                writeVarLong(out, zigZag(timestamp - previous));
+            }
+            previous = timestamp;
+        }
+
+        for (ValueDatapoint<?> datapoint : datapoints) {
+            Object value = datapoint.getValue();
+            if (numeric) {
+                out.writeDouble(value != null ? ((Number) value).doubleValue() : Double.NaN);
+            } else {
+                byte[] bytes = ValueUtil.JSON.writeValueAsBytes(value);
+                writeVarLong(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        out.flush();
+    }
+
+    protected static boolean isNumeric(ValueDatapoint<?>[] datapoints) {
+        for (ValueDatapoint<?> datapoint : datapoints) {
+            if (datapoint.getValue() != null && !(datapoint.getValue() instanceof Number)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    protected static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    // Wildcards are deliberately not matched so plain JSON remains the default
+    protected static boolean isColumnarJson(MediaType mediaType) {
+        return mediaType != null && (mediaType.getType() + "/" + mediaType.getSubtype()).equalsIgnoreCase(COLUMNAR_JSON_MEDIA_TYPE);
+    }
+
+    protected static boolean isBinary(MediaType mediaType) {
+        return mediaType != null && (mediaType.getType() + "/" + mediaType.getSubtype()).equalsIgnoreCase(BINARY_MEDIA_TYPE);
+    }
+}
@@ -288,6 +288,7 @@ public abstract class WebService implements ContainerService {
         resteasyDeployment.getProviders().add(new WebServiceExceptions.DefaultResteasyExceptionMapper(devMode));
         resteasyDeployment.getProviders().add(new WebServiceExceptions.ForbiddenResteasyExceptionMapper(devMode));
         resteasyDeployment.getProviders().add(new JacksonConfig());
+        resteasyDeployment.getProviders().add(new ValueDatapointsWriter());
 
         if (!container.isDevMode()) {
             resteasyDeployment.getProviders().add(GZIPEncodingInterceptor.class);
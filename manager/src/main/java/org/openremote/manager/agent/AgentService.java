@@ -69,9 +69,9 @@ import static java.util.stream.Collectors.mapping;
 import static java.util.stream.Collectors.toList;
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.manager.asset.AssetProcessingService.ATTRIBUTE_EVENT_QUEUE;
 import static org.openremote.manager.gateway.GatewayService.isNotForGateway;
-import static org.openremote.model.asset.agent.Protocol.ACTUATOR_TOPIC;
 import static org.openremote.model.asset.agent.Protocol.SENSOR_QUEUE;
 import static org.openremote.model.attribute.Attribute.getAddedOrModifiedAttributes;
 import static org.openremote.model.attribute.AttributeEvent.HEADER_SOURCE;
@@ -87,6 +87,10 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
 
     private static final Logger LOG = Logger.getLogger(AgentService.class.getName());
     public static final int PRIORITY = MessageBrokerService.PRIORITY + 100; // Start quite late to ensure asset model etc. are initialised
+    public static final String OR_PROTOCOL_WRITE_THREADS = "OR_PROTOCOL_WRITE_THREADS";
+    public static final int OR_PROTOCOL_WRITE_THREADS_DEFAULT = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    public static final String OR_PROTOCOL_WRITE_QUEUE_SIZE = "OR_PROTOCOL_WRITE_QUEUE_SIZE";
+    public static final int OR_PROTOCOL_WRITE_QUEUE_SIZE_DEFAULT = 1000;
     protected TimerService timerService;
     protected ManagerIdentityService identityService;
     protected AssetProcessingService assetProcessingService;
@@ -98,6 +102,7 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
     protected Map<String, Agent<?, ?, ?>> agentMap;
     protected final Map<String, Future<Void>> agentDiscoveryImportFutureMap = new ConcurrentHashMap<>();
     protected final Map<String, Protocol<?>> protocolInstanceMap = new ConcurrentHashMap<>();
+    protected ProtocolWriteDispatcher protocolWriteDispatcher;
     protected final Map<String, Set<Consumer<PersistenceEvent<Asset<?>>>>> childAssetSubscriptions = new ConcurrentHashMap<>();
     protected boolean initDone;
     protected Container container;
@@ -137,6 +142,12 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
 
     @Override
     public void start(Container container) throws Exception {
+        protocolWriteDispatcher = new ProtocolWriteDispatcher(
+            Math.max(1, getInteger(container.getConfig(), OR_PROTOCOL_WRITE_THREADS, OR_PROTOCOL_WRITE_THREADS_DEFAULT)),
+            Math.max(1, getInteger(container.getConfig(), OR_PROTOCOL_WRITE_QUEUE_SIZE, OR_PROTOCOL_WRITE_QUEUE_SIZE_DEFAULT)),
+            container.getMeterRegistry(),
+            this::sendToActuatorTopic
+        );
         container.getService(MessageBrokerService.class).getContext().addRoutes(this);
 
         // Load all enabled agents and instantiate a protocol instance for each
@@ -155,6 +166,9 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
             agentMap.clear();
         }
         protocolInstanceMap.clear();
+        if (protocolWriteDispatcher != null) {
+            protocolWriteDispatcher.stop();
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -443,6 +457,7 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
         // Remove child asset subscriptions for this agent
         childAssetSubscriptions.remove(agentId);
         protocolInstanceMap.remove(agentId);
+        protocolWriteDispatcher.removeAgent(agentId);
     }
 
     protected void linkAttributes(Agent<?,?,?> agent, String assetId, Collection<Attribute<?>> attributes) {
@@ -538,12 +553,12 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
         return attribute.getMetaValue(AGENT_LINK)
             .map(agentLink -> {
                 LOG.finest("Attribute write for agent linked attribute: agent=" + agentLink.getId() + ", asset=" + asset.getId() + ", attribute=" + attribute.getName());
-                // TODO: Priority remove actuator topic and call protocol instance directly
-                messageBrokerService.getFluentProducerTemplate()
-                    .withBody(attributeEvent)
-                    .withHeader(Protocol.ACTUATOR_TOPIC_TARGET_PROTOCOL, getProtocolInstance(agentLink.getId()))
-                    .to(ACTUATOR_TOPIC)
-                    .asyncSend();
+                Protocol<?> protocol = getProtocolInstance(agentLink.getId());
+                if (protocol == null) {
+                    LOG.fine("Agent protocol instance not running so dropping attribute write: agent=" + agentLink.getId() + ", event=" + attributeEvent);
+                } else {
+                    protocolWriteDispatcher.dispatch(agentLink.getId(), protocol, attributeEvent);
+                }
                 return true; // Processing complete, skip other processors
             }).orElse(false); // This is a regular attribute so allow the processing to continue
     }
@@ -625,6 +640,19 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
         return protocolInstanceMap.get(agentId);
     }
 
+    /**
+     * Sends the write on the deprecated {@link Protocol#ACTUATOR_TOPIC} for protocol implementations that don't process
+     * writes in {@link Protocol#processLinkedAttributeWrite}.
+     */
+    @SuppressWarnings("deprecation")
+    protected void sendToActuatorTopic(Protocol<?> protocol, AttributeEvent attributeEvent) {
+        messageBrokerService.getFluentProducerTemplate()
+            .withBody(attributeEvent)
+            .withHeader(Protocol.ACTUATOR_TOPIC_TARGET_PROTOCOL, protocol)
+            .to(Protocol.ACTUATOR_TOPIC)
+            .asyncSend();
+    }
+
     @Override
     public void subscribeChildAssetChange(String agentId, Consumer<PersistenceEvent<Asset<?>>> assetChangeConsumer) {
         if (!getAgents().containsKey(agentId)) {
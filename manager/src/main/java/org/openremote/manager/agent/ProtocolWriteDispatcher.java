@@ -0,0 +1,228 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.agent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.openremote.container.concurrent.ContainerExecutor;
+import org.openremote.model.asset.agent.Protocol;
+import org.openremote.model.attribute.AttributeEvent;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers attribute writes to the {@link Protocol} instance of the target agent by calling
+ * {@link Protocol#processLinkedAttributeWrite} directly; each agent has its' own write queue which is drained by one
+ * thread at a time so writes to an agent are processed sequentially and in order whilst writes to different agents are
+ * processed concurrently. A slow or blocked protocol instance can therefore only delay writes to its' own agent; writes
+ * that arrive once an agent has {@link #maxQueueSize} writes pending are dropped. Writes that the protocol instance
+ * doesn't process itself (see {@link Protocol#processLinkedAttributeWrite}) are passed to the fallback writer.
+ */
+public class ProtocolWriteDispatcher {
+
+    protected static class AgentWriteQueue {
+        protected final Protocol<?> protocol;
+        protected final Queue<AttributeEvent> writes = new ConcurrentLinkedQueue<>();
+        protected final AtomicInteger size = new AtomicInteger();
+        protected final AtomicBoolean draining = new AtomicBoolean();
+        protected volatile boolean discarded;
+        protected Timer writeTimer;
+
+        protected AgentWriteQueue(Protocol<?> protocol) {
+            this.protocol = protocol;
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger(ProtocolWriteDispatcher.class.getName());
+    // Maximum number of writes an agent drains before handing the thread over to other agents
+    protected static final int DRAIN_BATCH_SIZE = 100;
+    protected final Map<String, AgentWriteQueue> agentQueues = new ConcurrentHashMap<>();
+    protected final AtomicInteger queuedWrites = new AtomicInteger();
+    protected final ContainerExecutor executor;
+    protected final int maxQueueSize;
+    protected final MeterRegistry meterRegistry;
+    protected final BiConsumer<Protocol<?>, AttributeEvent> fallbackWriter;
+    protected Counter droppedCounter;
+
+    public ProtocolWriteDispatcher(int threads, int maxQueueSize, MeterRegistry meterRegistry) {
+        this(threads, maxQueueSize, meterRegistry, null);
+    }
+
+    public ProtocolWriteDispatcher(int threads, int maxQueueSize, MeterRegistry meterRegistry, BiConsumer<Protocol<?>, AttributeEvent> fallbackWriter) {
+        this.maxQueueSize = maxQueueSize;
+        this.fallbackWriter = fallbackWriter;
+        this.meterRegistry = meterRegistry;
+        // Each agent occupies at most one task in the executor queue so it is bounded by the number of agents
+        executor = new ContainerExecutor("Protocol write", threads, threads, 60, Integer.MAX_VALUE);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+
+        if (meterRegistry != null) {
+            droppedCounter = Counter.builder("or.protocol.write.dropped")
+                .description("Attribute writes dropped because the write queue of the agent was full or the agent was stopped")
+                .register(meterRegistry);
+            Gauge.builder("or.protocol.write.queue", queuedWrites, AtomicInteger::get)
+                .description("Number of attribute writes waiting to be processed by protocol instances")
+                .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Queues the write for the protocol instance of the agent.
+     *
+     * @return false if the write was dropped
+     */
+    public boolean dispatch(String agentId, Protocol<?> protocol, AttributeEvent event) {
+        AgentWriteQueue[] replaced = new AgentWriteQueue[1];
+        AgentWriteQueue agentQueue = agentQueues.compute(agentId, (id, queue) -> {
+            if (queue != null && queue.protocol == protocol) {
+                return queue;
+            }
+            replaced[0] = queue;
+            return createQueue(protocol);
+        });
+
+        if (replaced[0] != null) {
+            // Writes pending for the previous protocol instance of the agent must not be delivered to it
+            LOG.fine("Protocol instance of agent has changed so discarding pending writes: agent=" + agentId + ", protocol=" + protocol.getProtocolName());
+            discard(replaced[0]);
+        }
+
+        if (agentQueue.size.incrementAndGet() > maxQueueSize) {
+            agentQueue.size.decrementAndGet();
+            LOG.warning("Write queue is full so dropping attribute write: agent=" + agentId + ", protocol=" + protocol.getProtocolName() + ", event=" + event);
+            incrementDropped(1);
+            return false;
+        }
+
+        agentQueue.writes.add(event);
+        queuedWrites.incrementAndGet();
+        scheduleDrain(agentQueue);
+        return true;
+    }
+
+    /**
+     * Discards the queue of the agent; writes already queued for the protocol instance will not be processed. A write
+     * currently being processed by the protocol instance is unaffected.
+     */
+    public void removeAgent(String agentId) {
+        AgentWriteQueue agentQueue = agentQueues.remove(agentId);
+        if (agentQueue != null) {
+            discard(agentQueue);
+        }
+    }
+
+    public void stop() {
+        agentQueues.values().forEach(this::discard);
+        agentQueues.clear();
+        executor.shutdownNow();
+    }
+
+    protected AgentWriteQueue createQueue(Protocol<?> protocol) {
+        AgentWriteQueue agentQueue = new AgentWriteQueue(protocol);
+        if (meterRegistry != null) {
+            // Tagged by protocol rather than agent to keep the number of meters independent of the number of agents
+            agentQueue.writeTimer = Timer.builder("or.protocol.write")
+                .description("Time taken by protocol instances to process an attribute write")
+                .tag("protocol", protocol.getProtocolName())
+                .register(meterRegistry);
+        }
+        return agentQueue;
+    }
+
+    protected void scheduleDrain(AgentWriteQueue agentQueue) {
+        if (!agentQueue.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> drain(agentQueue));
+        } catch (RejectedExecutionException e) {
+            // Executor has been shut down
+            agentQueue.draining.set(false);
+            discard(agentQueue);
+        }
+    }
+
+    protected void drain(AgentWriteQueue agentQueue) {
+        int processed = 0;
+        AttributeEvent event;
+
+        while (processed < DRAIN_BATCH_SIZE && !agentQueue.discarded && (event = agentQueue.writes.poll()) != null) {
+            agentQueue.size.decrementAndGet();
+            queuedWrites.decrementAndGet();
+            processed++;
+            long start = System.nanoTime();
+            try {
+                if (!agentQueue.protocol.processLinkedAttributeWrite(event) && fallbackWriter != null) {
+                    fallbackWriter.accept(agentQueue.protocol, event);
+                }
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Protocol instance threw an exception whilst processing attribute write: protocol=" + agentQueue.protocol + ", event=" + event, e);
+            } finally {
+                if (agentQueue.writeTimer != null) {
+                    agentQueue.writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+
+        agentQueue.draining.set(false);
+
+        if (agentQueue.discarded) {
+            // Writes may have been added by a dispatch that obtained the queue before it was discarded
+            discard(agentQueue);
+        } else if (!agentQueue.writes.isEmpty()) {
+            // Writes may have been queued after the last poll but before draining was reset
+            scheduleDrain(agentQueue);
+        }
+    }
+
+    /**
+     * Marks the queue as discarded so it is no longer drained, removes its' pending writes from {@link #queuedWrites}
+     * and counts them as dropped.
+     */
+    protected void discard(AgentWriteQueue agentQueue) {
+        agentQueue.discarded = true;
+        int discarded = 0;
+        while (agentQueue.writes.poll() != null) {
+            agentQueue.size.decrementAndGet();
+            queuedWrites.decrementAndGet();
+            discarded++;
+        }
+        incrementDropped(discarded);
+    }
+
+    protected void incrementDropped(int count) {
+        if (droppedCounter != null && count > 0) {
+            droppedCounter.increment(count);
+        }
+    }
+}
@@ -88,8 +88,8 @@ import static org.openremote.model.attribute.AttributeWriteFailure.*;
  * When the update messages' source is {@link Source#SENSOR}, the agent service ignores the message.
  * The message will also be ignored if the updated attribute is not linked to an agent.
  * <p>
- * If the updated attribute has a valid agent link, an {@link AttributeEvent} is sent on the {@link Protocol#ACTUATOR_TOPIC},
- * for execution on an actual device or service 'things'. The update is then considered complete, and no further processing
+ * If the updated attribute has a valid agent link, the {@link AttributeEvent} is queued for the agent's protocol instance
+ * (see {@link Protocol#processLinkedAttributeWrite}) for execution on an actual device or service 'things'. The update is then considered complete, and no further processing
  * is necessary. The update will not reach the rules engine or the database.
  * <p>
  * This means that a protocol implementation is responsible for producing a new {@link AttributeEvent} to
@@ -382,6 +382,8 @@ public class ForecastService extends RouteBuilder implements ContainerService {
                     });
                 }
 
+                Map<AttributeRef, List<Pair<?, LocalDateTime>>> forecastDatapoints = new HashMap<>();
+
                 attributesToCalculate.forEach(attr -> {
                     if (Thread.currentThread().isInterrupted()) {
                         return;
@@ -421,15 +423,16 @@ public class ForecastService extends RouteBuilder implements ContainerService {
                             )
                             .collect(Collectors.toList());
 
-                        assetPredictedDatapointService.purgeValues(attr.getId(), attr.getName());
-
-                        if (datapoints.size() > 0) {
-                            LOG.fine("Updating forecast values for attribute: " + attr.getAttributeRef());
-                            assetPredictedDatapointService.updateValues(attr.getId(), attr.getName(), datapoints);
-                        }
+                        forecastDatapoints.put(attr.getAttributeRef(), datapoints);
                     }
                 });
 
+                if (!forecastDatapoints.isEmpty() && !Thread.currentThread().isInterrupted()) {
+                    // Swap the forecasts of all calculated attributes at once rather than one attribute at a time
+                    LOG.fine("Updating forecast values for " + forecastDatapoints.size() + " attribute(s)");
+                    assetPredictedDatapointService.replaceValues(forecastDatapoints);
+                }
+
                 synchronized (ForecastTaskManager.this) {
                     if (Thread.currentThread().isInterrupted()) {
                         return;
@@ -43,8 +43,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Date;
@@ -100,6 +104,7 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
                         st = getUpsertPreparedStatement(connection);
                         setUpsertValues(st, assetId, attributeName, value, timestamp);
                         st.executeUpdate();
+                        updateDatapointPeriod(connection, assetId, attributeName, List.of(new Pair<>(value, timestamp)), countInserted(st));
                     } catch (Exception e) {
                         String msg = "Failed to insert/update data point: ";
                         getLogger().log(Level.WARNING, msg, e);
@@ -123,6 +128,7 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
                             st.addBatch();
                         }
                         st.executeBatch();
+                        updateDatapointPeriod(connection, assetId, attributeName, valuesAndTimestamps, countInserted(st));
                     } catch (Exception e) {
                         String msg = "Failed to insert/update data points: " + assetId + ", name=" + attributeName + ", count=" + valuesAndTimestamps.size();
                         getLogger().log(Level.WARNING, msg, e);
@@ -149,6 +155,26 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
     }
 
     public long getDatapointsCount(AttributeRef attributeRef) {
+        String periodTableName = getDatapointPeriodTableName();
+
+        if (periodTableName != null) {
+            return persistenceService.doReturningTransaction(em ->
+                em.unwrap(Session.class).doReturningWork(connection -> {
+                    String query = attributeRef == null ?
+                        "SELECT COALESCE(SUM(count), 0) FROM " + periodTableName :
+                        "SELECT COALESCE(SUM(count), 0) FROM " + periodTableName + " WHERE entity_id = ? AND attribute_name = ?";
+                    try (PreparedStatement st = connection.prepareStatement(query)) {
+                        if (attributeRef != null) {
+                            st.setString(1, attributeRef.getId());
+                            st.setString(2, attributeRef.getName());
+                        }
+                        try (ResultSet rs = st.executeQuery()) {
+                            return rs.next() ? rs.getLong(1) : 0L;
+                        }
+                    }
+                }));
+        }
+
         return persistenceService.doReturningTransaction(entityManager -> {
 
             String queryStr = attributeRef == null ?
@@ -246,21 +272,16 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
                 em.unwrap(Session.class).doReturningWork(new AbstractReturningWork<DatapointPeriod>() {
                     @Override
                     public DatapointPeriod execute(Connection connection) throws SQLException {
-                        String tableName = getDatapointTableName();
-                        String query = "SELECT DISTINCT periods.* FROM " +
-                                "(SELECT entity_id, attribute_name, " +
-                                "MIN(timestamp) AS oldestTimestamp, MAX(timestamp) AS latestTimestamp " +
-                                "FROM " + tableName + " GROUP BY entity_id, attribute_name) AS periods " +
-                                "INNER JOIN " + tableName + " ON " + tableName + ".entity_id = periods.entity_id AND " +
-                                tableName + ".attribute_name = periods.attribute_name " +
-                                "WHERE " + tableName + ".entity_id = ? " +
-                                "AND " + tableName + ".attribute_name = ? ";
+                        String periodTableName = getDatapointPeriodTableName();
+                        String query = periodTableName != null ?
+                                "SELECT oldest_timestamp, latest_timestamp FROM " + periodTableName + " WHERE entity_id = ? AND attribute_name = ?" :
+                                "SELECT MIN(timestamp), MAX(timestamp) FROM " + getDatapointTableName() + " WHERE entity_id = ? AND attribute_name = ?";
                         try (PreparedStatement st = connection.prepareStatement(query)) {
                             st.setString(1, assetId);
                             st.setString(2, attributeName);
                             try (ResultSet rs = st.executeQuery()) {
-                                if (rs.next()) {
-                                    return new DatapointPeriod(rs.getString(1), rs.getString(2), rs.getTimestamp(3).getTime(), rs.getTimestamp(4).getTime());
+                                if (rs.next() && rs.getTimestamp(1) != null) {
+                                    return new DatapointPeriod(assetId, attributeName, rs.getTimestamp(1).getTime(), rs.getTimestamp(2).getTime());
                                 }
                                 return new DatapointPeriod(assetId, attributeName, null, null);
                             }
@@ -270,11 +291,63 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
         );
     }
 
+    /**
+     * Get the most recent datapoint of the attribute; this is a single row lookup when a datapoint period table is
+     * available, see {@link #getDatapointPeriodTableName()}.
+     * @return The latest datapoint or null if there are no datapoints
+     */
+    public ValueDatapoint<?> getLatestDatapoint(String assetId, String attributeName) {
+        return persistenceService.doReturningTransaction(em ->
+                em.unwrap(Session.class).doReturningWork(new AbstractReturningWork<ValueDatapoint<?>>() {
+                    @Override
+                    public ValueDatapoint<?> execute(Connection connection) throws SQLException {
+                        String periodTableName = getDatapointPeriodTableName();
+                        String query = periodTableName != null ?
+                                "SELECT latest_timestamp, latest_value FROM " + periodTableName + " WHERE entity_id = ? AND attribute_name = ?" :
+                                "SELECT timestamp, value FROM " + getDatapointTableName() + " WHERE entity_id = ? AND attribute_name = ? ORDER BY timestamp DESC LIMIT 1";
+                        try (PreparedStatement st = connection.prepareStatement(query)) {
+                            st.setString(1, assetId);
+                            st.setString(2, attributeName);
+                            try (ResultSet rs = st.executeQuery()) {
+                                if (!rs.next()) {
+                                    return null;
+                                }
+                                Object value = rs.getObject(2) instanceof PGobject ? ValueUtil.parse(((PGobject) rs.getObject(2)).getValue()).orElse(null) : null;
+                                return new ValueDatapoint<>(rs.getTimestamp(1).getTime(), value);
+                            }
+                        }
+                    }
+                })
+        );
+    }
+
+    /**
+     * The upsert returns whether each row was inserted rather than updated (xmax is only zero for a freshly inserted
+     * row version); the driver collects these rows for single and batch executions as generated keys, it doesn't
+     * append its own RETURNING clause when the statement already has one.
+     */
     protected PreparedStatement getUpsertPreparedStatement(Connection connection) throws SQLException {
-        return connection.prepareStatement("INSERT INTO " + getDatapointTableName() + " (entity_id, attribute_name, value, timestamp) " +
-                "VALUES (?, ?, ?, ?) " +
+        return connection.prepareStatement("INSERT INTO " + getDatapointTableName() + " (entity_id, attribute_name, value, timestamp, numeric_value) " +
+                "VALUES (?, ?, ?, ?, ?) " +
                 "ON CONFLICT (entity_id, attribute_name, timestamp) DO UPDATE " +
-                "SET value = excluded.value");
+                "SET value = excluded.value, numeric_value = excluded.numeric_value " +
+                "RETURNING (xmax = 0) AS inserted", Statement.RETURN_GENERATED_KEYS);
+    }
+
+    /**
+     * Counts the rows the executed upsert statement inserted (rather than replaced), so the datapoint period count
+     * only includes new datapoints.
+     */
+    protected long countInserted(PreparedStatement st) throws SQLException {
+        long inserted = 0;
+        try (ResultSet rs = st.getGeneratedKeys()) {
+            while (rs.next()) {
+                if (rs.getBoolean(1)) {
+                    inserted++;
+                }
+            }
+        }
+        return inserted;
     }
 
     protected void setUpsertValues(PreparedStatement st, String assetId, String attributeName, Object value, LocalDateTime timestamp) throws Exception {
@@ -285,6 +358,130 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
         st.setString(2, attributeName);
         st.setObject(3, pgJsonValue);
         st.setObject(4, timestamp);
+        Double numericValue = getNumericValue(value);
+        if (numericValue != null) {
+            st.setDouble(5, numericValue);
+        } else {
+            st.setNull(5, Types.DOUBLE);
+        }
+    }
+
+    /**
+     * Get the value to store in the typed NUMERIC_VALUE column; number values are stored as is and boolean values are
+     * stored as 1 or 0 (which is what the numeric aggregation queries expect), all other values return null.
+     */
+    public static Double getNumericValue(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1d : 0d;
+        }
+        if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            return Double.isFinite(d) ? d : null;
+        }
+        return null;
+    }
+
+    /**
+     * Back fills the typed NUMERIC_VALUE column for number and boolean datapoints that were stored before the column
+     * existed; this is done one day at a time (working backwards from now) to keep each transaction (and the number
+     * of hypertable chunks it touches) small. Only number and boolean datapoints are considered when finding where to
+     * start as NUMERIC_VALUE is always null for other values.
+     * @return The number of datapoints that were updated
+     */
+    public long migrateNumericValues() {
+        String tableName = getDatapointTableName();
+        Long oldestMillis = persistenceService.doReturningTransaction(em ->
+            em.unwrap(Session.class).doReturningWork(connection -> {
+                try (PreparedStatement st = connection.prepareStatement("SELECT MIN(timestamp) FROM " + tableName + " WHERE numeric_value IS NULL AND jsonb_typeof(value) IN ('number', 'boolean')");
+                     ResultSet rs = st.executeQuery()) {
+                    return rs.next() && rs.getTimestamp(1) != null ? rs.getTimestamp(1).getTime() : null;
+                }
+            }));
+
+        if (oldestMillis == null) {
+            getLogger().info("No datapoints to migrate to typed numeric storage: " + tableName);
+            return 0L;
+        }
+
+        String query = "UPDATE " + tableName + " SET numeric_value = " +
+            "(CASE jsonb_typeof(value) WHEN 'number' THEN value::text::double precision " +
+            "ELSE (CASE WHEN value::text::boolean THEN 1 ELSE 0 END) END) " +
+            "WHERE numeric_value IS NULL AND jsonb_typeof(value) IN ('number', 'boolean') " +
+            "AND timestamp >= ? AND timestamp < ?";
+
+        LocalDateTime oldest = LocalDateTime.ofInstant(Instant.ofEpochMilli(oldestMillis), ZoneId.systemDefault()).truncatedTo(DAYS);
+        LocalDateTime end = LocalDateTime.ofInstant(timerService.getNow(), ZoneId.systemDefault()).truncatedTo(DAYS).plusDays(1);
+        long total = 0;
+
+        getLogger().info("Migrating datapoints to typed numeric storage: table=" + tableName + ", from=" + oldest);
+
+        while (end.isAfter(oldest)) {
+            LocalDateTime start = end.minusDays(1);
+            LocalDateTime finalEnd = end;
+            total += persistenceService.doReturningTransaction(em ->
+                em.unwrap(Session.class).doReturningWork(connection -> {
+                    try (PreparedStatement st = connection.prepareStatement(query)) {
+                        st.setObject(1, start);
+                        st.setObject(2, finalEnd);
+                        return st.executeUpdate();
+                    }
+                }));
+            end = start;
+        }
+
+        getLogger().info("Migrated datapoints to typed numeric storage: table=" + tableName + ", count=" + total);
+        return total;
+    }
+
+    /**
+     * Updates the datapoint period row of the attribute after the specified datapoints have been upserted.
+     */
+    protected void updateDatapointPeriod(Connection connection, String assetId, String attributeName, List<? extends Pair<?, LocalDateTime>> valuesAndTimestamps, long inserted) throws SQLException {
+        String periodTableName = getDatapointPeriodTableName();
+        if (periodTableName == null || valuesAndTimestamps.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime oldest = null;
+        Pair<?, LocalDateTime> latest = null;
+        for (Pair<?, LocalDateTime> valueAndTimestamp : valuesAndTimestamps) {
+            if (oldest == null || valueAndTimestamp.value.isBefore(oldest)) {
+                oldest = valueAndTimestamp.value;
+            }
+            if (latest == null || !valueAndTimestamp.value.isBefore(latest.value)) {
+                latest = valueAndTimestamp;
+            }
+        }
+
+        PGobject pgJsonValue = new PGobject();
+        pgJsonValue.setType("jsonb");
+        pgJsonValue.setValue(ValueUtil.asJSON(latest.key).orElse("null"));
+
+        try (PreparedStatement st = connection.prepareStatement("INSERT INTO " + periodTableName + " AS p " +
+            "(entity_id, attribute_name, oldest_timestamp, latest_timestamp, count, latest_value) " +
+            "VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (entity_id, attribute_name) DO UPDATE SET " +
+            "oldest_timestamp = LEAST(p.oldest_timestamp, excluded.oldest_timestamp), " +
+            "latest_timestamp = GREATEST(p.latest_timestamp, excluded.latest_timestamp), " +
+            "count = p.count + excluded.count, " +
+            "latest_value = (CASE WHEN excluded.latest_timestamp >= p.latest_timestamp THEN excluded.latest_value ELSE p.latest_value END)")) {
+            st.setString(1, assetId);
+            st.setString(2, attributeName);
+            st.setObject(3, oldest);
+            st.setObject(4, latest.value);
+            st.setLong(5, inserted);
+            st.setObject(6, pgJsonValue);
+            st.executeUpdate();
+        }
+    }
+
+    /**
+     * Name of the table that holds the period, count and latest value of the datapoints of each attribute or null if
+     * these should be calculated from the datapoints table on demand; when set this table is maintained by the upsert
+     * methods and {@link #doPurgeWithPeriods}.
+     */
+    protected String getDatapointPeriodTableName() {
+        return null;
     }
 
     protected abstract Class<T> getDatapointClass();
@@ -299,6 +496,40 @@ public abstract class AbstractDatapointService<T extends Datapoint> implements C
         ).setParameter("dt", date).executeUpdate());
     }
 
+    /**
+     * Deletes datapoints older than the specified date that also match the condition (native SQL using the datapoint
+     * table column names, must start with " and" if not empty), whilst keeping the datapoint period table in sync: the
+     * deleted rows are counted per attribute in the same statement and only the affected period rows are updated.
+     */
+    protected void doPurgeWithPeriods(String condition, Date date) {
+        String periodTableName = getDatapointPeriodTableName();
+        String tableName = getDatapointTableName();
+
+        persistenceService.doTransaction(em -> em.unwrap(Session.class).doWork(connection -> {
+            if (periodTableName == null) {
+                try (PreparedStatement st = connection.prepareStatement("DELETE FROM " + tableName + " WHERE timestamp < ?" + condition)) {
+                    st.setTimestamp(1, new Timestamp(date.getTime()));
+                    st.executeUpdate();
+                }
+                return;
+            }
+
+            try (PreparedStatement st = connection.prepareStatement(
+                "WITH deleted AS (DELETE FROM " + tableName + " WHERE timestamp < ?" + condition + " RETURNING entity_id, attribute_name), " +
+                "counts AS (SELECT entity_id, attribute_name, COUNT(*) AS deleted_count FROM deleted GROUP BY entity_id, attribute_name) " +
+                "UPDATE " + periodTableName + " AS p SET count = p.count - c.deleted_count, " +
+                "oldest_timestamp = COALESCE((SELECT MIN(d.timestamp) FROM " + tableName + " d WHERE d.entity_id = p.entity_id AND d.attribute_name = p.attribute_name AND d.timestamp >= ?), p.oldest_timestamp) " +
+                "FROM counts c WHERE p.entity_id = c.entity_id AND p.attribute_name = c.attribute_name")) {
+                st.setTimestamp(1, new Timestamp(date.getTime()));
+                st.setTimestamp(2, new Timestamp(date.getTime()));
+                st.executeUpdate();
+            }
+            try (PreparedStatement st = connection.prepareStatement("DELETE FROM " + periodTableName + " WHERE count <= 0")) {
+                st.executeUpdate();
+            }
+        }));
+    }
+
     protected long getFirstPurgeMillis(Instant currentTime) {
         // Schedule purge at approximately 3AM daily
         return ChronoUnit.MILLIS.between(
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.datapoint;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.openremote.model.attribute.Attribute;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.datapoint.ValueDatapoint;
+import org.openremote.model.datapoint.query.AssetDatapointAllQuery;
+import org.openremote.model.datapoint.query.AssetDatapointM4Query;
+import org.openremote.model.datapoint.query.AssetDatapointQuery;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.openremote.model.value.MetaItemType.DATA_POINTS_CACHE_SIZE;
+
+/**
+ * Keeps the most recent datapoints of number and boolean attributes in memory so that queries for recent history
+ * (e.g. dashboards and rules asking for the last hour) don't have to hit the database. Each attribute gets a fixed
+ * size ring buffer that is filled from the datapoint write path; the size comes from the
+ * {@link org.openremote.model.value.MetaItemType#DATA_POINTS_CACHE_SIZE} meta item or the global default.
+ * <p>
+ * A buffer only knows about datapoints written since it was created, so a query is only answered from memory when its
+ * time range starts at or after the oldest buffered datapoint; everything else falls back to SQL. 'All' and M4 queries
+ * can be answered from memory.
+ */
+public class AssetDatapointCache {
+
+    /**
+     * Ring buffer of timestamp/value pairs in ascending timestamp order.
+     */
+    protected static class Buffer {
+        protected final long[] timestamps;
+        protected final double[] values;
+        protected int head; // Index of the oldest entry
+        protected int size;
+
+        protected Buffer(int capacity) {
+            timestamps = new long[capacity];
+            values = new double[capacity];
+        }
+
+        protected int capacity() {
+            return timestamps.length;
+        }
+
+        protected int index(int i) {
+            return (head + i) % timestamps.length;
+        }
+
+        protected synchronized void add(long timestamp, double value) {
+            if (size > 0) {
+                int newest = index(size - 1);
+                if (timestamp == timestamps[newest]) {
+                    values[newest] = value;
+                    return;
+                }
+                if (timestamp < timestamps[head]) {
+                    // Older than anything we hold so doesn't affect the range this buffer covers
+                    return;
+                }
+                if (timestamp < timestamps[newest]) {
+                    // Out of order write inside the covered range; rare enough to just start over
+                    clear();
+                }
+            }
+
+            if (size == timestamps.length) {
+                timestamps[head] = timestamp;
+                values[head] = value;
+                head = (head + 1) % timestamps.length;
+            } else {
+                int i = index(size);
+                timestamps[i] = timestamp;
+                values[i] = value;
+                size++;
+            }
+        }
+
+        protected synchronized void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        /**
+         * @return The datapoints in the specified range in descending timestamp order (same as the SQL query) or null
+         * if the range isn't fully covered by this buffer.
+         */
+        protected synchronized ValueDatapoint<?>[] query(long fromTimestamp, long toTimestamp) {
+            if (size == 0 || fromTimestamp < timestamps[head]) {
+                return null;
+            }
+
+            int from = size;
+            int to = -1;
+            for (int i = size - 1; i >= 0; i--) {
+                long timestamp = timestamps[index(i)];
+                if (timestamp < fromTimestamp) {
+                    break;
+                }
+                if (timestamp <= toTimestamp) {
+                    from = i;
+                    if (to < 0) {
+                        to = i;
+                    }
+                }
+            }
+
+            if (to < 0) {
+                return new ValueDatapoint<?>[0];
+            }
+
+            ValueDatapoint<?>[] result = new ValueDatapoint<?>[to - from + 1];
+            for (int i = to, j = 0; i >= from; i--, j++) {
+                int index = index(i);
+                result[j] = new ValueDatapoint<>(timestamps[index], values[index]);
+            }
+            return result;
+        }
+    }
+
+    protected final Map<AttributeRef, Buffer> buffers = new ConcurrentHashMap<>();
+    protected final int defaultSize;
+    protected Counter hitCounter;
+    protected Counter missCounter;
+
+    public AssetDatapointCache(int defaultSize, MeterRegistry meterRegistry) {
+        this.defaultSize = defaultSize;
+
+        if (meterRegistry != null) {
+            hitCounter = meterRegistry.counter("or.datapoints.cache.requests", "result", "hit");
+            missCounter = meterRegistry.counter("or.datapoints.cache.requests", "result", "miss");
+            meterRegistry.gaugeMapSize("or.datapoints.cache.attributes", Tags.empty(), buffers);
+        }
+    }
+
+    public static boolean isCacheable(Attribute<?> attribute) {
+        Class<?> type = attribute.getTypeClass();
+        return Number.class.isAssignableFrom(type) || Boolean.class.isAssignableFrom(type);
+    }
+
+    protected int getCacheSize(Attribute<?> attribute) {
+        return attribute.getMetaValue(DATA_POINTS_CACHE_SIZE).orElse(defaultSize);
+    }
+
+    /**
+     * Creates, resizes or removes the buffer of the attribute based on its type and cache size; called from the
+     * attribute event write path as that is where the attribute (and not just its name) is known.
+     */
+    public void configure(String assetId, Attribute<?> attribute) {
+        AttributeRef attributeRef = new AttributeRef(assetId, attribute.getName());
+        int size = isCacheable(attribute) ? getCacheSize(attribute) : 0;
+
+        if (size <= 0) {
+            buffers.remove(attributeRef);
+            return;
+        }
+
+        buffers.compute(attributeRef, (ref, existing) ->
+            existing != null && existing.capacity() == size ? existing : new Buffer(size));
+    }
+
+    /**
+     * Called when a datapoint has been stored; only attributes that already have a buffer are affected.
+     */
+    public void onDatapointStored(String assetId, String attributeName, long timestamp, Object value) {
+        Buffer buffer = buffers.get(new AttributeRef(assetId, attributeName));
+        if (buffer != null) {
+            add(buffer, timestamp, value);
+        }
+    }
+
+    protected void add(Buffer buffer, long timestamp, Object value) {
+        Double numericValue = AbstractDatapointService.getNumericValue(value);
+        if (numericValue == null) {
+            // Can't represent this value so the buffer is no longer a complete copy of what is stored
+            buffer.clear();
+            return;
+        }
+        buffer.add(timestamp, numericValue);
+    }
+
+    /**
+     * @return The cached result for the query or null if it can't be answered from memory
+     */
+    public ValueDatapoint<?>[] query(AttributeRef attributeRef, AssetDatapointQuery query) {
+        Buffer buffer = buffers.get(attributeRef);
+        if (buffer == null) {
+            return null;
+        }
+
+        ValueDatapoint<?>[] result = null;
+        long fromTimestamp = getFromTimestamp(query);
+        long toTimestamp = getToTimestamp(query);
+        if (query instanceof AssetDatapointAllQuery) {
+            result = buffer.query(fromTimestamp, toTimestamp);
+        } else if (query instanceof AssetDatapointM4Query m4Query && m4Query.width > 0) {
+            result = buffer.query(fromTimestamp, toTimestamp);
+            if (result != null) {
+                result = AssetDatapointM4Query.downsample(result, fromTimestamp, toTimestamp, m4Query.width);
+            }
+        }
+
+        Counter counter = result != null ? hitCounter : missCounter;
+        if (counter != null) {
+            counter.increment();
+        }
+        return result;
+    }
+
+    public void remove(String assetId) {
+        buffers.keySet().removeIf(attributeRef -> attributeRef.getId().equals(assetId));
+    }
+
+    public void remove(AttributeRef attributeRef) {
+        buffers.remove(attributeRef);
+    }
+
+    public void clear() {
+        buffers.clear();
+    }
+
+    protected static long getFromTimestamp(AssetDatapointQuery query) {
+        return query.fromTime != null ? toMillis(query.fromTime) : query.fromTimestamp;
+    }
+
+    protected static long getToTimestamp(AssetDatapointQuery query) {
+        return query.toTime != null ? toMillis(query.toTime) : query.toTimestamp;
+    }
+
+    protected static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.datapoint;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openremote.model.attribute.Attribute;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.util.TimeUtil;
+import org.openremote.model.value.MetaItemDescriptor;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.openremote.model.value.MetaItemType.*;
+
+/**
+ * Decides whether an attribute value should be stored as a datapoint based on the
+ * {@link org.openremote.model.value.MetaItemType#DATA_POINTS_DEADBAND},
+ * {@link org.openremote.model.value.MetaItemType#DATA_POINTS_DEADBAND_PERCENTAGE},
+ * {@link org.openremote.model.value.MetaItemType#DATA_POINTS_MIN_INTERVAL} and
+ * {@link org.openremote.model.value.MetaItemType#DATA_POINTS_MAX_INTERVAL} meta items of the attribute; this allows
+ * noisy sensors to be recorded without filling the database with near identical values.
+ * <p>
+ * The timestamp and value of the last stored datapoint are held in memory for attributes that have any of these meta
+ * items, so after a restart the first value of each attribute is always stored. Values older than the last stored
+ * value (e.g. back filled values) and changes of non-number values (e.g. a state or boolean) are always stored; the
+ * intervals only suppress repeats of such values so the last change before a quiet period is never lost.
+ */
+public class AssetDatapointRecordingFilter {
+
+    private static final Logger LOG = Logger.getLogger(AssetDatapointRecordingFilter.class.getName());
+
+    protected static class LastStored {
+        protected final long timestamp;
+        protected final Double value;
+        protected final Object rawValue;
+
+        protected LastStored(long timestamp, Double value, Object rawValue) {
+            this.timestamp = timestamp;
+            this.value = value;
+            this.rawValue = rawValue;
+        }
+    }
+
+    protected final Map<AttributeRef, LastStored> lastStored = new ConcurrentHashMap<>();
+    protected Counter suppressedCounter;
+
+    public AssetDatapointRecordingFilter(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            suppressedCounter = meterRegistry.counter("or.datapoints.suppressed");
+        }
+    }
+
+    public static boolean hasRecordingMeta(Attribute<?> attribute) {
+        return attribute.hasMeta(DATA_POINTS_DEADBAND)
+            || attribute.hasMeta(DATA_POINTS_DEADBAND_PERCENTAGE)
+            || attribute.hasMeta(DATA_POINTS_MIN_INTERVAL)
+            || attribute.hasMeta(DATA_POINTS_MAX_INTERVAL);
+    }
+
+    /**
+     * @return true if the value of the attribute at the specified timestamp should be stored; once it has been stored
+     * {@link #onStored} must be called so it becomes the last stored value that subsequent values are compared against.
+     */
+    public boolean shouldStore(String assetId, Attribute<?> attribute, long timestamp) {
+        AttributeRef attributeRef = new AttributeRef(assetId, attribute.getName());
+
+        if (!hasRecordingMeta(attribute)) {
+            lastStored.remove(attributeRef);
+            return true;
+        }
+
+        LastStored last = lastStored.get(attributeRef);
+
+        if (last == null || timestamp < last.timestamp) {
+            return true;
+        }
+
+        double deadband = attribute.getMetaValue(DATA_POINTS_DEADBAND).orElse(0d);
+        double deadbandPercentage = attribute.getMetaValue(DATA_POINTS_DEADBAND_PERCENTAGE).orElse(0d);
+        long minInterval = getIntervalMillis(attribute, DATA_POINTS_MIN_INTERVAL);
+        long maxInterval = getIntervalMillis(attribute, DATA_POINTS_MAX_INTERVAL);
+        Object rawValue = attribute.getValue().orElse(null);
+        boolean store = isSignificant(last, timestamp, AbstractDatapointService.getNumericValue(rawValue), rawValue, deadband, deadbandPercentage, minInterval, maxInterval);
+
+        if (!store && suppressedCounter != null) {
+            suppressedCounter.increment();
+        }
+        return store;
+    }
+
+    /**
+     * Records the value of the attribute at the specified timestamp as stored; this should only be called once the
+     * datapoint has actually been stored so a failed write doesn't cause later values to be suppressed. Values older
+     * than the last stored value don't replace it.
+     */
+    public void onStored(String assetId, Attribute<?> attribute, long timestamp) {
+        if (!hasRecordingMeta(attribute)) {
+            return;
+        }
+
+        Object rawValue = attribute.getValue().orElse(null);
+        LastStored stored = new LastStored(timestamp, AbstractDatapointService.getNumericValue(rawValue), rawValue);
+        lastStored.merge(new AttributeRef(assetId, attribute.getName()), stored, (last, value) -> value.timestamp < last.timestamp ? last : value);
+    }
+
+    protected static boolean isSignificant(LastStored last, long timestamp, Double value, Object rawValue, double deadband, double deadbandPercentage, long minInterval, long maxInterval) {
+        long elapsed = timestamp - last.timestamp;
+
+        if (!(rawValue instanceof Number) && !Objects.equals(rawValue, last.rawValue)) {
+            // A suppressed change of a non-number value would be lost if no further values arrive
+            return true;
+        }
+        if (minInterval > 0 && elapsed < minInterval) {
+            return false;
+        }
+        if (maxInterval > 0 && elapsed >= maxInterval) {
+            return true;
+        }
+        if (value == null || last.value == null || (deadband <= 0 && deadbandPercentage <= 0)) {
+            // Deadband only applies to number values
+            return true;
+        }
+
+        double band = Math.max(deadband, Math.abs(last.value) * deadbandPercentage / 100d);
+        return Math.abs(value - last.value) > band;
+    }
+
+    protected static long getIntervalMillis(Attribute<?> attribute, MetaItemDescriptor<String> metaItemDescriptor) {
+        return attribute.getMetaValue(metaItemDescriptor).map(interval -> {
+            try {
+                return TimeUtil.parseTimeDuration(interval);
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Failed to parse '" + metaItemDescriptor.getName() + "' value '" + interval + "' for attribute: " + attribute.getName(), e);
+                return 0L;
+            }
+        }).orElse(0L);
+    }
+
+    public void remove(String assetId) {
+        lastStored.keySet().removeIf(attributeRef -> attributeRef.getId().equals(assetId));
+    }
+
+    public void remove(AttributeRef attributeRef) {
+        lastStored.remove(attributeRef);
+    }
+}
@@ -1,6 +1,8 @@
 package org.openremote.manager.datapoint;
 
+import org.apache.camel.builder.RouteBuilder;
 import org.openremote.agent.protocol.ProtocolDatapointService;
+import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.timer.TimerService;
 import org.openremote.container.util.UniqueIdentifierGenerator;
 import org.openremote.manager.asset.AssetProcessingException;
@@ -9,12 +11,16 @@ import org.openremote.manager.asset.AssetUpdateProcessor;
 import org.openremote.manager.security.ManagerIdentityService;
 import org.openremote.manager.web.ManagerWebService;
 import org.openremote.model.Container;
+import org.openremote.model.PersistenceEvent;
 import org.openremote.model.asset.Asset;
 import org.openremote.model.attribute.Attribute;
 import org.openremote.model.attribute.AttributeEvent.Source;
+import org.openremote.model.attribute.AttributeMap;
 import org.openremote.model.attribute.AttributeRef;
 import org.openremote.model.attribute.AttributeWriteFailure;
 import org.openremote.model.datapoint.AssetDatapoint;
+import org.openremote.model.datapoint.ValueDatapoint;
+import org.openremote.model.datapoint.query.AssetDatapointQuery;
 import org.openremote.model.query.AssetQuery;
 import org.openremote.model.query.filter.AttributePredicate;
 import org.openremote.model.query.filter.NameValuePredicate;
@@ -42,6 +48,9 @@ import java.util.stream.Collectors;
 import static java.time.temporal.ChronoUnit.DAYS;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
+import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
+import static org.openremote.container.util.MapAccess.getBoolean;
 import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.model.value.MetaItemType.STORE_DATA_POINTS;
 
@@ -50,15 +59,33 @@ import static org.openremote.model.value.MetaItemType.STORE_DATA_POINTS;
  * {@link MetaItemType#DATA_POINTS_MAX_AGE_DAYS} {@link org.openremote.model.attribute.MetaItem}
  * and {@link #OR_DATA_POINTS_MAX_AGE_DAYS} setting; storage duration defaults to {@value #OR_DATA_POINTS_MAX_AGE_DAYS_DEFAULT}
  * days.
+ * <p>
+ * The most recent data points of number and boolean attributes can be kept in memory (see {@link AssetDatapointCache})
+ * using the {@link MetaItemType#DATA_POINTS_CACHE_SIZE} {@link org.openremote.model.attribute.MetaItem} and/or the
+ * {@link #OR_DATA_POINTS_CACHE_SIZE} setting; this is disabled by default.
+ * <p>
+ * Which attribute values are stored can be reduced using deadband and recording interval meta items, see
+ * {@link AssetDatapointRecordingFilter}.
  */
 public class AssetDatapointService extends AbstractDatapointService<AssetDatapoint> implements AssetUpdateProcessor, ProtocolDatapointService {
 
     public static final String OR_DATA_POINTS_MAX_AGE_DAYS = "OR_DATA_POINTS_MAX_AGE_DAYS";
     public static final int OR_DATA_POINTS_MAX_AGE_DAYS_DEFAULT = 31;
+    /**
+     * When true the typed numeric column of any existing number and boolean datapoints will be back filled in the
+     * background at startup, see {@link #migrateNumericValues()}.
+     */
+    public static final String OR_DATA_POINTS_MIGRATE_NUMERIC_VALUES = "OR_DATA_POINTS_MIGRATE_NUMERIC_VALUES";
+    public static final String OR_DATA_POINTS_CACHE_SIZE = "OR_DATA_POINTS_CACHE_SIZE";
+    public static final int OR_DATA_POINTS_CACHE_SIZE_DEFAULT = 0;
     private static final Logger LOG = Logger.getLogger(AssetDatapointService.class.getName());
     protected static final String EXPORT_STORAGE_DIR_NAME = "datapoint";
+    protected static final String DATAPOINT_PERIOD_TABLE_NAME = "asset_datapoint_period";
     protected int maxDatapointAgeDays;
+    protected boolean migrateNumericValuesOnStart;
     protected Path exportPath;
+    protected AssetDatapointCache datapointCache;
+    protected AssetDatapointRecordingFilter recordingFilter;
 
     @Override
     public void init(Container container) throws Exception {
@@ -79,6 +106,13 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
             LOG.warning(OR_DATA_POINTS_MAX_AGE_DAYS + " value is not a valid value so data points won't be auto purged");
         }
 
+        migrateNumericValuesOnStart = getBoolean(container.getConfig(), OR_DATA_POINTS_MIGRATE_NUMERIC_VALUES, false);
+        datapointCache = new AssetDatapointCache(
+            getInteger(container.getConfig(), OR_DATA_POINTS_CACHE_SIZE, OR_DATA_POINTS_CACHE_SIZE_DEFAULT),
+            container.getMeterRegistry()
+        );
+        recordingFilter = new AssetDatapointRecordingFilter(container.getMeterRegistry());
+
         Path storageDir = persistenceService.getStorageDir();
         exportPath = storageDir.resolve(EXPORT_STORAGE_DIR_NAME);
         // Ensure export dir exists and is writable
@@ -90,6 +124,17 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
 
     @Override
     public void start(Container container) throws Exception {
+        container.getService(MessageBrokerService.class).getContext().addRoutes(new RouteBuilder() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void configure() throws Exception {
+                from(PERSISTENCE_TOPIC)
+                    .routeId("Persistence-DatapointCache")
+                    .filter(isPersistenceEventForEntityType(Asset.class))
+                    .process(exchange -> onAssetPersistenceEvent((PersistenceEvent<Asset<?>>)exchange.getIn().getBody(PersistenceEvent.class)));
+            }
+        });
+
         if (maxDatapointAgeDays > 0) {
             dataPointsPurgeScheduledFuture = executorService.scheduleAtFixedRate(
                 this::purgeDataPoints,
@@ -97,6 +142,16 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
                 Duration.ofDays(1).toMillis(), TimeUnit.MILLISECONDS
             );
         }
+
+        if (migrateNumericValuesOnStart) {
+            executorService.execute(() -> {
+                try {
+                    migrateNumericValues();
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Failed to migrate data points to typed numeric storage", e);
+                }
+            });
+        }
     }
 
     public static boolean attributeIsStoreDatapoint(Attribute<?> attribute) {
@@ -110,8 +165,16 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
                                       Source source) throws AssetProcessingException {
 
         if (attributeIsStoreDatapoint(attribute) && attribute.getValue().isPresent()) { // Don't store datapoints with null value
+            long timestamp = attribute.getTimestamp().orElseGet(timerService::getCurrentTimeMillis);
+
+            if (!recordingFilter.shouldStore(asset.getId(), attribute, timestamp)) {
+                return false;
+            }
+
             try {
-                upsertValue(asset.getId(), attribute.getName(), attribute.getValue().orElse(null), LocalDateTime.ofInstant(Instant.ofEpochMilli(attribute.getTimestamp().orElseGet(timerService::getCurrentTimeMillis)), ZoneId.systemDefault()));
+                datapointCache.configure(asset.getId(), attribute);
+                upsertValue(asset.getId(), attribute.getName(), attribute.getValue().orElse(null), LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()));
+                recordingFilter.onStored(asset.getId(), attribute, timestamp);
             } catch (Exception e) {
                 throw new AssetProcessingException(AttributeWriteFailure.STATE_STORAGE_FAILED, "Failed to insert or update asset data point for attribute: " + attribute, e);
             }
@@ -119,6 +182,58 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
         return false;
     }
 
+    @Override
+    public void upsertValue(String assetId, String attributeName, Object value, LocalDateTime timestamp) throws IllegalStateException {
+        super.upsertValue(assetId, attributeName, value, timestamp);
+        datapointCache.onDatapointStored(assetId, attributeName, timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), value);
+    }
+
+    @Override
+    public void upsertValues(String assetId, String attributeName, List<Pair<?, LocalDateTime>> valuesAndTimestamps) throws IllegalStateException {
+        super.upsertValues(assetId, attributeName, valuesAndTimestamps);
+        valuesAndTimestamps.forEach(valueAndTimestamp ->
+            datapointCache.onDatapointStored(assetId, attributeName, valueAndTimestamp.value.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), valueAndTimestamp.key));
+    }
+
+    @Override
+    public ValueDatapoint<?>[] queryDatapoints(String assetId, Attribute<?> attribute, AssetDatapointQuery datapointQuery) {
+        ValueDatapoint<?>[] cachedDatapoints = datapointCache.query(new AttributeRef(assetId, attribute.getName()), datapointQuery);
+        if (cachedDatapoints != null) {
+            LOG.finest("Returning cached datapoints for: " + assetId + ":" + attribute.getName());
+            return cachedDatapoints;
+        }
+        return super.queryDatapoints(assetId, attribute, datapointQuery);
+    }
+
+    protected void onAssetPersistenceEvent(PersistenceEvent<Asset<?>> persistenceEvent) {
+        Asset<?> asset = persistenceEvent.getEntity();
+
+        switch (persistenceEvent.getCause()) {
+            case DELETE -> {
+                datapointCache.remove(asset.getId());
+                recordingFilter.remove(asset.getId());
+            }
+            case UPDATE -> {
+                if (persistenceEvent.getPropertyNames() == null || !persistenceEvent.getPropertyNames().contains("attributes")) {
+                    return;
+                }
+                AttributeMap oldAttributes = persistenceEvent.getPreviousState("attributes");
+                AttributeMap newAttributes = persistenceEvent.getCurrentState("attributes");
+                if (oldAttributes == null || newAttributes == null) {
+                    return;
+                }
+                // Removed attributes no longer have any datapoints
+                oldAttributes.stream()
+                    .filter(attribute -> !newAttributes.has(attribute.getName()))
+                    .forEach(attribute -> {
+                        AttributeRef attributeRef = new AttributeRef(asset.getId(), attribute.getName());
+                        datapointCache.remove(attributeRef);
+                        recordingFilter.remove(attributeRef);
+                    });
+            }
+        }
+    }
+
     @Override
     protected Class<AssetDatapoint> getDatapointClass() {
         return AssetDatapoint.class;
@@ -129,6 +244,11 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
         return AssetDatapoint.TABLE_NAME;
     }
 
+    @Override
+    protected String getDatapointPeriodTableName() {
+        return DATAPOINT_PERIOD_TABLE_NAME;
+    }
+
     @Override
     protected Logger getLogger() {
         return LOG;
@@ -158,10 +278,7 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
             // Purge data points not in the above list using default duration
             LOG.fine("Purging data points of attributes that use default max age days of " + maxDatapointAgeDays);
 
-            persistenceService.doTransaction(em -> em.createQuery(
-                "delete from AssetDatapoint dp " +
-                    "where dp.timestamp < :dt" + buildWhereClause(attributes, true)
-            ).setParameter("dt", Date.from(timerService.getNow().truncatedTo(DAYS).minus(maxDatapointAgeDays, DAYS))).executeUpdate());
+            doPurgeWithPeriods(buildWhereClause(attributes, true), Date.from(timerService.getNow().truncatedTo(DAYS).minus(maxDatapointAgeDays, DAYS)));
 
             if (!attributes.isEmpty()) {
                 // Purge data points that have specific age constraints
@@ -175,10 +292,7 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
                     LOG.fine("Purging data points of " + attrs.size() + " attributes that use a max age of " + age);
 
                     try {
-                        persistenceService.doTransaction(em -> em.createQuery(
-                            "delete from AssetDatapoint dp " +
-                                "where dp.timestamp < :dt" + buildWhereClause(attrs, false)
-                        ).setParameter("dt", Date.from(timerService.getNow().truncatedTo(DAYS).minus(age, DAYS))).executeUpdate());
+                        doPurgeWithPeriods(buildWhereClause(attrs, false), Date.from(timerService.getNow().truncatedTo(DAYS).minus(age, DAYS)));
                     } catch (Exception e) {
                         LOG.log(Level.SEVERE, "An error occurred whilst deleting data points, this should not happen", e);
                     }
@@ -188,6 +302,9 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
             LOG.log(Level.WARNING, "Failed to run data points purge", e);
         }
 
+        // Cached data points may have just been purged; buffers fill up again from the write path
+        datapointCache.clear();
+
         // Purge old exports
         try {
             long oneDayMillis = 24*60*60*1000;
@@ -227,7 +344,7 @@ public class AssetDatapointService extends AbstractDatapointService<AssetDatapoi
             .map(attributeRef -> "('" + attributeRef.key + "','" + attributeRef.value.getName() + "')")
             .collect(Collectors.joining(","));
 
-        return " and (dp.assetId, dp.attributeName) " + (negate ? "not " : "") + "in (" + whereStr + ")";
+        return " and (entity_id, attribute_name) " + (negate ? "not " : "") + "in (" + whereStr + ")";
     }
 
     /**
@@ -19,6 +19,9 @@
  */
 package org.openremote.manager.datapoint;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.Session;
 import org.openremote.agent.protocol.ProtocolPredictedDatapointService;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetStorageService;
@@ -28,12 +31,18 @@ import org.openremote.model.Container;
 import org.openremote.model.attribute.AttributeRef;
 import org.openremote.model.datapoint.AssetPredictedDatapoint;
 import org.openremote.model.util.Pair;
+import org.openremote.model.util.ValueUtil;
 
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -43,6 +52,7 @@ import static java.time.temporal.ChronoUnit.HOURS;
 public class AssetPredictedDatapointService extends AbstractDatapointService<AssetPredictedDatapoint> implements ProtocolPredictedDatapointService {
 
     private static final Logger LOG = Logger.getLogger(AssetPredictedDatapointService.class.getName());
+    protected Timer replaceTimer;
 
     @Override
     public int getPriority() {
@@ -61,6 +71,11 @@ public class AssetPredictedDatapointService extends AbstractDatapointService<Ass
                 this
             )
         );
+
+        MeterRegistry meterRegistry = container.getMeterRegistry();
+        if (meterRegistry != null) {
+            replaceTimer = meterRegistry.timer("or.datapoints.predicted.replace");
+        }
     }
 
     @Override
@@ -90,6 +105,75 @@ public class AssetPredictedDatapointService extends AbstractDatapointService<Ass
         ).setParameter(1, assetId).setParameter(2, attributeName).executeUpdate());
     }
 
+    /**
+     * Replaces all predicted datapoints of each of the specified attributes with the supplied values in a single
+     * transaction, so readers never see a partially written forecast. This is much cheaper than calling
+     * {@link #purgeValues} and {@link #updateValues} per attribute: the delete is a single statement and all values
+     * are inserted with one multi-row insert (using arrays so the number of statement parameters is fixed). An
+     * attribute with an empty list of values just has its predicted datapoints removed.
+     */
+    public void replaceValues(Map<AttributeRef, List<Pair<?, LocalDateTime>>> attributeValuesAndTimestamps) {
+        if (attributeValuesAndTimestamps.isEmpty()) {
+            return;
+        }
+
+        long startMillis = System.currentTimeMillis();
+        List<String> deleteIds = new ArrayList<>();
+        List<String> deleteNames = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        List<Timestamp> timestamps = new ArrayList<>();
+        List<Double> numericValues = new ArrayList<>();
+
+        attributeValuesAndTimestamps.forEach((attributeRef, valuesAndTimestamps) -> {
+            deleteIds.add(attributeRef.getId());
+            deleteNames.add(attributeRef.getName());
+
+            // Last value wins for duplicate timestamps as a row can't be inserted twice in the same statement
+            Map<LocalDateTime, Object> timestampValues = new LinkedHashMap<>();
+            valuesAndTimestamps.forEach(valueAndTimestamp -> timestampValues.put(valueAndTimestamp.value, valueAndTimestamp.key));
+            timestampValues.forEach((timestamp, value) -> {
+                ids.add(attributeRef.getId());
+                names.add(attributeRef.getName());
+                values.add(ValueUtil.asJSON(value).orElse("null"));
+                timestamps.add(Timestamp.valueOf(timestamp));
+                numericValues.add(getNumericValue(value));
+            });
+        });
+
+        persistenceService.doTransaction(em -> em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement st = connection.prepareStatement("DELETE FROM " + getDatapointTableName() +
+                " WHERE (entity_id, attribute_name) IN (SELECT * FROM unnest(?::text[], ?::text[]))")) {
+                st.setArray(1, connection.createArrayOf("text", deleteIds.toArray()));
+                st.setArray(2, connection.createArrayOf("text", deleteNames.toArray()));
+                st.executeUpdate();
+            }
+
+            if (ids.isEmpty()) {
+                return;
+            }
+
+            try (PreparedStatement st = connection.prepareStatement("INSERT INTO " + getDatapointTableName() +
+                " (entity_id, attribute_name, value, timestamp, numeric_value) " +
+                "SELECT entity_id, attribute_name, value::jsonb, timestamp, numeric_value " +
+                "FROM unnest(?::text[], ?::text[], ?::text[], ?::timestamp[], ?::float8[]) AS v(entity_id, attribute_name, value, timestamp, numeric_value)")) {
+                st.setArray(1, connection.createArrayOf("text", ids.toArray()));
+                st.setArray(2, connection.createArrayOf("text", names.toArray()));
+                st.setArray(3, connection.createArrayOf("text", values.toArray()));
+                st.setArray(4, connection.createArrayOf("timestamp", timestamps.toArray()));
+                st.setArray(5, connection.createArrayOf("float8", numericValues.toArray()));
+                st.executeUpdate();
+            }
+        }));
+
+        long durationMillis = System.currentTimeMillis() - startMillis;
+        if (replaceTimer != null) {
+            replaceTimer.record(durationMillis, TimeUnit.MILLISECONDS);
+        }
+        LOG.fine("Replaced predicted datapoints: attributes=" + attributeValuesAndTimestamps.size() + ", datapoints=" + ids.size() + ", duration=" + durationMillis + "ms");
+    }
+
     @Override
     protected Class<AssetPredictedDatapoint> getDatapointClass() {
         return AssetPredictedDatapoint.class;
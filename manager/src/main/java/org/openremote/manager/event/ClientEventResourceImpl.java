@@ -0,0 +1,45 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.event;
+
+import jakarta.ws.rs.WebApplicationException;
+import org.openremote.container.web.WebResource;
+import org.openremote.model.event.ClientEventDiagnostics;
+import org.openremote.model.event.ClientEventResource;
+
+import static jakarta.ws.rs.core.Response.Status.FORBIDDEN;
+
+public class ClientEventResourceImpl extends WebResource implements ClientEventResource {
+
+    final protected ClientEventService clientEventService;
+
+    public ClientEventResourceImpl(ClientEventService clientEventService) {
+        this.clientEventService = clientEventService;
+    }
+
+    @Override
+    public ClientEventDiagnostics getDiagnostics() {
+        // Diagnostics cover the sessions and subscriptions of all realms
+        if (!isSuperUser()) {
+            throw new WebApplicationException(FORBIDDEN);
+        }
+        return clientEventService.getDiagnostics();
+    }
+}
@@ -19,12 +19,20 @@
  */
 package org.openremote.manager.event;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.undertow.websockets.core.WebSocketChannel;
+import io.undertow.websockets.extensions.ExtensionHandshake;
 import io.undertow.websockets.spi.WebSocketHttpExchange;
 import org.apache.camel.Exchange;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.undertow.UndertowComponent;
 import org.apache.camel.component.undertow.UndertowConstants;
+import org.apache.camel.component.seda.SedaEndpoint;
 import org.apache.camel.component.undertow.UndertowHostKey;
 import org.keycloak.KeycloakPrincipal;
 import org.openremote.container.message.MessageBrokerService;
@@ -32,6 +40,7 @@ import org.openremote.container.security.AuthContext;
 import org.openremote.container.security.basic.BasicAuthContext;
 import org.openremote.container.security.keycloak.AccessTokenAuthContext;
 import org.openremote.container.timer.TimerService;
+import org.openremote.manager.event.SessionEventBuffer.SlowConsumerPolicy;
 import org.openremote.manager.gateway.GatewayService;
 import org.openremote.manager.security.ManagerIdentityService;
 import org.openremote.manager.web.ManagerWebService;
@@ -39,23 +48,23 @@ import org.openremote.model.Constants;
 import org.openremote.model.Container;
 import org.openremote.model.ContainerService;
 import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.event.ClientEventDiagnostics;
+import org.openremote.model.event.TriggeredEventSubscription;
 import org.openremote.model.event.shared.*;
 import org.openremote.model.syslog.SyslogEvent;
 
 import java.io.IOException;
 import java.security.Principal;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.ExecutorService;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 import static java.lang.System.Logger.Level.*;
 import static org.apache.camel.builder.PredicateBuilder.or;
+import static org.openremote.container.util.MapAccess.getBoolean;
+import static org.openremote.container.util.MapAccess.getInteger;
+import static org.openremote.container.util.MapAccess.getString;
 import static org.openremote.manager.asset.AssetProcessingService.ATTRIBUTE_EVENT_QUEUE;
 import static org.openremote.model.Constants.*;
 import static org.openremote.model.attribute.AttributeEvent.HEADER_SOURCE;
@@ -101,7 +110,33 @@ import static org.openremote.model.attribute.AttributeEvent.Source.CLIENT;
  * <dd><p>
  * The payload is an array of {@link SharedEvent}s.
  * </p></dd>
+ * <dt><code>TRIGGERED:{...}</code></dt>
+ * <dd><p>
+ * The payload is a serialized representation of {@link TriggeredEventSubscription}.
+ * </p></dd>
+ * <dt><code>TRIGGERED:[...]</code></dt>
+ * <dd><p>
+ * The payload is an array of {@link TriggeredEventSubscription}s.
+ * </p></dd>
  * </dl>
+ * <p>
+ * When {@link #OR_EVENTS_FLUSH_INTERVAL_MILLIS} is set the {@link TriggeredEventSubscription}s destined for a websocket
+ * session are buffered in a {@link SessionEventBuffer} and sent as one message each flush interval; this is a
+ * <code>TRIGGERED:{...}</code> message when the events belong to one subscription otherwise a
+ * <code>TRIGGERED:[...]</code> message. Other messages for a session with buffered events are sent after those events.
+ * The size of each session buffer is limited by
+ * {@link #OR_EVENTS_SESSION_BUFFER_SIZE} and {@link #OR_EVENTS_SLOW_CONSUMER_POLICY} determines what happens when a
+ * session can't keep up.
+ * <p>
+ * Published events are split for subscribers by {@link #OR_EVENTS_PUBLISH_SHARDS} publish queues each with a single
+ * consumer; events are partitioned by asset ID (or event type for events not related to an asset) so events of the
+ * same asset are split in the order they were published. This order is not preserved end to end: messages for clients
+ * then go through {@link #CLIENT_OUTBOUND_QUEUE} which has multiple consumers. The number and size of the publish
+ * queues are fixed at startup.
+ * <p>
+ * Internal subscription consumers are called by the publish queue consumers so unless they are added as concurrent
+ * (see {@link #addInternalSubscription(String, Class, EventFilter, Consumer, boolean)}) calls are serialised per
+ * consumer.
  */
 public class ClientEventService extends RouteBuilder implements ContainerService {
 
@@ -116,29 +151,65 @@ public class ClientEventService extends RouteBuilder implements ContainerService
     }
 
     public static final int PRIORITY = ManagerWebService.PRIORITY - 200;
+    public static final String OR_EVENTS_FLUSH_INTERVAL_MILLIS = "OR_EVENTS_FLUSH_INTERVAL_MILLIS";
+    public static final int OR_EVENTS_FLUSH_INTERVAL_MILLIS_DEFAULT = 0;
+    public static final String OR_EVENTS_SESSION_BUFFER_SIZE = "OR_EVENTS_SESSION_BUFFER_SIZE";
+    public static final int OR_EVENTS_SESSION_BUFFER_SIZE_DEFAULT = 1000;
+    public static final String OR_EVENTS_SLOW_CONSUMER_POLICY = "OR_EVENTS_SLOW_CONSUMER_POLICY";
+    public static final SlowConsumerPolicy OR_EVENTS_SLOW_CONSUMER_POLICY_DEFAULT = SlowConsumerPolicy.KEEP_LATEST;
+    public static final String OR_EVENTS_COMPRESSION_ENABLED = "OR_EVENTS_COMPRESSION_ENABLED";
+    public static final boolean OR_EVENTS_COMPRESSION_ENABLED_DEFAULT = false;
+    public static final String OR_EVENTS_COMPRESSION_LEVEL = "OR_EVENTS_COMPRESSION_LEVEL";
+    public static final int OR_EVENTS_COMPRESSION_LEVEL_DEFAULT = 6;
+    public static final String OR_EVENTS_COMPRESSION_CONTEXT_TAKEOVER = "OR_EVENTS_COMPRESSION_CONTEXT_TAKEOVER";
+    public static final boolean OR_EVENTS_COMPRESSION_CONTEXT_TAKEOVER_DEFAULT = true;
+    public static final String OR_EVENTS_COMPRESSION_MIN_SIZE = "OR_EVENTS_COMPRESSION_MIN_SIZE";
+    public static final int OR_EVENTS_COMPRESSION_MIN_SIZE_DEFAULT = 256;
     public static final String HEADER_CONNECTION_TYPE = ClientEventService.class.getName() + ".HEADER_CONNECTION_TYPE";
     public static final String HEADER_CONNECTION_TYPE_WEBSOCKET = "websocket";
     public static final String HEADER_CONNECTION_TYPE_MQTT = "mqtt";
     public static final String HEADER_REQUEST_RESPONSE_MESSAGE_ID = ClientEventService.class.getName() + ".HEADER_REQUEST_RESPONSE_MESSAGE_ID";
+    public static final String HEADER_PUBLISH_TIME = ClientEventService.class.getName() + ".HEADER_PUBLISH_TIME";
     public static final String WEBSOCKET_URI = "undertow://ws://0.0.0.0/websocket/events?fireWebSocketChannelEvents=true&sendTimeout=15000"; // Host is not used as existing undertow instance is utilised
     public static final String CLIENT_INBOUND_QUEUE = "seda://ClientInboundQueue?multipleConsumers=true&concurrentConsumers=2&waitForTaskToComplete=IfReplyExpected&purgeWhenStopping=true&discardIfNoConsumers=true&limitConcurrentConsumers=false&size=1000";
     public static final String CLIENT_OUTBOUND_QUEUE = "seda://ClientOutboundQueue?multipleConsumers=true&concurrentConsumers=2&purgeWhenStopping=true&discardIfNoConsumers=true&limitConcurrentConsumers=false&size=1000";
     protected static final System.Logger LOG = System.getLogger(ClientEventService.class.getName());
     protected static final String INTERNAL_SESSION_KEY = "ClientEventServiceInternal";
-    protected static final String PUBLISH_QUEUE = "seda://ClientPublishQueue?multipleConsumers=false&purgeWhenStopping=true&discardIfNoConsumers=true&size=1000";
+    // Events of a batch wait for space in the attribute event queue rather than the rest of the batch being dropped
+    protected static final String ATTRIBUTE_EVENT_BATCH_QUEUE = ATTRIBUTE_EVENT_QUEUE + "&blockWhenFull=true&offerTimeout=10000";
+    protected static final String PUBLISH_QUEUE = "seda://ClientPublishQueue";
+    public static final String OR_EVENTS_PUBLISH_SHARDS = "OR_EVENTS_PUBLISH_SHARDS";
+    public static final int OR_EVENTS_PUBLISH_SHARDS_MAX = 8;
+    public static final String OR_EVENTS_PUBLISH_QUEUE_SIZE = "OR_EVENTS_PUBLISH_QUEUE_SIZE";
+    public static final int OR_EVENTS_PUBLISH_QUEUE_SIZE_DEFAULT = 1000;
 
     final protected Collection<EventSubscriptionAuthorizer> eventSubscriptionAuthorizers = new CopyOnWriteArraySet<>();
     final protected Collection<EventAuthorizer> eventAuthorizers = new CopyOnWriteArraySet<>();
     final protected Collection<Consumer<Exchange>> exchangeInterceptors = new CopyOnWriteArraySet<>();
     protected ConcurrentMap<String, SessionInfo> sessionKeyInfoMap = new ConcurrentHashMap<>();
     protected TimerService timerService;
-    protected ExecutorService executorService;
+    protected ScheduledExecutorService executorService;
     protected MessageBrokerService messageBrokerService;
     protected ManagerIdentityService identityService;
     protected EventSubscriptions eventSubscriptions;
     protected GatewayService gatewayService;
     protected Set<EventSubscription<?>> pendingInternalSubscriptions;
     protected boolean stopped;
+    protected Counter sentCounter;
+    protected ConcurrentMap<String, SessionEventBuffer> sessionEventBuffers = new ConcurrentHashMap<>();
+    protected int flushIntervalMillis;
+    protected int sessionBufferSize;
+    protected SlowConsumerPolicy slowConsumerPolicy;
+    protected ScheduledFuture<?> flushFuture;
+    protected DistributionSummary queueDepthSummary;
+    protected MeterRegistry meterRegistry;
+    protected String[] publishQueues;
+    final protected LongAdder publishedCount = new LongAdder();
+    final protected LongAdder rejectedCount = new LongAdder();
+    final protected LongAdder droppedCount = new LongAdder();
+    final protected LongAdder inboundDroppedCount = new LongAdder();
+    protected Timer sendTimer;
+    protected Timer deliveryLatencyTimer;
 
     /**
      * Method to stop further processing of the exchange
@@ -173,15 +244,88 @@ public class ClientEventService extends RouteBuilder implements ContainerService
         executorService = container.getExecutorService();
 
         ManagerWebService webService = container.getService(ManagerWebService.class);
+        webService.addApiSingleton(new ClientEventResourceImpl(this));
 
         eventSubscriptions = new EventSubscriptions(
-            container.getService(TimerService.class)
+            container.getService(TimerService.class),
+            executorService,
+            this::sendToSession,
+            container.getMeterRegistry()
         );
 
+        flushIntervalMillis = getInteger(container.getConfig(), OR_EVENTS_FLUSH_INTERVAL_MILLIS, OR_EVENTS_FLUSH_INTERVAL_MILLIS_DEFAULT);
+        sessionBufferSize = getInteger(container.getConfig(), OR_EVENTS_SESSION_BUFFER_SIZE, OR_EVENTS_SESSION_BUFFER_SIZE_DEFAULT);
+        slowConsumerPolicy = Optional.ofNullable(getString(container.getConfig(), OR_EVENTS_SLOW_CONSUMER_POLICY, null)).map(SlowConsumerPolicy::valueOf).orElse(OR_EVENTS_SLOW_CONSUMER_POLICY_DEFAULT);
+        meterRegistry = container.getMeterRegistry();
+
+        // Default to a shard per processor (bounded); shard count and queue size are fixed once the routes are created
+        int publishShards = getInteger(container.getConfig(), OR_EVENTS_PUBLISH_SHARDS, Math.min(OR_EVENTS_PUBLISH_SHARDS_MAX, Math.max(2, Runtime.getRuntime().availableProcessors())));
+        int publishQueueSize = getInteger(container.getConfig(), OR_EVENTS_PUBLISH_QUEUE_SIZE, OR_EVENTS_PUBLISH_QUEUE_SIZE_DEFAULT);
+        publishQueues = new String[Math.max(1, publishShards)];
+        for (int i = 0; i < publishQueues.length; i++) {
+            publishQueues[i] = getPublishQueue(i, publishQueueSize);
+        }
+        LOG.log(INFO, "Client event publish shards=" + publishQueues.length + ", queue size per shard=" + publishQueueSize);
+
+        if (meterRegistry != null) {
+            FunctionCounter.builder("or.client.events.published", publishedCount, LongAdder::sum)
+                .description("Events published to clients")
+                .register(meterRegistry);
+            FunctionCounter.builder("or.client.events.inbound.dropped", inboundDroppedCount, LongAdder::sum)
+                .description("Attribute events written by clients that couldn't be queued for processing")
+                .register(meterRegistry);
+            FunctionCounter.builder("or.client.events.publish.rejected", rejectedCount, LongAdder::sum)
+                .description("Events that couldn't be published to clients because the publish queue was full")
+                .register(meterRegistry);
+            for (String connectionType : List.of(HEADER_CONNECTION_TYPE_WEBSOCKET, HEADER_CONNECTION_TYPE_MQTT)) {
+                Gauge.builder("or.client.sessions", sessionKeyInfoMap, sessions -> sessions.values().stream().filter(info -> connectionType.equals(info.connectionType)).count())
+                    .description("Client sessions by connection type")
+                    .tag("connectionType", connectionType)
+                    .register(meterRegistry);
+            }
+            sendTimer = Timer.builder("or.client.events.send")
+                .description("Time taken to send a message to a websocket client")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+            deliveryLatencyTimer = Timer.builder("or.client.events.delivery.latency")
+                .description("Time from an event being published to it being sent to (or buffered for) a websocket client")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+            Gauge.builder("or.client.events.publish.shards", publishQueues, queues -> queues.length)
+                .description("Number of client event publish queues")
+                .register(meterRegistry);
+
+            sentCounter = Counter.builder("or.client.events.sent")
+                .description("Characters of event messages sent to websocket clients")
+                .baseUnit("characters")
+                .register(meterRegistry);
+
+            if (flushIntervalMillis > 0) {
+                queueDepthSummary = DistributionSummary.builder("or.client.session.queue.depth")
+                    .description("Events buffered per websocket session at each flush")
+                    .baseUnit("events")
+                    .register(meterRegistry);
+                Gauge.builder("or.client.session.queue.size", sessionEventBuffers, buffers -> buffers.values().stream().mapToInt(SessionEventBuffer::size).sum())
+                    .description("Events buffered for all websocket sessions")
+                    .baseUnit("events")
+                    .register(meterRegistry);
+            }
+        }
+
+        List<ExtensionHandshake> websocketExtensions = new ArrayList<>();
+        if (getBoolean(container.getConfig(), OR_EVENTS_COMPRESSION_ENABLED, OR_EVENTS_COMPRESSION_ENABLED_DEFAULT)) {
+            websocketExtensions.add(new PerMessageDeflateExtension(
+                getInteger(container.getConfig(), OR_EVENTS_COMPRESSION_LEVEL, OR_EVENTS_COMPRESSION_LEVEL_DEFAULT),
+                getBoolean(container.getConfig(), OR_EVENTS_COMPRESSION_CONTEXT_TAKEOVER, OR_EVENTS_COMPRESSION_CONTEXT_TAKEOVER_DEFAULT),
+                getInteger(container.getConfig(), OR_EVENTS_COMPRESSION_MIN_SIZE, OR_EVENTS_COMPRESSION_MIN_SIZE_DEFAULT),
+                meterRegistry
+            ));
+        }
+
         UndertowComponent undertowWebsocketComponent = new UndertowComponent(messageBrokerService.getContext()) {
             @Override
             protected org.apache.camel.component.undertow.UndertowHost createUndertowHost(UndertowHostKey key) {
-                return new UndertowHost(container, key, getHostOptions());
+                return new UndertowHost(container, key, getHostOptions(), websocketExtensions);
             }
         };
         messageBrokerService.getContext().addComponent("undertow", undertowWebsocketComponent);
@@ -341,11 +485,39 @@ public class ClientEventService extends RouteBuilder implements ContainerService
             .to(ATTRIBUTE_EVENT_QUEUE)
             .stop()
             .endChoice()
+            .when(body().isInstanceOf(AttributeEvent[].class))
+            .process(exchange -> {
+                // Already authorised batch of events (e.g. an MQTT bulk write) so enqueue them in order, waiting for
+                // space in the queue when it is full
+                AttributeEvent[] attributeEvents = exchange.getIn().getBody(AttributeEvent[].class);
+                for (int i = 0; i < attributeEvents.length; i++) {
+                    Exchange sendExchange = messageBrokerService.getFluentProducerTemplate()
+                        .withHeaders(new HashMap<>(exchange.getIn().getHeaders()))
+                        .withBody(attributeEvents[i])
+                        .to(ATTRIBUTE_EVENT_BATCH_QUEUE)
+                        .send();
+
+                    if (sendExchange.getException() != null) {
+                        // Stop here so later events in the batch aren't applied out of order
+                        int remaining = attributeEvents.length - i;
+                        LOG.log(WARNING, "Failed to enqueue attribute event batch, " + i + " of " + attributeEvents.length + " events sent, dropping " + remaining + ": " + attributeEvents[i], sendExchange.getException());
+                        inboundDroppedCount.add(remaining);
+                        exchange.setException(new IllegalStateException("Partial failure enqueuing attribute event batch: " + i + " of " + attributeEvents.length + " events sent", sendExchange.getException()));
+                        return;
+                    }
+                }
+            })
+            .stop()
+            .endChoice()
             .when(header(SESSION_OPEN))
             .process(exchange -> {
                 String sessionKey = getSessionKey(exchange);
                 LOG.log(TRACE, "Adding session: " + sessionKey);
-                sessionKeyInfoMap.put(sessionKey, createSessionInfo(sessionKey, exchange));
+                SessionInfo sessionInfo = createSessionInfo(sessionKey, exchange);
+                sessionKeyInfoMap.put(sessionKey, sessionInfo);
+                if (flushIntervalMillis > 0 && HEADER_CONNECTION_TYPE_WEBSOCKET.equals(sessionInfo.connectionType)) {
+                    sessionEventBuffers.put(sessionKey, new SessionEventBuffer(sessionBufferSize, slowConsumerPolicy));
+                }
             })
             .stop()
             .when(or(
@@ -356,6 +528,7 @@ public class ClientEventService extends RouteBuilder implements ContainerService
                 String sessionKey = getSessionKey(exchange);
                 LOG.log(TRACE, "Removing session: " + sessionKey);
                 sessionKeyInfoMap.remove(sessionKey);
+                removeSessionEventBuffer(sessionKey);
                 eventSubscriptions.cancelAll(sessionKey);
             })
             .stop()
@@ -381,20 +554,24 @@ public class ClientEventService extends RouteBuilder implements ContainerService
             .stop()
             .end();
 
-        // Split publish messages for individual subscribers
-        from(PUBLISH_QUEUE)
-            .routeId("ClientOutbound-Splitter")
-            .split(method(eventSubscriptions, "splitForSubscribers"))
-            .process(exchange -> {
-                String sessionKey = getSessionKey(exchange);
-                SessionInfo sessionInfo = sessionKeyInfoMap.get(sessionKey);
-                if (sessionInfo == null) {
-                    LOG.log(INFO, "Cannot send to requested session it doesn't exist or is disconnected:" + sessionKey);
-                    return;
-                }
-                exchange.getIn().setHeader(HEADER_CONNECTION_TYPE, sessionInfo.connectionType);
-            })
-            .to(CLIENT_OUTBOUND_QUEUE);
+        // Split publish messages for individual subscribers, each shard has a single consumer so events of an asset are
+        // split in order (the outbound queue has multiple consumers so client delivery order isn't guaranteed)
+        for (int i = 0; i < publishQueues.length; i++) {
+            from(publishQueues[i])
+                .routeId("ClientOutbound-Splitter-" + i)
+                .split(method(eventSubscriptions, "splitForSubscribers"))
+                .process(exchange -> {
+                    String sessionKey = getSessionKey(exchange);
+                    SessionInfo sessionInfo = sessionKeyInfoMap.get(sessionKey);
+                    if (sessionInfo == null) {
+                        LOG.log(INFO, "Cannot send to requested session it doesn't exist or is disconnected:" + sessionKey);
+                        incrementDropped("session_closed", 1);
+                        return;
+                    }
+                    exchange.getIn().setHeader(HEADER_CONNECTION_TYPE, sessionInfo.connectionType);
+                })
+                .to(CLIENT_OUTBOUND_QUEUE);
+        }
 
         // Route messages destined for websocket clients
         from(CLIENT_OUTBOUND_QUEUE)
@@ -402,14 +579,153 @@ public class ClientEventService extends RouteBuilder implements ContainerService
             .filter(header(HEADER_CONNECTION_TYPE).isEqualTo(HEADER_CONNECTION_TYPE_WEBSOCKET))
             .process(exchange -> {
                 String sessionKey = exchange.getIn().getHeader(SESSION_KEY, String.class);
-                messageBrokerService.getFluentProducerTemplate()
-                    .withBody(exchange.getIn().getBody())
-                    .withHeader(UndertowConstants.CONNECTION_KEY, sessionKey)
-                    .to(WEBSOCKET_URI)
-                    .asyncSend();
+                Object body = exchange.getIn().getBody();
+                Long publishTime = exchange.getIn().getHeader(HEADER_PUBLISH_TIME, Long.class);
+
+                if (publishTime != null && deliveryLatencyTimer != null) {
+                    deliveryLatencyTimer.record(System.nanoTime() - publishTime, TimeUnit.NANOSECONDS);
+                }
+
+                if (body instanceof TriggeredEventSubscription<?> triggeredEventSubscription) {
+                    if (flushIntervalMillis > 0) {
+                        bufferForSession(sessionKey, triggeredEventSubscription);
+                        return;
+                    }
+                    // Render here so shared event JSON is used and sent size can be measured
+                    body = exchange.getIn().getBody(String.class);
+                } else if (flushIntervalMillis > 0) {
+                    // Don't overtake buffered events
+                    SessionEventBuffer buffer = sessionEventBuffers.get(sessionKey);
+                    if (buffer != null && buffer.addIfPending(body)) {
+                        return;
+                    }
+                }
+
+                sendToWebsocket(sessionKey, body);
             });
     }
 
+    protected Future<?> sendToWebsocket(String sessionKey, Object body) {
+        if (body instanceof TriggeredEventSubscription<?> || body instanceof TriggeredEventSubscription<?>[]) {
+            body = messageBrokerService.getContext().getTypeConverter().convertTo(String.class, body);
+        }
+        if (body instanceof String message && sentCounter != null) {
+            sentCounter.increment(message.length());
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<Exchange> future = messageBrokerService.getFluentProducerTemplate()
+            .withBody(body)
+            .withHeader(UndertowConstants.CONNECTION_KEY, sessionKey)
+            .to(WEBSOCKET_URI)
+            .asyncSend();
+
+        if (sendTimer != null) {
+            future.whenComplete((exchange, throwable) -> sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        }
+        return future;
+    }
+
+    protected void bufferForSession(String sessionKey, TriggeredEventSubscription<?> triggeredEventSubscription) {
+        // Buffers are created when the session opens and removed when it closes so a missing buffer means the session
+        // has already closed
+        SessionEventBuffer buffer = sessionEventBuffers.get(sessionKey);
+        if (buffer == null) {
+            LOG.log(DEBUG, "Cannot buffer events for session it doesn't exist or is disconnected: " + sessionKey);
+            incrementDropped("session_closed", 1);
+            return;
+        }
+        SessionEventBuffer.AddResult result = buffer.add(triggeredEventSubscription);
+
+        switch (result) {
+            case REPLACED, DROPPED_OLDEST -> incrementDropped(slowConsumerPolicy.name(), 1);
+            case OVERFLOW -> {
+                LOG.log(INFO, "Closing slow websocket session as its event buffer is full: " + sessionKey);
+                incrementDropped(slowConsumerPolicy.name(), removeSessionEventBuffer(sessionKey) + 1);
+                closeSession(sessionKey);
+            }
+        }
+    }
+
+    /**
+     * Sends the buffered events of each websocket session whose previous frames have been sent; sessions still
+     * sending keep buffering.
+     */
+    protected void flushSessionEventBuffers() {
+        sessionEventBuffers.forEach((sessionKey, buffer) -> {
+            try {
+                if (buffer.isSending()) {
+                    return;
+                }
+                int depth = buffer.size();
+                if (depth == 0) {
+                    return;
+                }
+                if (queueDepthSummary != null) {
+                    queueDepthSummary.record(depth);
+                }
+                Future<?> inFlight = null;
+                for (Object frame : buffer.drain()) {
+                    inFlight = sendToWebsocket(sessionKey, frame);
+                }
+                buffer.setInFlight(inFlight);
+            } catch (Exception e) {
+                LOG.log(WARNING, "Failed to flush events for session: " + sessionKey, e);
+            }
+        });
+    }
+
+    protected int removeSessionEventBuffer(String sessionKey) {
+        SessionEventBuffer buffer = sessionEventBuffers.remove(sessionKey);
+        return buffer != null ? buffer.clear() : 0;
+    }
+
+    protected void incrementDropped(String reason, int count) {
+        droppedCount.add(count);
+        if (meterRegistry != null && count > 0) {
+            meterRegistry.counter("or.client.events.dropped", "reason", reason).increment(count);
+        }
+    }
+
+    public ClientEventDiagnostics getDiagnostics() {
+        Map<String, Integer> sessions = new HashMap<>();
+        sessionKeyInfoMap.values().forEach(sessionInfo -> sessions.merge(String.valueOf(sessionInfo.connectionType), 1, Integer::sum));
+
+        Map<String, Integer> queueDepths = new LinkedHashMap<>();
+        queueDepths.put("inbound", getQueueSize(CLIENT_INBOUND_QUEUE));
+        for (int i = 0; i < publishQueues.length; i++) {
+            queueDepths.put("publish-" + i, getQueueSize(publishQueues[i]));
+        }
+        queueDepths.put("outbound", getQueueSize(CLIENT_OUTBOUND_QUEUE));
+        queueDepths.put("sessionBuffers", sessionEventBuffers.values().stream().mapToInt(SessionEventBuffer::size).sum());
+
+        return new ClientEventDiagnostics(
+            sessions,
+            eventSubscriptions.getSubscriptionCounts(),
+            queueDepths,
+            publishedCount.sum(),
+            rejectedCount.sum(),
+            eventSubscriptions.getFilteredCount(),
+            eventSubscriptions.getRateLimitedCount(),
+            eventSubscriptions.getDeliveredCount(),
+            droppedCount.sum()
+        );
+    }
+
+    protected int getQueueSize(String uri) {
+        SedaEndpoint endpoint = messageBrokerService.getContext().hasEndpoint(uri) instanceof SedaEndpoint sedaEndpoint ? sedaEndpoint : null;
+        return endpoint != null ? endpoint.getCurrentQueueSize() : 0;
+    }
+
+    /**
+     * @return The number of events currently buffered for each websocket session.
+     */
+    public Map<String, Integer> getSessionQueueDepths() {
+        Map<String, Integer> depths = new HashMap<>();
+        sessionEventBuffers.forEach((sessionKey, buffer) -> depths.put(sessionKey, buffer.size()));
+        return depths;
+    }
+
     /**
      * Make an internal subscription to {@link SharedEvent}s sent on the client event bus
      */
@@ -417,8 +733,26 @@ public class ClientEventService extends RouteBuilder implements ContainerService
         return addInternalSubscription(Integer.toString(Objects.hash(eventClass, filter, eventConsumer)), eventClass, filter, eventConsumer);
     }
     public <T extends SharedEvent> String addInternalSubscription(String subscriptionId, Class<T> eventClass, EventFilter<T> filter, Consumer<T> eventConsumer) {
+        return addInternalSubscription(subscriptionId, eventClass, filter, eventConsumer, false);
+    }
 
-        EventSubscription<T> subscription = new EventSubscription<T>(eventClass, filter, subscriptionId, eventConsumer);
+    /**
+     * Make an internal subscription to {@link SharedEvent}s sent on the client event bus; events are delivered by the
+     * publish queue consumers of all {@link #OR_EVENTS_PUBLISH_SHARDS} so a consumer that is not thread safe should not
+     * be concurrent, calls to it are then serialised. Events of the same asset are always delivered in publish order.
+     */
+    public <T extends SharedEvent> String addInternalSubscription(String subscriptionId, Class<T> eventClass, EventFilter<T> filter, Consumer<T> eventConsumer, boolean concurrent) {
+
+        Consumer<T> consumer = eventConsumer;
+        if (!concurrent) {
+            Object lock = new Object();
+            consumer = event -> {
+                synchronized (lock) {
+                    eventConsumer.accept(event);
+                }
+            };
+        }
+        EventSubscription<T> subscription = new EventSubscription<T>(eventClass, filter, subscriptionId, consumer);
         if (eventSubscriptions == null) {
             // Not initialised yet
             if (pendingInternalSubscriptions == null) {
@@ -442,11 +776,22 @@ public class ClientEventService extends RouteBuilder implements ContainerService
     @Override
     public void start(Container container) {
         stopped = false;
+
+        if (flushIntervalMillis > 0) {
+            LOG.log(INFO, "Buffering websocket session events: flush interval=" + flushIntervalMillis + "ms, buffer size=" + sessionBufferSize + ", slow consumer policy=" + slowConsumerPolicy);
+            flushFuture = executorService.scheduleAtFixedRate(this::flushSessionEventBuffers, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
     public void stop(Container container) {
         stopped = true;
+
+        if (flushFuture != null) {
+            flushFuture.cancel(true);
+            flushFuture = null;
+        }
+        sessionEventBuffers.keySet().forEach(this::removeSessionEventBuffer);
     }
 
     public void addExchangeInterceptor(Consumer<Exchange> exchangeInterceptor) throws RuntimeException {
@@ -517,13 +862,33 @@ public class ClientEventService extends RouteBuilder implements ContainerService
             if (!(event instanceof SyslogEvent)) {
                 LOG.log(System.Logger.Level.TRACE, () -> "Publishing to clients: " + event);
             }
-            messageBrokerService.getFluentProducerTemplate()
+            // Offering to the seda queue doesn't block so send synchronously to know whether the queue was full
+            Exchange exchange = messageBrokerService.getFluentProducerTemplate()
                 .withBody(event)
-                .to(PUBLISH_QUEUE)
-                .asyncSend();
+                .withHeader(HEADER_PUBLISH_TIME, System.nanoTime())
+                .to(publishQueues[getPublishShard(event, publishQueues.length)])
+                .send();
+
+            if (exchange.getException() != null) {
+                rejectedCount.increment();
+            } else {
+                publishedCount.increment();
+            }
         }
     }
 
+    protected static String getPublishQueue(int shard, int size) {
+        return PUBLISH_QUEUE + "-" + shard + "?multipleConsumers=false&purgeWhenStopping=true&discardIfNoConsumers=true&size=" + size;
+    }
+
+    /**
+     * Events of the same asset always go to the same shard so they are split for subscribers in publish order.
+     */
+    protected static int getPublishShard(SharedEvent event, int shards) {
+        String key = event instanceof AssetInfo assetInfo && assetInfo.getAssetId() != null ? assetInfo.getAssetId() : event.getEventType();
+        return Math.floorMod(key.hashCode(), shards);
+    }
+
     public void sendToSession(String sessionKey, Object data) {
         if (messageBrokerService != null && messageBrokerService.getFluentProducerTemplate() != null) {
             LOG.log(TRACE, () -> "Sending to session '" + sessionKey + "': " + data);
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.event;
+
+import org.openremote.model.asset.AssetFilter;
+import org.openremote.model.event.shared.AssetInfo;
+import org.openremote.model.event.shared.SharedEvent;
+import org.openremote.model.util.TextUtil;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index of {@link EventSubscriptions.SessionSubscription}s so that publishing an event only has to visit the
+ * subscriptions that could possibly match it rather than every subscription of every session.
+ * <p>
+ * Subscriptions are grouped by event type and within an event type each subscription with an {@link AssetFilter} is
+ * indexed on the most selective dimension the filter constrains: asset IDs, then parent IDs, then attribute names and
+ * finally realm. Subscriptions without an {@link AssetFilter} (or with one that doesn't constrain any of these) are
+ * always candidates. The index only narrows down the candidates; the filter of each candidate is still applied so
+ * the result is the same as checking every subscription.
+ */
+class EventSubscriptionIndex {
+
+    protected enum Dimension {
+        NONE,
+        ASSET_ID,
+        PARENT_ID,
+        ATTRIBUTE_NAME,
+        REALM
+    }
+
+    protected static class EventTypeIndex {
+        protected final Set<EventSubscriptions.SessionSubscription<?>> all = ConcurrentHashMap.newKeySet();
+        protected final Set<EventSubscriptions.SessionSubscription<?>> unindexed = ConcurrentHashMap.newKeySet();
+        protected final Map<String, Set<EventSubscriptions.SessionSubscription<?>>> assetIds = new ConcurrentHashMap<>();
+        protected final Map<String, Set<EventSubscriptions.SessionSubscription<?>>> parentIds = new ConcurrentHashMap<>();
+        protected final Map<String, Set<EventSubscriptions.SessionSubscription<?>>> attributeNames = new ConcurrentHashMap<>();
+        protected final Map<String, Set<EventSubscriptions.SessionSubscription<?>>> realms = new ConcurrentHashMap<>();
+
+        protected Map<String, Set<EventSubscriptions.SessionSubscription<?>>> getKeyMap(Dimension dimension) {
+            return switch (dimension) {
+                case ASSET_ID -> assetIds;
+                case PARENT_ID -> parentIds;
+                case ATTRIBUTE_NAME -> attributeNames;
+                case REALM -> realms;
+                default -> null;
+            };
+        }
+    }
+
+    protected final Map<String, EventTypeIndex> eventTypeIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * Determines the dimension and keys a subscription is indexed on.
+     */
+    protected static void setIndexKeys(EventSubscriptions.SessionSubscription<?> sessionSubscription) {
+        sessionSubscription.indexDimension = Dimension.NONE;
+        sessionSubscription.indexKeys = new String[0];
+
+        if (!(sessionSubscription.subscription.getFilter() instanceof AssetFilter<?> assetFilter)) {
+            return;
+        }
+
+        String[] keys;
+        if ((keys = getKeys(assetFilter.getAssetIds())) != null) {
+            sessionSubscription.indexDimension = Dimension.ASSET_ID;
+        } else if ((keys = getKeys(assetFilter.getParentIds())) != null) {
+            sessionSubscription.indexDimension = Dimension.PARENT_ID;
+        } else if ((keys = getKeys(assetFilter.getAttributeNames())) != null) {
+            sessionSubscription.indexDimension = Dimension.ATTRIBUTE_NAME;
+        } else if (!TextUtil.isNullOrEmpty(assetFilter.getRealm())) {
+            keys = new String[] {assetFilter.getRealm()};
+            sessionSubscription.indexDimension = Dimension.REALM;
+        }
+
+        if (keys != null) {
+            sessionSubscription.indexKeys = keys;
+        }
+    }
+
+    protected static String[] getKeys(String[] values) {
+        if (values == null || values.length == 0) {
+            return null;
+        }
+        // A filter value that is null can never match so can be ignored
+        String[] keys = Arrays.stream(values).filter(Objects::nonNull).distinct().toArray(String[]::new);
+        return keys.length > 0 ? keys : new String[0];
+    }
+
+    public void add(EventSubscriptions.SessionSubscription<?> sessionSubscription) {
+        setIndexKeys(sessionSubscription);
+        EventTypeIndex index = eventTypeIndexes.computeIfAbsent(sessionSubscription.subscription.getEventType(), eventType -> new EventTypeIndex());
+        index.all.add(sessionSubscription);
+
+        Map<String, Set<EventSubscriptions.SessionSubscription<?>>> keyMap = index.getKeyMap(sessionSubscription.indexDimension);
+        if (keyMap == null) {
+            index.unindexed.add(sessionSubscription);
+            return;
+        }
+
+        for (String key : sessionSubscription.indexKeys) {
+            keyMap.compute(key, (k, subscriptions) -> {
+                if (subscriptions == null) {
+                    subscriptions = ConcurrentHashMap.newKeySet();
+                }
+                subscriptions.add(sessionSubscription);
+                return subscriptions;
+            });
+        }
+    }
+
+    public void remove(EventSubscriptions.SessionSubscription<?> sessionSubscription) {
+        EventTypeIndex index = eventTypeIndexes.get(sessionSubscription.subscription.getEventType());
+        if (index == null) {
+            return;
+        }
+        index.all.remove(sessionSubscription);
+
+        Map<String, Set<EventSubscriptions.SessionSubscription<?>>> keyMap = index.getKeyMap(sessionSubscription.indexDimension);
+        if (keyMap == null) {
+            index.unindexed.remove(sessionSubscription);
+            return;
+        }
+
+        for (String key : sessionSubscription.indexKeys) {
+            keyMap.computeIfPresent(key, (k, subscriptions) -> {
+                subscriptions.remove(sessionSubscription);
+                return subscriptions.isEmpty() ? null : subscriptions;
+            });
+        }
+    }
+
+    public int getCount(String eventType) {
+        EventTypeIndex index = eventTypeIndexes.get(eventType);
+        return index != null ? index.all.size() : 0;
+    }
+
+    public Map<String, Integer> getCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        eventTypeIndexes.forEach((eventType, index) -> counts.put(eventType, index.all.size()));
+        return counts;
+    }
+
+    /**
+     * @return The subscriptions that could match the event; this is a superset of the matching subscriptions.
+     */
+    public Collection<EventSubscriptions.SessionSubscription<?>> getCandidates(SharedEvent event) {
+        EventTypeIndex index = eventTypeIndexes.get(event.getEventType());
+        if (index == null) {
+            return Collections.emptyList();
+        }
+        if (!(event instanceof AssetInfo assetInfo)) {
+            return index.all;
+        }
+
+        Set<EventSubscriptions.SessionSubscription<?>> candidates = new HashSet<>(index.unindexed);
+        addCandidates(candidates, index.assetIds, assetInfo.getAssetId());
+        addCandidates(candidates, index.parentIds, assetInfo.getParentId());
+        addCandidates(candidates, index.realms, assetInfo.getRealm());
+        if (assetInfo.getAttributeNames() != null) {
+            for (String attributeName : assetInfo.getAttributeNames()) {
+                addCandidates(candidates, index.attributeNames, attributeName);
+            }
+        }
+        return candidates;
+    }
+
+    protected static void addCandidates(Set<EventSubscriptions.SessionSubscription<?>> candidates, Map<String, Set<EventSubscriptions.SessionSubscription<?>>> keyMap, String key) {
+        if (key == null) {
+            return;
+        }
+        Set<EventSubscriptions.SessionSubscription<?>> subscriptions = keyMap.get(key);
+        if (subscriptions != null) {
+            candidates.addAll(subscriptions);
+        }
+    }
+}
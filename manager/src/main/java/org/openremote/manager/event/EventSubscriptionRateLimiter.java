@@ -0,0 +1,161 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.event;
+
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.event.shared.AssetInfo;
+import org.openremote.model.event.shared.EventSubscription;
+import org.openremote.model.event.shared.SharedEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Enforces the {@link EventSubscription#getRateLimitInterval} of a subscription; events are limited per attribute for
+ * {@link AttributeEvent}s, per asset for other {@link AssetInfo} events and per subscription otherwise.
+ * <p>
+ * In {@link EventSubscription.RateLimitMode#LATEST} mode an event arriving within the interval replaces any pending
+ * event for the same key and the pending event is delivered to the deferred consumer at the end of the interval; in
+ * {@link EventSubscription.RateLimitMode#FIRST} mode events within the interval are discarded.
+ */
+public class EventSubscriptionRateLimiter<T extends SharedEvent> {
+
+    protected static final int PRUNE_THRESHOLD = 1000;
+
+    protected static class KeyState<T> {
+        long lastDelivered;
+        T pending;
+        ScheduledFuture<?> flushFuture;
+
+        KeyState(long lastDelivered) {
+            this.lastDelivered = lastDelivered;
+        }
+    }
+
+    protected final long interval;
+    protected final EventSubscription.RateLimitMode mode;
+    protected final ScheduledExecutorService executorService;
+    protected final Consumer<T> deferredConsumer;
+    protected final LongSupplier clock;
+    protected final Map<Object, KeyState<T>> keyStates = new HashMap<>();
+    protected long lastPruned;
+    protected boolean cancelled;
+
+    public EventSubscriptionRateLimiter(long interval, EventSubscription.RateLimitMode mode, ScheduledExecutorService executorService, Consumer<T> deferredConsumer) {
+        this(interval, mode, executorService, deferredConsumer, () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+    }
+
+    public EventSubscriptionRateLimiter(long interval, EventSubscription.RateLimitMode mode, ScheduledExecutorService executorService, Consumer<T> deferredConsumer, LongSupplier clock) {
+        this.interval = interval;
+        this.mode = mode;
+        this.executorService = executorService;
+        this.deferredConsumer = deferredConsumer;
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if the event can be delivered now; otherwise it is either held back until the end of the interval
+     * or discarded depending on the mode.
+     */
+    public synchronized boolean offer(T event) {
+        if (cancelled) {
+            return false;
+        }
+
+        long now = clock.getAsLong();
+        Object key = getKey(event);
+        KeyState<T> state = keyStates.get(key);
+
+        if (state == null) {
+            pruneIfRequired(now);
+            keyStates.put(key, new KeyState<>(now));
+            return true;
+        }
+
+        if (state.flushFuture == null && now - state.lastDelivered >= interval) {
+            state.lastDelivered = now;
+            return true;
+        }
+
+        if (mode == EventSubscription.RateLimitMode.LATEST) {
+            state.pending = event;
+            if (state.flushFuture == null) {
+                state.flushFuture = executorService.schedule(() -> flush(key), Math.max(0, state.lastDelivered + interval - now), TimeUnit.MILLISECONDS);
+            }
+        }
+        return false;
+    }
+
+    protected void flush(Object key) {
+        T event;
+
+        synchronized (this) {
+            KeyState<T> state = keyStates.get(key);
+            if (cancelled || state == null) {
+                return;
+            }
+            event = state.pending;
+            state.pending = null;
+            state.flushFuture = null;
+            state.lastDelivered = clock.getAsLong();
+        }
+
+        if (event != null) {
+            deferredConsumer.accept(event);
+        }
+    }
+
+    /**
+     * Forget keys that haven't had an event for at least an interval so the state doesn't grow with every attribute
+     * ever seen by the subscription.
+     */
+    protected void pruneIfRequired(long now) {
+        if (keyStates.size() < PRUNE_THRESHOLD || now - lastPruned < interval) {
+            return;
+        }
+        lastPruned = now;
+        keyStates.values().removeIf(state -> state.flushFuture == null && now - state.lastDelivered >= interval);
+    }
+
+    public synchronized void cancel() {
+        cancelled = true;
+        keyStates.values().forEach(state -> {
+            if (state.flushFuture != null) {
+                state.flushFuture.cancel(false);
+            }
+        });
+        keyStates.clear();
+    }
+
+    protected static Object getKey(SharedEvent event) {
+        if (event instanceof AttributeEvent attributeEvent) {
+            return attributeEvent.getAttributeRef();
+        }
+        if (event instanceof AssetInfo assetInfo && assetInfo.getAssetId() != null) {
+            return assetInfo.getAssetId();
+        }
+        return event.getEventType();
+    }
+}
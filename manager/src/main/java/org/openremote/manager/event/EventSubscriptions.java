@@ -19,6 +19,10 @@
  */
 package org.openremote.manager.event;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.activemq.artemis.utils.collections.ConcurrentHashSet;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
@@ -33,21 +37,42 @@ import org.openremote.model.util.TextUtil;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 
 import static org.openremote.model.Constants.SESSION_KEY;
 
 /**
- * Manages subscriptions to events for WebSocket sessions.
+ * Manages subscriptions to events for WebSocket sessions; subscriptions are also kept in an
+ * {@link EventSubscriptionIndex} so that only candidate subscriptions are visited when an event is published.
+ * Subscriptions with a rate limit get an {@link EventSubscriptionRateLimiter}; events it holds back are delivered
+ * later through the session sender.
  */
 public class EventSubscriptions {
 
     private static final Logger LOG = Logger.getLogger(EventSubscriptions.class.getName());
 
     final protected TimerService timerService;
+    final protected ScheduledExecutorService executorService;
+    final protected BiConsumer<String, Object> sessionSender;
     final protected ConcurrentMap<String, SessionSubscriptions> sessionSubscriptionIdMap = new ConcurrentHashMap<>();
+    final protected EventSubscriptionIndex subscriptionIndex = new EventSubscriptionIndex();
+    protected Counter serialisedCounter;
+    protected MeterRegistry meterRegistry;
+    final protected LongAdder filteredCount = new LongAdder();
+    final protected LongAdder rateLimitedCount = new LongAdder();
+    final protected LongAdder deliveredCount = new LongAdder();
 
     class SessionSubscriptions extends ConcurrentHashSet<SessionSubscription<?>> {
+        final String sessionKey;
+
+        SessionSubscriptions(String sessionKey) {
+            this.sessionKey = sessionKey;
+        }
+
         protected void createOrUpdate(EventSubscription<?> eventSubscription) {
 
             if (TextUtil.isNullOrEmpty(eventSubscription.getSubscriptionId())) {
@@ -56,24 +81,50 @@ public class EventSubscriptions {
                 cancelById(eventSubscription.getSubscriptionId());
             }
 
-            add(new SessionSubscription<>(timerService.getCurrentTimeMillis(), eventSubscription));
+            SessionSubscription<?> sessionSubscription = new SessionSubscription<>(sessionKey, timerService.getCurrentTimeMillis(), eventSubscription);
+            if (eventSubscription.isRateLimited()) {
+                sessionSubscription.rateLimiter = createRateLimiter(sessionSubscription);
+            }
+            add(sessionSubscription);
+            subscriptionIndex.add(sessionSubscription);
         }
 
         protected void cancelByType(String eventType) {
-            removeIf(sessionSubscription -> sessionSubscription.subscriptionId == null && sessionSubscription.subscription.getEventType().equals(eventType));
+            cancelIf(sessionSubscription -> sessionSubscription.subscriptionId == null && sessionSubscription.subscription.getEventType().equals(eventType));
         }
 
         protected void cancelById(String subscriptionId) {
-            removeIf(sessionSubscription -> sessionSubscription.subscription.getSubscriptionId().equals(subscriptionId));
+            cancelIf(sessionSubscription -> sessionSubscription.subscription.getSubscriptionId().equals(subscriptionId));
+        }
+
+        protected void cancelAll() {
+            cancelIf(sessionSubscription -> true);
+        }
+
+        protected void cancelIf(Predicate<SessionSubscription<?>> predicate) {
+            for (SessionSubscription<?> sessionSubscription : this) {
+                if (predicate.test(sessionSubscription) && remove(sessionSubscription)) {
+                    subscriptionIndex.remove(sessionSubscription);
+                    if (sessionSubscription.rateLimiter != null) {
+                        sessionSubscription.rateLimiter.cancel();
+                    }
+                }
+            }
         }
     }
 
     static class SessionSubscription<T extends SharedEvent> {
         long timestamp;
+        final String sessionKey;
         final EventSubscription<T> subscription;
         final String subscriptionId;
+        // Maintained by the subscription index
+        EventSubscriptionIndex.Dimension indexDimension;
+        String[] indexKeys;
+        EventSubscriptionRateLimiter<T> rateLimiter;
 
-        public SessionSubscription(long timestamp, EventSubscription<T> subscription) {
+        public SessionSubscription(String sessionKey, long timestamp, EventSubscription<T> subscription) {
+            this.sessionKey = sessionKey;
             this.timestamp = timestamp;
             this.subscription = subscription;
             this.subscriptionId = subscription.getSubscriptionId();
@@ -84,14 +135,54 @@ public class EventSubscriptions {
         }
     }
 
-    public EventSubscriptions(TimerService timerService) {
+    public EventSubscriptions(TimerService timerService, ScheduledExecutorService executorService, BiConsumer<String, Object> sessionSender, MeterRegistry meterRegistry) {
         this.timerService = timerService;
+        this.executorService = executorService;
+        this.sessionSender = sessionSender;
+
+        this.meterRegistry = meterRegistry;
+
+        if (meterRegistry != null) {
+            serialisedCounter = Counter.builder("or.client.events.serialised")
+                .description("Characters of event JSON serialised for client subscribers")
+                .baseUnit("characters")
+                .register(meterRegistry);
+            FunctionCounter.builder("or.client.events.filtered", filteredCount, LongAdder::sum)
+                .description("Events not delivered to a matching subscription because of its filter")
+                .register(meterRegistry);
+            FunctionCounter.builder("or.client.events.rate.limited", rateLimitedCount, LongAdder::sum)
+                .description("Events held back or discarded by subscription rate limits")
+                .register(meterRegistry);
+            FunctionCounter.builder("or.client.events.delivered", deliveredCount, LongAdder::sum)
+                .description("Events delivered to subscriptions (one per subscription)")
+                .register(meterRegistry);
+            // Counts by event type are available from the client event diagnostics
+            Gauge.builder("or.client.subscriptions", subscriptionIndex, index -> index.getCounts().values().stream().mapToInt(Integer::intValue).sum())
+                .description("Subscriptions of all event types")
+                .register(meterRegistry);
+        }
+    }
+
+    protected <T extends SharedEvent> EventSubscriptionRateLimiter<T> createRateLimiter(SessionSubscription<T> sessionSubscription) {
+        EventSubscription<T> subscription = sessionSubscription.subscription;
+        return new EventSubscriptionRateLimiter<>(
+            subscription.getRateLimitInterval(),
+            subscription.getRateLimitMode(),
+            executorService,
+            event -> {
+                LOG.finest("Delivering rate limited event to session '" + sessionSubscription.sessionKey + "': " + event);
+                if (subscription.getInternalConsumer() != null) {
+                    subscription.getInternalConsumer().accept(event);
+                } else {
+                    sessionSender.accept(sessionSubscription.sessionKey, new TriggeredEventSubscription<>(Collections.singletonList(event), sessionSubscription.subscriptionId));
+                }
+            });
     }
 
     protected void createOrUpdate(String sessionKey, EventSubscription<?> subscription) {
         LOG.finest("Create/update subscription for session '" + sessionKey + "': " + subscription);
         SessionSubscriptions sessionSubscriptions =
-            this.sessionSubscriptionIdMap.computeIfAbsent(sessionKey, k -> new SessionSubscriptions());
+            this.sessionSubscriptionIdMap.computeIfAbsent(sessionKey, SessionSubscriptions::new);
         sessionSubscriptions.createOrUpdate(subscription);
     }
 
@@ -119,15 +210,37 @@ public class EventSubscriptions {
         }
     }
 
+    /**
+     * @return The number of subscriptions of all sessions by event type.
+     */
+    public Map<String, Integer> getSubscriptionCounts() {
+        return subscriptionIndex.getCounts();
+    }
+
+    public long getFilteredCount() {
+        return filteredCount.sum();
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimitedCount.sum();
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.sum();
+    }
+
     protected void cancelAll(String sessionKey) {
         if (this.sessionSubscriptionIdMap.containsKey(sessionKey)) {
             LOG.finest("Cancelling all subscriptions for session: " + sessionKey);
-            this.sessionSubscriptionIdMap.remove(sessionKey);
+            SessionSubscriptions sessionSubscriptions = this.sessionSubscriptionIdMap.remove(sessionKey);
+            if (sessionSubscriptions != null) {
+                sessionSubscriptions.cancelAll();
+            }
         }
     }
 
     /**
-     * Used in {@link ClientEventService#PUBLISH_QUEUE}
+     * Used in the {@link ClientEventService#PUBLISH_QUEUE} shards; this can be called concurrently by each shard.
      */
     @SuppressWarnings({"unchecked", "unused"})
     public <T extends SharedEvent> List<Message> splitForSubscribers(Exchange exchange) {
@@ -137,36 +250,42 @@ public class EventSubscriptions {
         if (event == null)
             return messageList;
 
-        for (Map.Entry<String, SessionSubscriptions> entry : sessionSubscriptionIdMap.entrySet()) {
-            String sessionKey = entry.getKey();
-            SessionSubscriptions subscriptions = entry.getValue();
-
-            for (SessionSubscription<?> sessionSubscription : subscriptions) {
-
-                if (!sessionSubscription.matches(event))
-                    continue;
-
-                SessionSubscription<T> sessionSub = (SessionSubscription<T>) sessionSubscription;
-                T filteredEvent = sessionSub.subscription.getFilter() == null ? event : sessionSub.subscription.getFilter().apply(event);
-
-                if (filteredEvent != null) {
-                    LOG.finest("Creating message for subscribed session '" + sessionKey + "': " + filteredEvent);
-                    List<T> events = Collections.singletonList(filteredEvent);
-                    TriggeredEventSubscription<T> triggeredEventSubscription = new TriggeredEventSubscription<>(events, sessionSub.subscriptionId);
-
-                    if (sessionSub.subscription.getInternalConsumer() == null) {
-                        Message msg = new DefaultMessage(exchange.getContext());
-                        msg.setBody(triggeredEventSubscription); // Don't copy the event, use same reference
-                        msg.setHeaders(new HashMap<>(exchange.getIn().getHeaders())); // Copy headers
-                        msg.setHeader(SESSION_KEY, sessionKey);
-                        messageList.add(msg);
-                    } else {
-                        if (triggeredEventSubscription.getEvents() != null) {
-                            triggeredEventSubscription.getEvents().forEach(e ->
-                                sessionSub.subscription.getInternalConsumer().accept(e));
-                        }
-                    }
-                }
+        // Each distinct (filtered) event is serialised at most once and shared by all subscriber envelopes
+        Map<SharedEvent, SerializedEvent> serializedEvents = new IdentityHashMap<>();
+
+        // Only visit the subscriptions that could match this event
+        for (SessionSubscription<?> sessionSubscription : subscriptionIndex.getCandidates(event)) {
+
+            if (!sessionSubscription.matches(event))
+                continue;
+
+            String sessionKey = sessionSubscription.sessionKey;
+            SessionSubscription<T> sessionSub = (SessionSubscription<T>) sessionSubscription;
+            T filteredEvent = sessionSub.subscription.getFilter() == null ? event : sessionSub.subscription.getFilter().apply(event);
+
+            if (filteredEvent == null) {
+                filteredCount.increment();
+                continue;
+            }
+
+            if (sessionSub.rateLimiter != null && !sessionSub.rateLimiter.offer(filteredEvent)) {
+                rateLimitedCount.increment();
+                continue;
+            }
+
+            deliveredCount.increment();
+            LOG.finest("Creating message for subscribed session '" + sessionKey + "': " + filteredEvent);
+
+            if (sessionSub.subscription.getInternalConsumer() == null) {
+                SerializedEvent serializedEvent = serializedEvents.computeIfAbsent(filteredEvent, e -> new SerializedEvent(e, serialisedCounter));
+                TriggeredEventSubscription<T> triggeredEventSubscription = new SharedTriggeredEventSubscription<>(serializedEvent, sessionSub.subscriptionId);
+                Message msg = new DefaultMessage(exchange.getContext());
+                msg.setBody(triggeredEventSubscription); // Don't copy the event, use same reference
+                msg.setHeaders(new HashMap<>(exchange.getIn().getHeaders())); // Copy headers
+                msg.setHeader(SESSION_KEY, sessionKey);
+                messageList.add(msg);
+            } else {
+                sessionSub.subscription.getInternalConsumer().accept(filteredEvent);
             }
         }
         return messageList;
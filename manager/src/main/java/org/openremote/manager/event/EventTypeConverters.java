@@ -67,9 +67,25 @@ public class EventTypeConverters implements TypeConverters {
 
     @Converter
     public String writeTriggeredEventSubscription(TriggeredEventSubscription triggeredEventSubscription, Exchange exchange) throws Exception {
+        if (triggeredEventSubscription instanceof SharedTriggeredEventSubscription<?> sharedTriggeredEventSubscription) {
+            return sharedTriggeredEventSubscription.toMessage();
+        }
         return TriggeredEventSubscription.MESSAGE_PREFIX + ValueUtil.JSON.writeValueAsString(triggeredEventSubscription);
     }
 
+    @Converter
+    public String writeTriggeredEventSubscriptionArray(TriggeredEventSubscription[] triggeredEventSubscriptions, Exchange exchange) throws Exception {
+        StringBuilder sb = new StringBuilder(256).append(TriggeredEventSubscription.MESSAGE_PREFIX).append('[');
+        for (int i = 0; i < triggeredEventSubscriptions.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String message = writeTriggeredEventSubscription(triggeredEventSubscriptions[i], exchange);
+            sb.append(message, TriggeredEventSubscription.MESSAGE_PREFIX.length(), message.length());
+        }
+        return sb.append(']').toString();
+    }
+
     @Converter
     public SharedEvent readEvent(String string, Exchange exchange) throws Exception {
         if (!string.startsWith(SharedEvent.MESSAGE_PREFIX))
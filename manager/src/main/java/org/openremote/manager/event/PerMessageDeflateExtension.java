@@ -0,0 +1,143 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.event;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.websockets.core.StreamSinkFrameChannel;
+import io.undertow.websockets.core.StreamSourceFrameChannel;
+import io.undertow.websockets.extensions.ExtensionFunction;
+import io.undertow.websockets.extensions.PerMessageDeflateHandshake;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side <code>permessage-deflate</code> (RFC 7692) extension for the events websocket; messages smaller than
+ * {@link #minSize} bytes are sent uncompressed as compressing them costs more CPU than it saves bandwidth. The bytes
+ * before and after compression and the time spent compressing are recorded so the compression level, threshold and
+ * context takeover can be tuned per deployment.
+ */
+public class PerMessageDeflateExtension extends PerMessageDeflateHandshake {
+
+    protected final int minSize;
+    protected Counter inputCounter;
+    protected Counter outputCounter;
+    protected Counter skippedCounter;
+    protected Timer compressionTimer;
+
+    public PerMessageDeflateExtension(int deflaterLevel, boolean contextTakeover, int minSize, MeterRegistry meterRegistry) {
+        super(false, deflaterLevel, contextTakeover, contextTakeover);
+        this.minSize = minSize;
+
+        if (meterRegistry != null) {
+            inputCounter = Counter.builder("or.client.websocket.compression.input")
+                .description("Bytes of websocket messages before compression")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+            outputCounter = Counter.builder("or.client.websocket.compression.output")
+                .description("Bytes of websocket messages after compression")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+            skippedCounter = Counter.builder("or.client.websocket.compression.skipped")
+                .description("Websocket messages sent uncompressed as they are below the minimum size")
+                .register(meterRegistry);
+            compressionTimer = Timer.builder("or.client.websocket.compression")
+                .description("Time spent compressing websocket messages")
+                .register(meterRegistry);
+            Gauge.builder("or.client.websocket.compression.ratio", this, extension -> extension.inputCounter.count() > 0 ? extension.outputCounter.count() / extension.inputCounter.count() : 1d)
+                .description("Compressed size as a fraction of the uncompressed size")
+                .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public ExtensionFunction create() {
+        return new MeteredDeflateFunction(super.create());
+    }
+
+    /**
+     * Wraps the deflate function of a single websocket connection; writes to a connection are sequential so no
+     * synchronisation is needed.
+     */
+    protected class MeteredDeflateFunction implements ExtensionFunction {
+
+        protected final ExtensionFunction delegate;
+        // The frame channel of the message currently being compressed (a message can be written in several fragments)
+        protected StreamSinkFrameChannel compressingChannel;
+
+        protected MeteredDeflateFunction(ExtensionFunction delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean hasExtensionOpCode(int opCode) {
+            return delegate.hasExtensionOpCode(opCode);
+        }
+
+        @Override
+        public int writeRsv(int rsv) {
+            return delegate.writeRsv(rsv);
+        }
+
+        @Override
+        public PooledByteBuffer transformForWrite(PooledByteBuffer pooledBuffer, StreamSinkFrameChannel channel, boolean lastFrame) throws IOException {
+            int size = pooledBuffer.getBuffer().remaining();
+
+            if (channel != compressingChannel) {
+                if (lastFrame && size < minSize) {
+                    // The whole message is in this frame and is too small to be worth compressing
+                    channel.setRsv(channel.getRsv() & ~RSV1);
+                    if (skippedCounter != null) {
+                        skippedCounter.increment();
+                    }
+                    return pooledBuffer;
+                }
+                compressingChannel = channel;
+            }
+
+            long start = System.nanoTime();
+            PooledByteBuffer result = delegate.transformForWrite(pooledBuffer, channel, lastFrame);
+
+            if (compressionTimer != null) {
+                compressionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                inputCounter.increment(size);
+                outputCounter.increment(result.getBuffer().remaining());
+            }
+            if (lastFrame) {
+                compressingChannel = null;
+            }
+            return result;
+        }
+
+        @Override
+        public PooledByteBuffer transformForRead(PooledByteBuffer pooledBuffer, StreamSourceFrameChannel channel, boolean lastFragmentOfFrame) throws IOException {
+            return delegate.transformForRead(pooledBuffer, channel, lastFragmentOfFrame);
+        }
+
+        @Override
+        public void dispose() {
+            delegate.dispose();
+        }
+    }
+}
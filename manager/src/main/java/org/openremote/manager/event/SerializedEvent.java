@@ -0,0 +1,80 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.event;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.Counter;
+import org.openremote.model.event.shared.SharedEvent;
+import org.openremote.model.util.ValueUtil;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The JSON of a published event shared by all subscriber envelopes the event is delivered in, so the event is
+ * serialised at most once regardless of the number of subscribers. The JSON is only rendered when first requested
+ * (internal and MQTT subscribers may never need it) and is reference counted: each envelope {@link #retain}s it and
+ * {@link #release}s it once its message has been rendered, after which the JSON is dropped.
+ */
+public class SerializedEvent {
+
+    protected final SharedEvent event;
+    protected final Counter serialisedCounter;
+    protected final AtomicInteger references = new AtomicInteger();
+    protected volatile String json;
+
+    public SerializedEvent(SharedEvent event, Counter serialisedCounter) {
+        this.event = event;
+        this.serialisedCounter = serialisedCounter;
+    }
+
+    public SharedEvent getEvent() {
+        return event;
+    }
+
+    public SerializedEvent retain() {
+        references.incrementAndGet();
+        return this;
+    }
+
+    public void release() {
+        if (references.decrementAndGet() <= 0) {
+            json = null;
+        }
+    }
+
+    public String getJson() throws JsonProcessingException {
+        String result = json;
+        if (result == null) {
+            synchronized (this) {
+                result = json;
+                if (result == null) {
+                    result = ValueUtil.JSON.writeValueAsString(event);
+                    if (serialisedCounter != null) {
+                        serialisedCounter.increment(result.length());
+                    }
+                    if (references.get() > 0) {
+                        json = result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.event;
+
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.event.TriggeredEventSubscription;
+import org.openremote.model.event.shared.SharedEvent;
+
+import java.util.*;
+import java.util.concurrent.Future;
+
+/**
+ * Buffers the {@link TriggeredEventSubscription}s destined for a single websocket session so they can be sent as one
+ * frame each flush interval rather than a frame per event.
+ * <p>
+ * Other messages for the session are added whilst events are buffered so they aren't sent before the events that
+ * preceded them; these messages are never dropped.
+ * <p>
+ * The buffer holds at most {@link #maxSize} events; a session whose previous frame hasn't been sent by the time of the
+ * next flush is a slow consumer and the events keep being buffered until this limit is reached after which the
+ * {@link SlowConsumerPolicy} applies.
+ */
+public class SessionEventBuffer {
+
+    public enum SlowConsumerPolicy {
+        /**
+         * Drop the oldest buffered event to make space for the new event
+         */
+        DROP_OLDEST,
+        /**
+         * Only keep the latest buffered {@link AttributeEvent} of each attribute (per subscription) and otherwise drop
+         * the oldest buffered event to make space for the new event; values are also coalesced whilst the buffer isn't
+         * full as only the latest value of an attribute is of interest
+         */
+        KEEP_LATEST,
+        /**
+         * Close the session
+         */
+        DISCONNECT
+    }
+
+    /**
+     * The result of adding an event to the buffer.
+     */
+    public enum AddResult {
+        ADDED,
+        /**
+         * The event replaced the buffered event of the same attribute whilst the buffer wasn't full; this is normal
+         * batching rather than a dropped event
+         */
+        COALESCED,
+        /**
+         * The event replaced the buffered event of the same attribute because the buffer is full
+         */
+        REPLACED,
+        DROPPED_OLDEST,
+        OVERFLOW
+    }
+
+    protected final int maxSize;
+    protected final SlowConsumerPolicy policy;
+    protected final LinkedHashMap<Object, Object> pending = new LinkedHashMap<>();
+    protected Future<?> inFlight;
+
+    public SessionEventBuffer(int maxSize, SlowConsumerPolicy policy) {
+        this.maxSize = Math.max(1, maxSize);
+        this.policy = policy;
+    }
+
+    /**
+     * Adds the triggered event subscription to the buffer; when {@link AddResult#OVERFLOW} is returned the buffer is
+     * full and the policy is {@link SlowConsumerPolicy#DISCONNECT} so the session should be closed and the buffer
+     * {@link #clear}ed.
+     */
+    public synchronized AddResult add(TriggeredEventSubscription<?> triggeredEventSubscription) {
+        Object key = getKey(triggeredEventSubscription);
+        boolean full = pending.size() >= maxSize;
+        Object replaced = pending.remove(key);
+
+        if (replaced != null) {
+            release(replaced);
+            pending.put(key, triggeredEventSubscription);
+            return full ? AddResult.REPLACED : AddResult.COALESCED;
+        }
+
+        AddResult result = AddResult.ADDED;
+
+        if (pending.size() >= maxSize) {
+            if (policy == SlowConsumerPolicy.DISCONNECT) {
+                release(triggeredEventSubscription);
+                return AddResult.OVERFLOW;
+            }
+            Iterator<Object> iterator = pending.values().iterator();
+            while (iterator.hasNext()) {
+                Object oldest = iterator.next();
+                if (oldest instanceof TriggeredEventSubscription<?>) {
+                    release(oldest);
+                    iterator.remove();
+                    result = AddResult.DROPPED_OLDEST;
+                    break;
+                }
+            }
+        }
+
+        pending.put(key, triggeredEventSubscription);
+        return result;
+    }
+
+    /**
+     * Adds a message other than a {@link TriggeredEventSubscription} to the buffer if events are buffered so it is sent
+     * after them.
+     *
+     * @return false if nothing is buffered and the message can be sent straight away.
+     */
+    public synchronized boolean addIfPending(Object message) {
+        if (pending.isEmpty()) {
+            return false;
+        }
+        pending.put(new Object(), message);
+        return true;
+    }
+
+    /**
+     * @return The number of buffered events.
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * @return true if the frame(s) of the previous flush are still being sent.
+     */
+    public synchronized boolean isSending() {
+        return inFlight != null && !inFlight.isDone();
+    }
+
+    public synchronized void setInFlight(Future<?> inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * Removes the buffered events and messages and returns the frames to send in order; the events buffered between
+     * messages are combined into one frame which is a single {@link TriggeredEventSubscription} when the events belong
+     * to one subscription otherwise an array with a {@link TriggeredEventSubscription} per subscription in the order
+     * the subscriptions were first triggered.
+     */
+    public List<Object> drain() {
+        List<Object> buffered;
+
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return Collections.emptyList();
+            }
+            buffered = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        List<Object> frames = new ArrayList<>();
+        List<TriggeredEventSubscription<?>> triggered = new ArrayList<>();
+
+        for (Object message : buffered) {
+            if (message instanceof TriggeredEventSubscription<?> triggeredEventSubscription) {
+                triggered.add(triggeredEventSubscription);
+                continue;
+            }
+            addFrame(frames, triggered);
+            triggered.clear();
+            frames.add(message);
+        }
+        addFrame(frames, triggered);
+
+        return frames;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected static void addFrame(List<Object> frames, List<TriggeredEventSubscription<?>> buffered) {
+        if (buffered.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<TriggeredEventSubscription<?>>> subscriptionBuffers = new LinkedHashMap<>();
+        buffered.forEach(triggeredEventSubscription ->
+            subscriptionBuffers.computeIfAbsent(triggeredEventSubscription.getSubscriptionId(), id -> new ArrayList<>()).add(triggeredEventSubscription));
+
+        List<TriggeredEventSubscription<?>> result = new ArrayList<>(subscriptionBuffers.size());
+
+        subscriptionBuffers.forEach((subscriptionId, triggeredEventSubscriptions) -> {
+            if (triggeredEventSubscriptions.size() == 1) {
+                result.add(triggeredEventSubscriptions.get(0));
+                return;
+            }
+
+            if (triggeredEventSubscriptions.stream().allMatch(t -> t instanceof SharedTriggeredEventSubscription)) {
+                List<SerializedEvent> serializedEvents = new ArrayList<>();
+                triggeredEventSubscriptions.forEach(t -> serializedEvents.addAll(((SharedTriggeredEventSubscription<?>) t).getSerializedEvents()));
+                // Retains the serialized events before the buffered envelopes release them
+                result.add(new SharedTriggeredEventSubscription<>(serializedEvents, subscriptionId));
+                triggeredEventSubscriptions.forEach(SessionEventBuffer::release);
+            } else {
+                List<SharedEvent> events = new ArrayList<>();
+                triggeredEventSubscriptions.forEach(t -> events.addAll(t.getEvents()));
+                triggeredEventSubscriptions.forEach(SessionEventBuffer::release);
+                result.add(new TriggeredEventSubscription(events, subscriptionId));
+            }
+        });
+
+        frames.add(result.size() == 1 ? result.get(0) : result.toArray(new TriggeredEventSubscription<?>[0]));
+    }
+
+    /**
+     * Drops all buffered events and messages.
+     */
+    public synchronized int clear() {
+        int size = pending.size();
+        pending.values().forEach(SessionEventBuffer::release);
+        pending.clear();
+        return size;
+    }
+
+    protected Object getKey(TriggeredEventSubscription<?> triggeredEventSubscription) {
+        if (policy == SlowConsumerPolicy.KEEP_LATEST
+            && triggeredEventSubscription.getEvents() != null
+            && triggeredEventSubscription.getEvents().size() == 1
+            && triggeredEventSubscription.getEvents().get(0) instanceof AttributeEvent attributeEvent) {
+            return Arrays.asList(triggeredEventSubscription.getSubscriptionId(), attributeEvent.getAttributeRef());
+        }
+        // Unique key so nothing is replaced
+        return new Object();
+    }
+
+    protected static void release(Object message) {
+        if (message instanceof SharedTriggeredEventSubscription<?> sharedTriggeredEventSubscription) {
+            sharedTriggeredEventSubscription.release();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.event;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.openremote.model.event.TriggeredEventSubscription;
+import org.openremote.model.event.shared.SharedEvent;
+import org.openremote.model.util.ValueUtil;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * A {@link TriggeredEventSubscription} whose message is built around the shared {@link SerializedEvent} JSON of its
+ * events rather than serialising the events again for each subscriber.
+ */
+public class SharedTriggeredEventSubscription<T extends SharedEvent> extends TriggeredEventSubscription<T> {
+
+    @JsonIgnore
+    protected final List<SerializedEvent> serializedEvents;
+    @JsonIgnore
+    protected final AtomicBoolean released = new AtomicBoolean();
+
+    public SharedTriggeredEventSubscription(SerializedEvent serializedEvent, String subscriptionId) {
+        this(Collections.singletonList(serializedEvent), subscriptionId);
+    }
+
+    @SuppressWarnings("unchecked")
+    public SharedTriggeredEventSubscription(List<SerializedEvent> serializedEvents, String subscriptionId) {
+        super(serializedEvents.stream().map(serializedEvent -> (T) serializedEvent.getEvent()).collect(Collectors.toList()), subscriptionId);
+        serializedEvents.forEach(SerializedEvent::retain);
+        this.serializedEvents = serializedEvents;
+    }
+
+    public List<SerializedEvent> getSerializedEvents() {
+        return serializedEvents;
+    }
+
+    /**
+     * Renders the same message as serialising this instance with {@link TriggeredEventSubscription#MESSAGE_PREFIX}
+     * and releases the references to the shared JSON.
+     */
+    public String toMessage() throws JsonProcessingException {
+        try {
+            StringBuilder sb = new StringBuilder(256)
+                .append(MESSAGE_PREFIX)
+                .append("{\"events\":[");
+            for (int i = 0; i < serializedEvents.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(serializedEvents.get(i).getJson());
+            }
+            sb.append(']');
+            if (subscriptionId != null) {
+                sb.append(",\"subscriptionId\":").append(ValueUtil.JSON.writeValueAsString(subscriptionId));
+            }
+            return sb.append('}').toString();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Releases the references to the shared JSON without rendering the message (i.e. when it won't be sent).
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            serializedEvents.forEach(SerializedEvent::release);
+        }
+    }
+}
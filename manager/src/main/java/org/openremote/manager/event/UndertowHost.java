@@ -27,6 +27,8 @@ import io.undertow.servlet.api.DeploymentInfo;
 import io.undertow.servlet.api.SecurityConstraint;
 import io.undertow.servlet.api.SecurityInfo;
 import io.undertow.servlet.api.WebResourceCollection;
+import io.undertow.websockets.WebSocketProtocolHandshakeHandler;
+import io.undertow.websockets.extensions.ExtensionHandshake;
 import org.apache.camel.component.undertow.HttpHandlerRegistrationInfo;
 import org.apache.camel.component.undertow.UndertowConsumer;
 import org.apache.camel.component.undertow.UndertowHostKey;
@@ -34,7 +36,13 @@ import org.apache.camel.component.undertow.UndertowHostOptions;
 import org.openremote.container.web.WebService;
 import org.openremote.model.Container;
 
+import java.lang.reflect.Field;
 import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
 
 import static org.openremote.container.web.WebService.pathStartsWithHandler;
 
@@ -43,6 +51,7 @@ import static org.openremote.container.web.WebService.pathStartsWithHandler;
  */
 public class UndertowHost implements org.apache.camel.component.undertow.UndertowHost {
 
+    protected static final System.Logger LOG = System.getLogger(UndertowHost.class.getName());
     protected final Container container;
     protected final UndertowHostKey key;
     protected final UndertowHostOptions options;
@@ -50,12 +59,18 @@ public class UndertowHost implements org.apache.camel.component.undertow.Underto
     protected DeploymentInfo deployment;
     protected WebService.RequestHandler websocketHttpHandler;
     protected HttpHandler camelHandler;
+    protected Collection<ExtensionHandshake> extensions;
 
     public UndertowHost(Container container, UndertowHostKey key, UndertowHostOptions options) {
+        this(container, key, options, Collections.emptyList());
+    }
+
+    public UndertowHost(Container container, UndertowHostKey key, UndertowHostOptions options, Collection<ExtensionHandshake> extensions) {
         this.container = container;
         this.undertow = container.getService(WebService.class).getUndertow();
         this.key = key;
         this.options = options;
+        this.extensions = extensions;
     }
 
     @Override
@@ -70,6 +85,8 @@ public class UndertowHost implements org.apache.camel.component.undertow.Underto
             return camelHandler;
         }
 
+        addExtensions(handler);
+
         String path = registrationInfo.getUri().getPath();
         String deploymentName = "Camel WebSocket Deployment";
         deployment = Servlets.deployment()
@@ -99,6 +116,31 @@ public class UndertowHost implements org.apache.camel.component.undertow.Underto
         return handler;
     }
 
+    /**
+     * Camel doesn't expose the websocket handshake handler of its websocket handler so it is looked up by type to
+     * register the extensions (e.g. permessage-deflate) that can be negotiated with clients.
+     */
+    protected void addExtensions(HttpHandler handler) {
+        if (extensions == null || extensions.isEmpty()) {
+            return;
+        }
+
+        try {
+            for (Field field : handler.getClass().getDeclaredFields()) {
+                if (WebSocketProtocolHandshakeHandler.class.isAssignableFrom(field.getType())) {
+                    field.setAccessible(true);
+                    WebSocketProtocolHandshakeHandler handshakeHandler = (WebSocketProtocolHandshakeHandler) field.get(handler);
+                    extensions.forEach(handshakeHandler::addExtension);
+                    LOG.log(INFO, "Websocket extensions enabled: " + extensions.stream().map(ExtensionHandshake::getName).toList());
+                    return;
+                }
+            }
+            LOG.log(WARNING, "Websocket extensions not enabled, handshake handler not found in: " + handler.getClass());
+        } catch (Exception e) {
+            LOG.log(WARNING, "Websocket extensions not enabled, failed to register them", e);
+        }
+    }
+
     @Override
     public void unregisterHandler(UndertowConsumer consumer, HttpHandlerRegistrationInfo registrationInfo) {
         WebService webService = container.getService(WebService.class);
@@ -19,6 +19,8 @@
  */
 package org.openremote.manager.mqtt;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.activemq.artemis.core.config.impl.SecurityConfiguration;
 import org.apache.activemq.artemis.core.security.CheckType;
 import org.apache.activemq.artemis.core.security.Role;
@@ -38,6 +40,8 @@ import javax.security.auth.Subject;
 import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -50,6 +54,11 @@ import static org.openremote.model.syslog.SyslogCategory.API;
  * dynamic {@link org.keycloak.adapters.KeycloakDeployment} resolver.
  *
  * Unfortunately lots of private methods and fields in super class.
+ * <p>
+ * Successful pub/sub authorisations are cached per connection (Artemis' own caches are keyed by user which doesn't
+ * work for auto provisioned clients that all connect as anonymous) for handlers that opt in with
+ * {@link MQTTHandler#isAuthorisationCacheable}; the cache of a connection is invalidated when it is authenticated, when
+ * its user is updated or the asset links of its user are removed and when it disconnects.
  */
 public class ActiveMQORSecurityManager extends ActiveMQJAASSecurityManager {
 
@@ -64,6 +73,11 @@ public class ActiveMQORSecurityManager extends ActiveMQJAASSecurityManager {
     protected SecurityConfiguration config;
     protected SecurityConfiguration certificateConfig;
     protected ActiveMQServer server;
+    // Authorised pub/sub topics of each connection keyed by connection ID
+    protected final Cache<String, Set<String>> authorisationCache = CacheBuilder.newBuilder()
+        .maximumSize(100000)
+        .expireAfterWrite(300000, TimeUnit.MILLISECONDS)
+        .build();
 
     public ActiveMQORSecurityManager(AuthorisationService authorisationService, MQTTBrokerService brokerService, Function<String, KeycloakDeployment> deploymentResolver, String configurationName, SecurityConfiguration configuration) {
         super(configurationName, configuration);
@@ -181,6 +195,14 @@ public class ActiveMQORSecurityManager extends ActiveMQJAASSecurityManager {
             return false;
         }
 
+        String connectionID = MQTTBrokerService.getConnectionIDString(connection);
+        String cacheEntry = (isWrite ? "pub:" : "sub:") + topic.getString();
+        Set<String> authorisedTopics = authorisationCache.getIfPresent(connectionID);
+
+        if (authorisedTopics != null && authorisedTopics.contains(cacheEntry)) {
+            return true;
+        }
+
         // See if a custom handler wants to handle authorisation for this topic pub/sub
         for (MQTTHandler handler : brokerService.getCustomHandlers()) {
             if (handler.handlesTopic(topic)) {
@@ -194,6 +216,9 @@ public class ActiveMQORSecurityManager extends ActiveMQJAASSecurityManager {
                 }
                 if (result) {
                     LOG.finest("Handler '" + handler.getName() + "' has authorised " + (isWrite ? "pub" : "sub") + ": topic=" + topic + ", " + brokerService.connectionToString(connection));
+                    if (handler.isAuthorisationCacheable(topic)) {
+                        authorisationCache.asMap().computeIfAbsent(connectionID, id -> ConcurrentHashMap.newKeySet()).add(cacheEntry);
+                    }
                 } else {
                     LOG.finest("Handler '" + handler.getName() + "' has not authorised " + (isWrite ? "pub" : "sub") + ": topic=" + topic + ", " + brokerService.connectionToString(connection));
                 }
@@ -205,4 +230,8 @@ public class ActiveMQORSecurityManager extends ActiveMQJAASSecurityManager {
         return false;
     }
 
+    public void invalidateAuthorisationCache(RemotingConnection connection) {
+        authorisationCache.invalidate(MQTTBrokerService.getConnectionIDString(connection));
+    }
+
 }
@@ -49,13 +49,17 @@ import org.openremote.model.value.ValueType;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.manager.gateway.GatewayService.isNotForGateway;
 import static org.openremote.model.syslog.SyslogCategory.API;
 import static org.openremote.model.value.MetaItemType.USER_CONNECTED;
@@ -64,22 +68,33 @@ import static org.openremote.model.value.MetaItemType.USER_CONNECTED;
  * This {@link MQTTHandler} just monitors connected users and handles updating of
  * {@link org.openremote.model.attribute.Attribute}s with {@link org.openremote.model.value.MetaItemType#USER_CONNECTED}
  * {@link org.openremote.model.attribute.MetaItem}. It doesn't handle any publishes or subscriptions.
+ * <p>
+ * Status changes are coalesced per attribute over {@link #MQTT_CONNECTION_STATUS_DEBOUNCE_MILLIS} and then sent
+ * together so a burst of connects/disconnects (e.g. when the broker restarts) only produces one event per attribute.
  */
 public class ConnectionMonitorHandler extends MQTTHandler {
 
     protected static final Logger LOG = SyslogCategory.getLogger(API, ConnectionMonitorHandler.class);
+    public static final String MQTT_CONNECTION_STATUS_DEBOUNCE_MILLIS = "MQTT_CONNECTION_STATUS_DEBOUNCE_MILLIS";
+    public static final int MQTT_CONNECTION_STATUS_DEBOUNCE_MILLIS_DEFAULT = 500;
     protected MQTTBrokerService mqttBrokerService;
-    protected ExecutorService executorService;
+    protected ScheduledExecutorService executorService;
     protected AssetStorageService assetStorageService;
     protected AssetProcessingService assetProcessingService;
     protected GatewayService gatewayService;
     protected PersistenceService persistenceService;
     protected ConcurrentMap<String, Set<AttributeRef>> userIDAttributeRefs = new ConcurrentHashMap<>();
+    // Connected statuses waiting to be sent; only the latest status of each attribute is sent
+    protected final ConcurrentMap<AttributeRef, Boolean> pendingStatuses = new ConcurrentHashMap<>();
+    protected final AtomicBoolean flushScheduled = new AtomicBoolean();
+    protected volatile ScheduledFuture<?> flushFuture;
+    protected int statusDebounceMillis;
 
     @Override
     public void init(Container container) throws Exception {
         super.init(container);
         executorService = container.getExecutorService();
+        statusDebounceMillis = getInteger(container.getConfig(), MQTT_CONNECTION_STATUS_DEBOUNCE_MILLIS, MQTT_CONNECTION_STATUS_DEBOUNCE_MILLIS_DEFAULT);
         mqttBrokerService = container.getService(MQTTBrokerService.class);
         assetStorageService = container.getService(AssetStorageService.class);
         assetProcessingService = container.getService(AssetProcessingService.class);
@@ -163,6 +178,12 @@ public class ConnectionMonitorHandler extends MQTTHandler {
 
     @Override
     public void stop() throws Exception {
+        // Send any statuses still waiting for the debounce so they aren't lost
+        ScheduledFuture<?> flushFuture = this.flushFuture;
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+        }
+        flushStatuses();
         super.stop();
     }
 
@@ -301,8 +322,38 @@ public class ConnectionMonitorHandler extends MQTTHandler {
         }
 
         LOG.fine("Updating connected status for '" + userID + "' on " + attributeRefs.size() + " attribute(s) connected=" + connected);
-        attributeRefs.forEach(attributeRef ->
-            assetProcessingService.sendAttributeEvent(new AttributeEvent(attributeRef, connected)));
+        attributeRefs.forEach(attributeRef -> pendingStatuses.put(attributeRef, connected));
+        scheduleStatusFlush();
+    }
+
+    protected void scheduleStatusFlush() {
+        if (statusDebounceMillis <= 0) {
+            flushStatuses();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            flushFuture = executorService.schedule(this::flushStatuses, statusDebounceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the pending connected statuses; statuses added whilst flushing are either included or schedule another flush.
+     */
+    protected void flushStatuses() {
+        flushScheduled.set(false);
+
+        List<AttributeEvent> attributeEvents = new ArrayList<>(pendingStatuses.size());
+        for (AttributeRef attributeRef : pendingStatuses.keySet()) {
+            Boolean connected = pendingStatuses.remove(attributeRef);
+            if (connected != null) {
+                attributeEvents.add(new AttributeEvent(attributeRef, connected));
+            }
+        }
+
+        if (attributeEvents.isEmpty()) {
+            return;
+        }
+
+        LOG.fine("Sending " + attributeEvents.size() + " connected status update(s)");
+        attributeEvents.forEach(assetProcessingService::sendAttributeEvent);
     }
 
     protected Pair<String, Set<AttributeRef>> getUserIDAndAttributeRefs(RemotingConnection connection) {
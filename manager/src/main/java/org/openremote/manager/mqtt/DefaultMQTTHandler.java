@@ -21,13 +21,14 @@ package org.openremote.manager.mqtt;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
 import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import org.apache.activemq.artemis.api.core.SimpleString;
 import org.apache.activemq.artemis.spi.core.protocol.RemotingConnection;
 import org.apache.activemq.artemis.utils.collections.ConcurrentHashSet;
-import org.apache.camel.builder.RouteBuilder;
 import org.keycloak.KeycloakSecurityContext;
+import org.openremote.container.concurrent.ContainerExecutor;
 import org.openremote.container.security.AuthContext;
 import org.openremote.manager.event.ClientEventService;
 import org.openremote.model.Container;
@@ -36,24 +37,27 @@ import org.openremote.model.asset.AssetEvent;
 import org.openremote.model.asset.AssetFilter;
 import org.openremote.model.asset.UserAssetLink;
 import org.openremote.model.attribute.AttributeEvent;
-import org.openremote.model.event.TriggeredEventSubscription;
-import org.openremote.model.event.shared.CancelEventSubscription;
+import org.openremote.model.attribute.AttributeState;
 import org.openremote.model.event.shared.EventSubscription;
 import org.openremote.model.event.shared.SharedEvent;
 import org.openremote.model.syslog.SyslogCategory;
 import org.openremote.model.util.ValueUtil;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
-import static org.apache.camel.support.builder.PredicateBuilder.and;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.manager.event.ClientEventService.*;
 import static org.openremote.manager.mqtt.MQTTBrokerService.getConnectionIDString;
 import static org.openremote.model.Constants.*;
@@ -62,8 +66,13 @@ import static org.openremote.model.attribute.AttributeEvent.Source.CLIENT;
 import static org.openremote.model.syslog.SyslogCategory.API;
 
 /**
- * This handler uses the {@link ClientEventService} to publish and subscribe to asset and attribute events; converting
- * subscription topics into {@link AssetFilter}s to ensure only the correct events are returned for the subscription.
+ * This handler uses the {@link ClientEventService} to publish and subscribe to asset and attribute events; subscription
+ * topics are authorised by converting them into {@link AssetFilter}s and are indexed in a {@link TopicSubscriptionTrie}
+ * which routes each event received from the {@link ClientEventService} to the matching topics of all connections.
+ * <p>
+ * Payloads are JSON unless the topic type token has a {@link PayloadEncoding} suffix e.g.
+ * <code>{realm}/{clientId}/attributevalue-cbor/{attributeName}/{assetId}</code> to receive CBOR encoded values or
+ * <code>{realm}/{clientId}/writeattributevalues-cbor</code> to write CBOR encoded attribute states.
  */
 public class DefaultMQTTHandler extends MQTTHandler {
 
@@ -75,13 +84,12 @@ public class DefaultMQTTHandler extends MQTTHandler {
             this.topicSubscriptionMap.put(topic, subscriptionConsumer);
         }
 
-        protected void add(String topic, Consumer<SharedEvent> subscriptionConsumer) {
-            topicSubscriptionMap.put(topic, subscriptionConsumer);
+        protected Consumer<SharedEvent> add(String topic, Consumer<SharedEvent> subscriptionConsumer) {
+            return topicSubscriptionMap.put(topic, subscriptionConsumer);
         }
 
-        protected int remove(String topic) {
-            topicSubscriptionMap.remove(topic);
-            return topicSubscriptionMap.size();
+        protected Consumer<SharedEvent> remove(String topic) {
+            return topicSubscriptionMap.remove(topic);
         }
     }
 
@@ -90,13 +98,46 @@ public class DefaultMQTTHandler extends MQTTHandler {
     public static final String ATTRIBUTE_TOPIC = "attribute";
     public static final String ATTRIBUTE_VALUE_TOPIC = "attributevalue";
     public static final String ATTRIBUTE_VALUE_WRITE_TOPIC = "writeattributevalue";
+    public static final String ATTRIBUTE_VALUES_WRITE_TOPIC = "writeattributevalues";
+    public static final String MQTT_PUBLISH_THREADS = "MQTT_PUBLISH_THREADS";
+    public static final int MQTT_PUBLISH_THREADS_DEFAULT = Math.min(8, Runtime.getRuntime().availableProcessors());
+    public static final String MQTT_PUBLISH_QUEUE_SIZE = "MQTT_PUBLISH_QUEUE_SIZE";
+    public static final int MQTT_PUBLISH_QUEUE_SIZE_DEFAULT = 10000;
     private static final Logger LOG = SyslogCategory.getLogger(API, DefaultMQTTHandler.class);
     protected final ConcurrentMap<String, SubscriberInfo> connectionSubscriberInfoMap = new ConcurrentHashMap<>();
+    // The subscription event consumers of all connections indexed by topic
+    protected final TopicSubscriptionTrie<Consumer<SharedEvent>> subscriptionTrie = new TopicSubscriptionTrie<>();
+    protected final List<String> internalSubscriptionIds = new ArrayList<>();
+    // Subscription filters authorised by canSubscribe so onSubscribe doesn't have to authorise them again
+    protected final Cache<String, AssetFilter<?>> authorizedSubscriptionFilters = CacheBuilder.newBuilder()
+        .maximumSize(10000)
+        .expireAfterWrite(60000, TimeUnit.MILLISECONDS)
+        .build();
+    // Single threaded executors that publish events to subscribers; each connection always uses the same executor so
+    // events are published to it in order without holding up the client event service publish threads
+    protected ContainerExecutor[] publishExecutors;
+    protected Counter publishDroppedCounter;
     // An authorisation cache for publishing
     protected final Cache<String, ConcurrentHashSet<String>> authorizationCache = CacheBuilder.newBuilder()
         .maximumSize(100000)
         .expireAfterWrite(300000, TimeUnit.MILLISECONDS)
         .build();
+    // The payloads rendered for an event so they are only rendered once regardless of the number of subscriber topics
+    // the event is published to; weak keys are compared by identity and dropped once the event is no longer referenced
+    protected final Map<PayloadEncoding, Cache<SharedEvent, byte[]>> eventPayloadCaches = createPayloadCaches();
+    protected final Map<PayloadEncoding, Cache<SharedEvent, byte[]>> valuePayloadCaches = createPayloadCaches();
+
+    protected static Map<PayloadEncoding, Cache<SharedEvent, byte[]>> createPayloadCaches() {
+        Map<PayloadEncoding, Cache<SharedEvent, byte[]>> payloadCaches = new EnumMap<>(PayloadEncoding.class);
+        for (PayloadEncoding encoding : PayloadEncoding.values()) {
+            payloadCaches.put(encoding, CacheBuilder.newBuilder()
+                .weakKeys()
+                .maximumSize(10000)
+                .expireAfterWrite(10000, TimeUnit.MILLISECONDS)
+                .build());
+        }
+        return payloadCaches;
+    }
 
     @Override
     public int getPriority() {
@@ -107,32 +148,47 @@ public class DefaultMQTTHandler extends MQTTHandler {
     @Override
     public void init(Container container) throws Exception {
         super.init(container);
-        messageBrokerService.getContext().addRoutes(new RouteBuilder() {
-            @Override
-            public void configure() throws Exception {
-
-                // Route messages destined for MQTT clients
-                from(CLIENT_OUTBOUND_QUEUE)
-                    .routeId("ClientOutbound-DefaultMQTTHandler")
-                    .filter(and(
-                        header(HEADER_CONNECTION_TYPE).isEqualTo(HEADER_CONNECTION_TYPE_MQTT),
-                        body().isInstanceOf(TriggeredEventSubscription.class)
-                    ))
-                    .process(exchange -> {
-                        // Get the subscriber consumer
-                        String connectionID = exchange.getIn().getHeader(SESSION_KEY, String.class);
-                        SubscriberInfo subscriberInfo = connectionSubscriberInfoMap.get(connectionID);
-                        if (subscriberInfo != null) {
-                            TriggeredEventSubscription<?> triggeredEventSubscription = exchange.getIn().getBody(TriggeredEventSubscription.class);
-                            String topic = triggeredEventSubscription.getSubscriptionId();
-                            // Should only be a single event in here
-                            SharedEvent event = triggeredEventSubscription.getEvents().get(0);
-                            Consumer<SharedEvent> eventConsumer = subscriberInfo.topicSubscriptionMap.get(topic);
-                            if (eventConsumer != null) {
-                                eventConsumer.accept(event);
-                            }
-                        }
-                    });
+
+        int threads = Math.max(1, getInteger(container.getConfig(), MQTT_PUBLISH_THREADS, MQTT_PUBLISH_THREADS_DEFAULT));
+        int queueSize = Math.max(1, getInteger(container.getConfig(), MQTT_PUBLISH_QUEUE_SIZE, MQTT_PUBLISH_QUEUE_SIZE_DEFAULT));
+        publishExecutors = new ContainerExecutor[threads];
+        for (int i = 0; i < threads; i++) {
+            publishExecutors[i] = new ContainerExecutor("MQTT publish " + i, 1, 1, 60, queueSize);
+            publishExecutors[i].setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        }
+        if (container.getMeterRegistry() != null) {
+            publishDroppedCounter = Counter.builder("or.mqtt.publish.dropped")
+                .description("Events not published to MQTT subscribers because the publish queue was full")
+                .register(container.getMeterRegistry());
+        }
+
+        // Receive all asset and attribute events once and route them to the subscribed topics using the subscription
+        // trie rather than creating a client event subscription per topic; onEvent only filters and hands events to the
+        // publish executors so it is called concurrently by the publish shards
+        internalSubscriptionIds.add(clientEventService.addInternalSubscription(getName() + "-" + AssetEvent.class.getSimpleName(), AssetEvent.class, null, this::onEvent, true));
+        internalSubscriptionIds.add(clientEventService.addInternalSubscription(getName() + "-" + AttributeEvent.class.getSimpleName(), AttributeEvent.class, null, this::onEvent, true));
+    }
+
+    @Override
+    public void stop() throws Exception {
+        super.stop();
+        internalSubscriptionIds.forEach(clientEventService::cancelInternalSubscription);
+        internalSubscriptionIds.clear();
+        if (publishExecutors != null) {
+            Arrays.stream(publishExecutors).forEach(ContainerExecutor::shutdownNow);
+        }
+    }
+
+    protected ContainerExecutor getPublishExecutor(RemotingConnection connection) {
+        return publishExecutors[Math.floorMod(getConnectionIDString(connection).hashCode(), publishExecutors.length)];
+    }
+
+    protected void onEvent(SharedEvent event) {
+        subscriptionTrie.forEachMatch(event, eventConsumer -> {
+            try {
+                eventConsumer.accept(event);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to publish event to MQTT subscriber: " + event, e);
             }
         });
     }
@@ -167,7 +223,7 @@ public class DefaultMQTTHandler extends MQTTHandler {
             .withHeaders(headers)
             .to(CLIENT_INBOUND_QUEUE)
             .asyncSend();
-        connectionSubscriberInfoMap.remove(getConnectionIDString(connection));
+        removeSubscriberInfo(connection);
         authorizationCache.invalidate(getConnectionIDString(connection));
     }
 
@@ -180,12 +236,21 @@ public class DefaultMQTTHandler extends MQTTHandler {
             .withHeaders(headers)
             .to(CLIENT_INBOUND_QUEUE)
             .asyncSend();
-        connectionSubscriberInfoMap.remove(getConnectionIDString(connection));
+        removeSubscriberInfo(connection);
+    }
+
+    protected void removeSubscriberInfo(RemotingConnection connection) {
+        synchronized (connectionSubscriberInfoMap) {
+            SubscriberInfo subscriberInfo = connectionSubscriberInfoMap.remove(getConnectionIDString(connection));
+            if (subscriberInfo != null) {
+                subscriberInfo.topicSubscriptionMap.forEach((topic, eventConsumer) -> subscriptionTrie.remove(Topic.parse(topic), eventConsumer));
+            }
+        }
     }
 
     @Override
     public boolean topicMatches(Topic topic) {
-        return isAttributeTopic(topic) || isAssetTopic(topic) || isAttributeValueWriteTopic(topic);
+        return isAttributeTopic(topic) || isAssetTopic(topic) || isAttributeValueWriteTopic(topic) || isAttributeValuesWriteTopic(topic);
     }
 
     @Override
@@ -193,6 +258,15 @@ public class DefaultMQTTHandler extends MQTTHandler {
         return LOG;
     }
 
+    /**
+     * Asset and attribute topics are subscribed to and published on frequently, so their authorisation is cached;
+     * a role removed from a user can therefore take up to the cache expiry to affect an existing connection.
+     */
+    @Override
+    public boolean isAuthorisationCacheable(Topic topic) {
+        return true;
+    }
+
     @SuppressWarnings({"rawtypes", "unchecked"})
     @Override
     public boolean canSubscribe(RemotingConnection connection, KeycloakSecurityContext securityContext, Topic topic) {
@@ -270,25 +344,45 @@ public class DefaultMQTTHandler extends MQTTHandler {
             }
         }
 
-        // Build filter for the topic and verify that the filter is OK for given auth context
+        AssetFilter<?> filter = buildAuthorizedAssetFilter(connection, authContext, topic);
+        if (filter == null) {
+            return false;
+        }
+        authorizedSubscriptionFilters.put(getAuthorizedSubscriptionFilterKey(connection, topic), filter);
+        return true;
+    }
+
+    protected static String getAuthorizedSubscriptionFilterKey(RemotingConnection connection, Topic topic) {
+        return getConnectionIDString(connection) + " " + topic.getString();
+    }
+
+    /**
+     * Builds the {@link AssetFilter} for the topic and authorises it for the given auth context; authorisation can
+     * restrict the filter further (e.g. for restricted users it is limited to linked assets and restricted read
+     * attributes) so the returned filter must be applied to each event before it is published.
+     *
+     * @return null if the topic is not valid or the subscription is not authorised
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    protected AssetFilter<?> buildAuthorizedAssetFilter(RemotingConnection connection, AuthContext authContext, Topic topic) {
         AssetFilter<?> filter = buildAssetFilter(topic);
 
         if (filter == null) {
             LOG.finest("Failed to process subscription topic: topic=" + topic + ", " + mqttBrokerService.connectionToString(connection));
-            return false;
+            return null;
         }
 
         EventSubscription<?> subscription = new EventSubscription(
-            isAssetTopic ? AssetEvent.class : AttributeEvent.class,
+            isAssetTopic(topic) ? AssetEvent.class : AttributeEvent.class,
             filter
         );
 
         if (!clientEventService.authorizeEventSubscription(topicRealm(topic), authContext, subscription)) {
             LOG.finest("Subscription was not authorised for this user and topic: topic=" + topic + ", subject=" + authContext);
-            return false;
+            return null;
         }
 
-        return true;
+        return filter;
     }
 
     // TODO: improve authorisation performance
@@ -308,6 +402,15 @@ public class DefaultMQTTHandler extends MQTTHandler {
             return false;
         }
 
+        if (isAttributeValuesWriteTopic(topic)) {
+            if (topic.getTokens().size() != 3) {
+                LOG.finer("Publish attribute values topic should be {realm}/{clientId}/writeattributevalues: topic=" + topic + ", connection=" + mqttBrokerService.connectionToString(connection));
+                return false;
+            }
+            // The attributes are only known once the payload is parsed so each one is authorised in onPublish
+            return true;
+        }
+
         if (isAttributeValueWriteTopic(topic)) {
             if (topic.getTokens().size() != 5 || !Pattern.matches(ASSET_ID_REGEXP, topicTokenIndexToString(topic, 4))) {
                 LOG.finer("Publish attribute value topic should be {realm}/{clientId}/writeattributevalue/{attributeName}/{assetId}: topic=" + topic + ", connection=" + mqttBrokerService.connectionToString(connection));
@@ -317,18 +420,26 @@ public class DefaultMQTTHandler extends MQTTHandler {
             return false;
         }
 
+        // We don't know the value at this point so just use a null value for authorization (value type will be handled
+        // when the event is processed)
+        return authorizeAttributeWrite(connection, authContext, topicRealm(topic), buildAttributeEvent(topic.getTokens(), null), topic.getString());
+    }
+
+    /**
+     * Authorises the write of an attribute event using the authorisation cache of the connection; the cache entry is
+     * the {@link #ATTRIBUTE_VALUE_WRITE_TOPIC} topic of the attribute so single and bulk writes share the cache.
+     */
+    protected boolean authorizeAttributeWrite(RemotingConnection connection, AuthContext authContext, String realm, AttributeEvent attributeEvent, String cacheEntry) {
         String cacheKey = getConnectionIDString(connection);
 
         // Check cache
         ConcurrentHashSet<String> act = authorizationCache.getIfPresent(cacheKey);
-        if (act != null && act.contains(topic.getString())) {
+        if (act != null && act.contains(cacheEntry)) {
             return true;
         }
 
-        // We don't know the value at this point so just use a null value for authorization (value type will be handled
-        // when the event is processed)
-        if (!clientEventService.authorizeEventWrite(topicRealm(topic), authContext, buildAttributeEvent(topic.getTokens(), null))) {
-            LOG.fine("Publish was not authorised for this user and topic: topic=" + topic + ", subject=" + authContext);
+        if (!clientEventService.authorizeEventWrite(realm, authContext, attributeEvent)) {
+            LOG.fine("Publish was not authorised for this user and attribute: ref=" + attributeEvent.getAttributeRef() + ", subject=" + authContext);
             return false;
         }
 
@@ -343,7 +454,7 @@ public class DefaultMQTTHandler extends MQTTHandler {
                 authorizationCache.put(cacheKey, set);
             }
         }
-        set.add(topic.getString());
+        set.add(cacheEntry);
 
         return true;
     }
@@ -352,81 +463,103 @@ public class DefaultMQTTHandler extends MQTTHandler {
     @Override
     public void onSubscribe(RemotingConnection connection, Topic topic) {
 
-        boolean isAssetTopic = isAssetTopic(topic);
-        String subscriptionId = topic.getString(); // Use topic as unique subscription ID
-        AssetFilter filter = buildAssetFilter(topic);
-        Class subscriptionClass = isAssetTopic ? AssetEvent.class : AttributeEvent.class;
+        // Use the filter authorised by canSubscribe and only authorise again if it is no longer cached
+        String filterKey = getAuthorizedSubscriptionFilterKey(connection, topic);
+        AssetFilter filter = authorizedSubscriptionFilters.getIfPresent(filterKey);
+        authorizedSubscriptionFilters.invalidate(filterKey);
 
         if (filter == null) {
-            LOG.info("Invalid event filter generated for topic '" + topic + "': " + connection);
-            return;
+            AuthContext authContext = getAuthContextFromConnection(connection).orElse(null);
+            filter = authContext != null ? buildAuthorizedAssetFilter(connection, authContext, topic) : null;
         }
 
-        Consumer<SharedEvent> eventConsumer = getSubscriptionEventConsumer(connection, topic);
-
-        EventSubscription subscription = new EventSubscription(
-            subscriptionClass,
-            filter,
-            subscriptionId
-        );
+        if (filter == null) {
+            LOG.info("Invalid or unauthorised event filter generated for topic '" + topic + "': " + connection);
+            return;
+        }
 
-        Map<String, Object> headers = prepareHeaders(topicRealm(topic), connection);
-        messageBrokerService.getFluentProducerTemplate()
-            .withHeaders(headers)
-            .withBody(subscription)
-            .to(CLIENT_INBOUND_QUEUE)
-            .asyncSend();
+        // The trie only matches on the topic so the authorised filter is applied to each matched event before it is
+        // handed to the publish executor of the connection
+        AssetFilter authorizedFilter = filter;
+        Consumer<SharedEvent> publishConsumer = getSubscriptionEventConsumer(connection, topic);
+        ContainerExecutor publishExecutor = getPublishExecutor(connection);
+        Consumer<SharedEvent> eventConsumer = event -> {
+            SharedEvent filteredEvent = (SharedEvent) authorizedFilter.apply(event);
+            if (filteredEvent == null) {
+                return;
+            }
+            try {
+                publishExecutor.execute(() -> publishConsumer.accept(filteredEvent));
+            } catch (RejectedExecutionException e) {
+                LOG.warning("Publish queue is full so dropping event for topic '" + topic + "': " + mqttBrokerService.connectionToString(connection));
+                if (publishDroppedCounter != null) {
+                    publishDroppedCounter.increment();
+                }
+            }
+        };
 
-        // Track connection subscriptions for restricted user asset link changes (to determine if the client should be disconnected)
+        // Track connection subscriptions for cleanup and restricted user asset link changes (to determine if the client
+        // should be disconnected) and add the subscription to the trie
         synchronized (connectionSubscriberInfoMap) {
             connectionSubscriberInfoMap.compute(getConnectionIDString(connection), (connectionID, subscriberInfo) -> {
                 if (subscriberInfo == null) {
                     return new SubscriberInfo(topic.getString(), eventConsumer);
-                } else {
-                    subscriberInfo.add(topic.getString(), eventConsumer);
-                    return subscriberInfo;
                 }
+                Consumer<SharedEvent> previousConsumer = subscriberInfo.add(topic.getString(), eventConsumer);
+                if (previousConsumer != null) {
+                    subscriptionTrie.remove(topic, previousConsumer);
+                }
+                return subscriberInfo;
             });
+            subscriptionTrie.add(topic, eventConsumer);
         }
     }
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     public void onUnsubscribe(RemotingConnection connection, Topic topic) {
-        String subscriptionId = topic.toString();
-        boolean isAssetTopic = subscriptionId.startsWith(ASSET_TOPIC);
-        Map<String, Object> headers = prepareHeaders(topicRealm(topic), connection);
-        Class<SharedEvent> subscriptionClass = (Class) (isAssetTopic ? AssetEvent.class : AttributeEvent.class);
-        CancelEventSubscription cancelEventSubscription = new CancelEventSubscription(subscriptionClass, subscriptionId);
-        messageBrokerService.getFluentProducerTemplate()
-            .withHeaders(headers)
-            .withBody(cancelEventSubscription)
-            .to(CLIENT_INBOUND_QUEUE)
-            .asyncSend();
-
-        // Track connection subscriptions for restricted user asset link changes (to determine if the client should be disconnected)
         synchronized (connectionSubscriberInfoMap) {
             connectionSubscriberInfoMap.computeIfPresent(getConnectionIDString(connection), (connectionID, subscriberInfo) -> {
-                if (subscriberInfo.remove(topic.getString()) == 0) {
-                    return null;
+                Consumer<SharedEvent> eventConsumer = subscriberInfo.remove(topic.getString());
+                if (eventConsumer != null) {
+                    subscriptionTrie.remove(topic, eventConsumer);
                 }
-                return subscriberInfo;
+                return subscriberInfo.topicSubscriptionMap.isEmpty() ? null : subscriberInfo;
             });
         }
     }
 
     @Override
     public Set<String> getPublishListenerTopics() {
-        return Set.of(
-            TOKEN_SINGLE_LEVEL_WILDCARD + "/" + TOKEN_SINGLE_LEVEL_WILDCARD + "/" + ATTRIBUTE_VALUE_WRITE_TOPIC + "/" + TOKEN_MULTI_LEVEL_WILDCARD
-        );
+        Set<String> topics = new HashSet<>();
+        for (PayloadEncoding encoding : PayloadEncoding.values()) {
+            topics.add(TOKEN_SINGLE_LEVEL_WILDCARD + "/" + TOKEN_SINGLE_LEVEL_WILDCARD + "/" + encoding.toTopicType(ATTRIBUTE_VALUE_WRITE_TOPIC) + "/" + TOKEN_MULTI_LEVEL_WILDCARD);
+            topics.add(TOKEN_SINGLE_LEVEL_WILDCARD + "/" + TOKEN_SINGLE_LEVEL_WILDCARD + "/" + encoding.toTopicType(ATTRIBUTE_VALUES_WRITE_TOPIC));
+        }
+        return topics;
     }
 
     @Override
     public void onPublish(RemotingConnection connection, Topic topic, ByteBuf body) {
+        if (isAttributeValuesWriteTopic(topic)) {
+            onAttributeValuesPublish(connection, topic, body);
+            return;
+        }
+
         List<String> topicTokens = topic.getTokens();
-        String payloadContent = body.toString(StandardCharsets.UTF_8);
-        Object value = ValueUtil.parse(payloadContent).orElse(null);
+        PayloadEncoding encoding = topicEncoding(topic);
+        Object value;
+
+        if (encoding == PayloadEncoding.JSON) {
+            value = ValueUtil.parse(body.toString(StandardCharsets.UTF_8)).orElse(null);
+        } else {
+            try {
+                value = body.isReadable() ? encoding.decode(body, Object.class) : null;
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Invalid " + encoding + " attribute value payload: topic=" + topic + ", connection=" + mqttBrokerService.connectionToString(connection), e);
+                return;
+            }
+        }
+
         AttributeEvent attributeEvent = buildAttributeEvent(topicTokens, value);
         Map<String, Object> headers = prepareHeaders(topicRealm(topic), connection);
         LOG.finer("Publishing to client inbound queue: " + attributeEvent);
@@ -437,13 +570,65 @@ public class DefaultMQTTHandler extends MQTTHandler {
             .asyncSend();
     }
 
+    /**
+     * Handles a bulk write where the payload is an array of {@link AttributeState}s (in the {@link PayloadEncoding} of the
+     * topic); the payload is parsed straight from the buffer, each attribute is authorised (using the authorisation cache) and the authorised events are put
+     * on the {@link ClientEventService#CLIENT_INBOUND_QUEUE} as a single message.
+     */
+    protected void onAttributeValuesPublish(RemotingConnection connection, Topic topic, ByteBuf body) {
+        AttributeState[] attributeStates;
+
+        try {
+            attributeStates = topicEncoding(topic).decode(body, AttributeState[].class);
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Invalid attribute values payload, expected an array of attribute states: topic=" + topic + ", connection=" + mqttBrokerService.connectionToString(connection), e);
+            return;
+        }
+
+        AuthContext authContext = getAuthContextFromConnection(connection).orElse(null);
+        if (attributeStates == null || attributeStates.length == 0 || authContext == null) {
+            return;
+        }
+
+        String realm = topicRealm(topic);
+        String cacheEntryPrefix = realm + "/" + topicTokenIndexToString(topic, 1) + "/" + ATTRIBUTE_VALUE_WRITE_TOPIC + "/";
+        List<AttributeEvent> attributeEvents = new ArrayList<>(attributeStates.length);
+
+        for (AttributeState attributeState : attributeStates) {
+            if (attributeState == null || attributeState.getRef() == null) {
+                continue;
+            }
+            AttributeEvent attributeEvent = new AttributeEvent(attributeState);
+            String cacheEntry = cacheEntryPrefix + attributeEvent.getAttributeName() + "/" + attributeEvent.getAssetId();
+            if (authorizeAttributeWrite(connection, authContext, realm, attributeEvent, cacheEntry)) {
+                attributeEvents.add(attributeEvent);
+            }
+        }
+
+        if (attributeEvents.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> headers = prepareHeaders(realm, connection);
+        LOG.finer(() -> "Publishing " + attributeEvents.size() + " attribute events to client inbound queue: " + mqttBrokerService.connectionToString(connection));
+        messageBrokerService.getFluentProducerTemplate()
+            .withHeaders(headers)
+            .withBody(attributeEvents.toArray(new AttributeEvent[0]))
+            .to(CLIENT_INBOUND_QUEUE)
+            .asyncSend();
+    }
+
     @Override
     public void onUserAssetLinksChanged(RemotingConnection connection, List<PersistenceEvent<UserAssetLink>> changes) {
+        if (changes.stream().allMatch(pe -> pe.getCause() == PersistenceEvent.Cause.CREATE)) {
+            // Do nothing if only links have been added
+            return;
+        }
+
+        // Previously authorised attribute writes may no longer be allowed
+        authorizationCache.invalidate(getConnectionIDString(connection));
+
         if (connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))) {
-            if (changes.stream().allMatch(pe -> pe.getCause() == PersistenceEvent.Cause.CREATE)) {
-                // Do nothing if only links have been added
-                return;
-            }
             LOG.info("User asset links have changed for a connected user with active subscriptions so force disconnecting them: " + mqttBrokerService.connectionToString(connection));
             mqttBrokerService.doForceDisconnect(connection);
         }
@@ -539,8 +724,11 @@ public class DefaultMQTTHandler extends MQTTHandler {
     }
 
     protected Consumer<SharedEvent> getSubscriptionEventConsumer(RemotingConnection connection, Topic topic) {
-        boolean isValueSubscription = ATTRIBUTE_VALUE_TOPIC.equalsIgnoreCase(topicTokenIndexToString(topic, 2));
+        boolean isValueSubscription = ATTRIBUTE_VALUE_TOPIC.equalsIgnoreCase(topicType(topic));
         boolean isAssetTopic = isAssetTopic(topic);
+        PayloadEncoding encoding = topicEncoding(topic);
+        Cache<SharedEvent, byte[]> eventPayloadCache = eventPayloadCaches.get(encoding);
+        Cache<SharedEvent, byte[]> valuePayloadCache = valuePayloadCaches.get(encoding);
 
         // Always publish asset/attribute messages with QoS 0
         MqttQoS mqttQoS = MqttQoS.AT_MOST_ONCE;
@@ -573,33 +761,69 @@ public class DefaultMQTTHandler extends MQTTHandler {
 
 
         return ev -> {
+            byte[] payload = null;
 
             if (isAssetTopic) {
                 if (ev instanceof AssetEvent) {
-                    mqttBrokerService.publishMessage(topicExpander.apply(ev), ev, mqttQoS);
+                    payload = getPayload(eventPayloadCache, encoding, ev, ev);
                 }
             } else {
                 if (ev instanceof AttributeEvent attributeEvent) {
                     if (isValueSubscription) {
-                        mqttBrokerService.publishMessage(topicExpander.apply(ev), attributeEvent.getValue().orElse(null), mqttQoS);
+                        payload = getPayload(valuePayloadCache, encoding, ev, attributeEvent.getValue().orElse(null));
                     } else {
-                        mqttBrokerService.publishMessage(topicExpander.apply(ev), ev, mqttQoS);
+                        payload = getPayload(eventPayloadCache, encoding, ev, ev);
                     }
                 }
             }
+
+            if (payload != null) {
+                mqttBrokerService.publishMessage(topicExpander.apply(ev), payload, mqttQoS);
+            }
         };
     }
 
+    protected byte[] getPayload(Cache<SharedEvent, byte[]> payloadCache, PayloadEncoding encoding, SharedEvent event, Object data) {
+        byte[] payload = payloadCache.getIfPresent(event);
+        if (payload == null) {
+            try {
+                payload = encoding == PayloadEncoding.JSON ? MQTTBrokerService.toPayload(data) : encoding.encode(data);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Couldn't send event to MQTT client", e);
+                return null;
+            }
+            payloadCache.put(event, payload);
+        }
+        return payload;
+    }
+
+    /**
+     * @return the type token of the topic without any {@link PayloadEncoding} suffix
+     */
+    protected static String topicType(Topic topic) {
+        String topicType = topicTokenIndexToString(topic, 2);
+        return topicType != null ? PayloadEncoding.stripSuffix(topicType) : null;
+    }
+
+    protected static PayloadEncoding topicEncoding(Topic topic) {
+        return PayloadEncoding.fromTopicType(topicTokenIndexToString(topic, 2));
+    }
+
     protected static boolean isAttributeTopic(Topic topic) {
-        return ATTRIBUTE_TOPIC.equalsIgnoreCase(topicTokenIndexToString(topic, 2)) || ATTRIBUTE_VALUE_TOPIC.equalsIgnoreCase(topicTokenIndexToString(topic, 2));
+        String topicType = topicType(topic);
+        return ATTRIBUTE_TOPIC.equalsIgnoreCase(topicType) || ATTRIBUTE_VALUE_TOPIC.equalsIgnoreCase(topicType);
     }
 
     protected static boolean isAttributeValueWriteTopic(Topic topic) {
-        return ATTRIBUTE_VALUE_WRITE_TOPIC.equalsIgnoreCase(topicTokenIndexToString(topic, 2));
+        return ATTRIBUTE_VALUE_WRITE_TOPIC.equalsIgnoreCase(topicType(topic));
+    }
+
+    protected static boolean isAttributeValuesWriteTopic(Topic topic) {
+        return ATTRIBUTE_VALUES_WRITE_TOPIC.equalsIgnoreCase(topicType(topic));
     }
 
     protected static boolean isAssetTopic(Topic topic) {
-        return ASSET_TOPIC.equalsIgnoreCase(topicTokenIndexToString(topic, 2));
+        return ASSET_TOPIC.equalsIgnoreCase(topicType(topic));
     }
 
     protected static Map<String, Object> prepareHeaders(String requestRealm, RemotingConnection connection) {
@@ -22,6 +22,9 @@ package org.openremote.manager.mqtt;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import io.netty.channel.ChannelId;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import org.apache.activemq.artemis.api.core.ActiveMQException;
 import org.apache.activemq.artemis.api.core.ActiveMQExceptionType;
@@ -75,6 +78,7 @@ import org.openremote.model.util.ValueUtil;
 
 import javax.security.auth.Subject;
 import javax.security.auth.login.AppConfigurationEntry;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -99,6 +103,8 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
     public static final int PRIORITY = MED_PRIORITY;
     public static final String MQTT_SERVER_LISTEN_HOST = "MQTT_SERVER_LISTEN_HOST";
     public static final String MQTT_SERVER_LISTEN_PORT = "MQTT_SERVER_LISTEN_PORT";
+    public static final String MQTT_PUBLISH_SESSIONS = "MQTT_PUBLISH_SESSIONS";
+    public static final int MQTT_PUBLISH_SESSIONS_DEFAULT = Math.min(8, Runtime.getRuntime().availableProcessors());
     public static final String ANONYMOUS_USERNAME = "anonymous";
     protected final WildcardConfiguration wildcardConfiguration = new WildcardConfiguration();
     protected static final System.Logger LOG = System.getLogger(MQTTBrokerService.class.getName() + "." + API.name());
@@ -123,8 +129,26 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
     protected int port;
     protected EmbeddedActiveMQ server;
     protected ActiveMQORSecurityManager securityManager;
-    protected ClientProducer producer;
     protected ClientSessionInternal internalSession;
+    protected int publishSessionCount;
+    protected PublishSession[] publishSessions;
+    protected Timer publishTimer;
+    protected Timer publishLockWaitTimer;
+
+    /**
+     * An internal session and producer used for publishing; Artemis' sessions are not threadsafe so each is guarded by
+     * its own lock and topics are spread across the sessions by hash (messages for a topic are always published in
+     * order through the same session).
+     */
+    protected static class PublishSession {
+        protected final ClientSession session;
+        protected final ClientProducer producer;
+
+        protected PublishSession(ClientSession session, ClientProducer producer) {
+            this.session = session;
+            this.producer = producer;
+        }
+    }
 
     @Override
     public int getPriority() {
@@ -135,6 +159,7 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
     public void init(Container container) throws Exception {
         host = getString(container.getConfig(), MQTT_SERVER_LISTEN_HOST, "0.0.0.0");
         port = getInteger(container.getConfig(), MQTT_SERVER_LISTEN_PORT, 1883);
+        publishSessionCount = Math.max(1, getInteger(container.getConfig(), MQTT_PUBLISH_SESSIONS, MQTT_PUBLISH_SESSIONS_DEFAULT));
         int debounceMillis = getInteger(container.getConfig(), MQTT_FORCE_USER_DISCONNECT_DEBOUNCE_MILLIS, MQTT_FORCE_USER_DISCONNECT_DEBOUNCE_MILLIS_DEFAULT);
         assetStorageService = container.getService(AssetStorageService.class);
         authorisationService = container.getService(AuthorisationService.class);
@@ -145,6 +170,21 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
         timerService = container.getService(TimerService.class);
         assetProcessingService = container.getService(AssetProcessingService.class);
 
+        MeterRegistry meterRegistry = container.getMeterRegistry();
+        if (meterRegistry != null) {
+            publishTimer = Timer.builder("or.mqtt.publish")
+                .description("Time taken to publish a message to MQTT subscribers including waiting for a publish session")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+            publishLockWaitTimer = Timer.builder("or.mqtt.publish.lock.wait")
+                .description("Time spent waiting for a publish session to become available")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+            Gauge.builder("or.mqtt.publish.sessions", this, service -> service.publishSessionCount)
+                .description("Number of internal sessions used for publishing MQTT messages")
+                .register(meterRegistry);
+        }
+
         userAssetDisconnectDebouncer = new Debouncer<>(executorService, id -> processUserAssetLinkChange(id, userAssetLinkChangeMap.remove(id)), debounceMillis);
         disconnectedConnectionCache = CacheBuilder.newBuilder()
                 .maximumSize(10000)
@@ -215,6 +255,7 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
         // TODO: Make auto provisioning clients disconnect and reconnect with credentials or pass through X.509 certificates for auth
         // Cannot use authentication or authorisation cache as auto provisioning MQTT clients will authenticate as anonymous and this is then baked into the created ServerSession and cannot be modified
         // so all anonymous sessions will use the same username/password for key lookups in the caches - Can possibly use caching if ActiveMQ makes changes and/or we move to using X.509 TLS with ActiveMQ
+        // Authorisation results are instead cached per connection by the ActiveMQORSecurityManager
         //config.setSecurityInvalidationInterval(600000); // Long cache as we force clear it when needed
         config.setAuthenticationCacheSize(0);
         config.setAuthorizationCacheSize(0);
@@ -262,17 +303,18 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
             }
         });
 
-        // Create internal producer for producing and consuming messages
+        // Create internal session for consuming messages
         ServerLocator serverLocator = ActiveMQClient.createServerLocator("vm://0");
         ClientSessionFactory factory = serverLocator.createSessionFactory();
-        String internalClientID = UniqueIdentifierGenerator.generateId("Internal client");
-        internalSession = (ClientSessionInternal) factory.createSession(null, null, false, true, true, true, serverLocator.getAckBatchSize(), internalClientID);
-        ServerSession serverSession = server.getActiveMQServer().getSessionByID(internalSession.getName());
-        serverSession.disableSecurity();
-        internalSession.start();
+        internalSession = createInternalSession(factory, serverLocator);
 
-        // Create producer
-        producer = internalSession.createProducer();
+        // Create internal sessions and producers for publishing messages
+        PublishSession[] sessions = new PublishSession[publishSessionCount];
+        for (int i = 0; i < sessions.length; i++) {
+            ClientSession session = createInternalSession(factory, serverLocator);
+            sessions[i] = new PublishSession(session, session.createProducer());
+        }
+        publishSessions = sessions;
 
         // Start each custom handler
         for (MQTTHandler handler : customHandlers) {
@@ -296,6 +338,11 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
 
                     if (persistenceEvent.getEntity() instanceof User user) {
 
+                        if (persistenceEvent.getCause() != PersistenceEvent.Cause.CREATE) {
+                            // Any change to the user may affect what its connections are authorised to do
+                            getUserConnections(user.getId()).forEach(securityManager::invalidateAuthorisationCache);
+                        }
+
                         if (!user.isServiceAccount()) {
                             return;
                         }
@@ -330,6 +377,19 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
 
         userAssetDisconnectDebouncer.cancelAll(true);
 
+        if (publishSessions != null) {
+            for (PublishSession publishSession : publishSessions) {
+                synchronized (publishSession) {
+                    try {
+                        publishSession.session.close();
+                    } catch (ActiveMQException e) {
+                        LOG.log(DEBUG, "Failed to close internal publish session", e);
+                    }
+                }
+            }
+            publishSessions = null;
+        }
+
         server.stop();
         LOG.log(DEBUG, "Stopped MQTT broker");
 
@@ -359,6 +419,7 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
                 // TODO: Force delete session (don't allow retained/durable sessions)
 
                 connectionIDConnectionMap.remove(getConnectionIDString(connection));
+                securityManager.invalidateAuthorisationCache(connection);
 
                 if (connection.getClientID() != null) {
                     RemotingConnection remotingConnection = clientIDConnectionMap.remove(connection.getClientID());
@@ -453,8 +514,13 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
         // Only notify handlers if subject is a restricted user
         if (subject != null && KeycloakIdentityProvider.getSecurityContext(subject).getToken().getRealmAccess().isUserInRole(Constants.RESTRICTED_USER_REALM_ROLE)) {
             LOG.log(TRACE, "User asset links modified for connected restricted user so passing to handlers to decide what to do: user=" + subject);
+            boolean linksRemoved = changes.stream().anyMatch(pe -> pe.getCause() != PersistenceEvent.Cause.CREATE);
             // Pass to handlers to decide what to do
             userConnections.forEach(connection -> {
+                if (linksRemoved) {
+                    // Previously authorised topics may no longer be allowed
+                    securityManager.invalidateAuthorisationCache(connection);
+                }
                 for (MQTTHandler handler : customHandlers) {
                     connection.setSubject(subject);
                     handler.onUserAssetLinksChanged(connection, changes);
@@ -480,6 +546,7 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
 
     protected void doForceDisconnect(RemotingConnection connection) {
         LOG.log(DEBUG, "Force disconnecting client connection: " + connectionToString(connection));
+        securityManager.invalidateAuthorisationCache(connection);
         connection.disconnect(false);
         ((SecurityStoreImpl)server.getActiveMQServer().getSecurityStore()).invalidateAuthorizationCache();
     }
@@ -495,22 +562,78 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
         return false;
     }
 
+    protected ClientSessionInternal createInternalSession(ClientSessionFactory factory, ServerLocator serverLocator) throws ActiveMQException {
+        String internalClientID = UniqueIdentifierGenerator.generateId("Internal client");
+        ClientSessionInternal session = (ClientSessionInternal) factory.createSession(null, null, false, true, true, true, serverLocator.getAckBatchSize(), internalClientID);
+        ServerSession serverSession = server.getActiveMQServer().getSessionByID(session.getName());
+        serverSession.disableSecurity();
+        session.start();
+        return session;
+    }
+
+    /**
+     * Writes the body of a message that is about to be published.
+     */
+    @FunctionalInterface
+    protected interface MessageBodyWriter {
+        void write(ClientMessage message) throws Exception;
+    }
+
     public void publishMessage(String topic, Object data, MqttQoS qoS) {
+        publishMessage(topic, data, PayloadEncoding.JSON, qoS);
+    }
+
+    /**
+     * Publish data encoded with the specified encoding; the data is encoded directly into the message body.
+     */
+    public void publishMessage(String topic, Object data, PayloadEncoding encoding, MqttQoS qoS) {
+        publishMessage(topic, qoS, message -> encoding.encode(data, message.getBodyBuffer()));
+    }
+
+    /**
+     * Publish an already rendered payload; allows the same payload to be published to many topics without encoding
+     * the data for each one.
+     */
+    public void publishMessage(String topic, byte[] payload, MqttQoS qoS) {
+        publishMessage(topic, qoS, message -> message.writeBodyBufferBytes(payload));
+    }
+
+    protected void publishMessage(String topic, MqttQoS qoS, MessageBodyWriter bodyWriter) {
+        PublishSession[] sessions = publishSessions;
+        if (sessions == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        PublishSession publishSession = sessions[Math.floorMod(topic.hashCode(), sessions.length)];
+        String address = MQTTUtil.convertMqttTopicFilterToCoreAddress(topic, server.getConfiguration().getWildcardConfiguration());
+
         try {
-            if (internalSession != null) {
-                // Artemis' sessions are not threadsafe
-                synchronized (internalSession) {
-                    ClientMessage message = internalSession.createMessage(false);
-                    message.putIntProperty(MQTT_QOS_LEVEL_KEY, qoS.value());
-                    message.writeBodyBufferBytes(ValueUtil.asJSON(data).map(String::getBytes).orElseThrow(() -> new IllegalStateException("Failed to convert payload to JSON string: " + data)));
-                    producer.send(MQTTUtil.convertMqttTopicFilterToCoreAddress(topic, server.getConfiguration().getWildcardConfiguration()), message);
+            synchronized (publishSession) {
+                if (publishLockWaitTimer != null) {
+                    publishLockWaitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
                 }
+                ClientMessage message = publishSession.session.createMessage(false);
+                message.putIntProperty(MQTT_QOS_LEVEL_KEY, qoS.value());
+                bodyWriter.write(message);
+                publishSession.producer.send(address, message);
             }
         } catch (Exception e) {
             LOG.log(WARNING, "Couldn't send AttributeEvent to MQTT client", e);
+        } finally {
+            if (publishTimer != null) {
+                publishTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
         }
     }
 
+    /**
+     * Render data as the JSON payload of an MQTT message.
+     */
+    public static byte[] toPayload(Object data) {
+        return ValueUtil.asJSON(data).map(json -> json.getBytes(StandardCharsets.UTF_8)).orElseThrow(() -> new IllegalStateException("Failed to convert payload to JSON string: " + data));
+    }
+
     public WildcardConfiguration getWildcardConfiguration() {
         return wildcardConfiguration;
     }
@@ -582,6 +705,8 @@ public class MQTTBrokerService extends RouteBuilder implements ContainerService,
 
     public void notifyConnectionAuthenticated(RemotingConnection connection) {
         if (connection.getSubject() != null) {
+            // Topics authorised for the previous subject (e.g. anonymous) must be checked again
+            securityManager.invalidateAuthorisationCache(connection);
             // Notify handlers that connection authenticated
             LOG.log(DEBUG, "Client connection authenticated: " + connectionToString(connection));
             for (MQTTHandler handler : getCustomHandlers()) {
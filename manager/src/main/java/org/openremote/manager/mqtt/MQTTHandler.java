@@ -220,6 +220,17 @@ public abstract class MQTTHandler {
         return canPublish(connection, securityContext, topic);
     }
 
+    /**
+     * Indicates whether a successful {@link #checkCanSubscribe}/{@link #checkCanPublish} for the topic can be cached for
+     * the connection; the cache is invalidated when the connection is authenticated, when its user is updated or asset
+     * links of its user are removed and when it disconnects, otherwise entries expire after 5 minutes. Changes that
+     * don't cause any of these (e.g. a role being removed from the user) are therefore not seen until the entry expires
+     * so handlers must opt in.
+     */
+    public boolean isAuthorisationCacheable(Topic topic) {
+        return false;
+    }
+
     /**
      * Called when {@link org.openremote.model.asset.UserAssetLink}s for a restricted user are changed and that user
      * has an active connection (subject can be accessed from the connection).
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2022, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import org.apache.activemq.artemis.api.core.ActiveMQBuffer;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.asset.AssetEvent;
+import org.openremote.model.util.ValueUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The encodings supported for the payloads of the {@link DefaultMQTTHandler} topics; the encoding is selected by
+ * appending {@link #SUFFIX_SEPARATOR} and the encoding suffix to the topic type token (e.g.
+ * <code>{realm}/{clientId}/attributevalue-cbor/{attributeName}/{assetId}</code>), topics without a suffix use JSON.
+ * All encodings share the configuration of {@link ValueUtil#JSON} so the data model is the same in every encoding.
+ */
+public enum PayloadEncoding {
+
+    JSON(null, ValueUtil.JSON),
+    CBOR("cbor", ValueUtil.JSON.copyWith(new CBORFactory()));
+
+    public static final String SUFFIX_SEPARATOR = "-";
+
+    /**
+     * Writes to an {@link ActiveMQBuffer} so payloads can be encoded straight into a message body.
+     */
+    protected static class BufferOutputStream extends OutputStream {
+        protected final ActiveMQBuffer buffer;
+
+        protected BufferOutputStream(ActiveMQBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.writeByte((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            buffer.writeBytes(b, off, len);
+        }
+    }
+
+    protected final String suffix;
+    protected final ObjectMapper mapper;
+
+    PayloadEncoding(String suffix, ObjectMapper mapper) {
+        this.suffix = suffix;
+        this.mapper = mapper;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    /**
+     * @return the topic type token for this encoding e.g. <code>attributevalue-cbor</code>
+     */
+    public String toTopicType(String topicType) {
+        return suffix == null ? topicType : topicType + SUFFIX_SEPARATOR + suffix;
+    }
+
+    public byte[] encode(Object data) throws IOException {
+        return mapper.writeValueAsBytes(toEncodable(data));
+    }
+
+    /**
+     * Encodes the data directly into the buffer without an intermediate byte array.
+     */
+    public void encode(Object data, ActiveMQBuffer buffer) throws IOException {
+        mapper.writeValue(new BufferOutputStream(buffer), toEncodable(data));
+    }
+
+    /**
+     * Attributes that haven't been hydrated hold their value as raw JSON which binary formats can't embed, so for
+     * binary encodings assets are converted to a JSON tree first; other payloads are encoded as is.
+     */
+    protected Object toEncodable(Object data) throws IOException {
+        if (this == JSON || !(data instanceof AssetEvent || data instanceof Asset<?>)) {
+            return data;
+        }
+        return ValueUtil.JSON.readTree(ValueUtil.JSON.writeValueAsBytes(data));
+    }
+
+    /**
+     * Decodes the readable bytes of the buffer without changing its reader index.
+     */
+    public <T> T decode(ByteBuf buf, Class<T> type) throws IOException {
+        try (InputStream inputStream = new ByteBufInputStream(buf.duplicate())) {
+            return mapper.readValue(inputStream, type);
+        }
+    }
+
+    /**
+     * @return the encoding of the topic type token, defaulting to {@link #JSON} when there is no (known) suffix
+     */
+    public static PayloadEncoding fromTopicType(String topicType) {
+        int separatorIndex = topicType != null ? topicType.lastIndexOf(SUFFIX_SEPARATOR) : -1;
+        if (separatorIndex < 0) {
+            return JSON;
+        }
+        String suffix = topicType.substring(separatorIndex + 1);
+        for (PayloadEncoding encoding : values()) {
+            if (encoding.suffix != null && encoding.suffix.equalsIgnoreCase(suffix)) {
+                return encoding;
+            }
+        }
+        return JSON;
+    }
+
+    /**
+     * @return the topic type token without the encoding suffix
+     */
+    public static String stripSuffix(String topicType) {
+        PayloadEncoding encoding = fromTopicType(topicType);
+        return encoding.suffix == null ? topicType : topicType.substring(0, topicType.length() - encoding.suffix.length() - SUFFIX_SEPARATOR.length());
+    }
+}
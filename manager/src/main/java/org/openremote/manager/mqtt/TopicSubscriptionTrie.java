@@ -0,0 +1,217 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.mqtt;
+
+import org.openremote.model.asset.AssetEvent;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.event.shared.AssetInfo;
+import org.openremote.model.event.shared.SharedEvent;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.openremote.manager.mqtt.MQTTHandler.TOKEN_MULTI_LEVEL_WILDCARD;
+import static org.openremote.manager.mqtt.MQTTHandler.TOKEN_SINGLE_LEVEL_WILDCARD;
+import static org.openremote.manager.mqtt.MQTTHandler.topicRealm;
+import static org.openremote.manager.mqtt.MQTTHandler.topicTokenIndexToString;
+
+/**
+ * Index of the asset and attribute topic subscriptions handled by the {@link DefaultMQTTHandler}, structured as a trie
+ * of the realm, attribute name and asset tokens of the topics so that the subscribers of an event are found with a
+ * lookup per level (and one per ancestor of the asset for <code>{assetId}/#</code> topics) rather than by applying the
+ * filter of every subscription to the event.
+ * <p>
+ * The asset level supports the same selections as {@link DefaultMQTTHandler#buildAssetFilter}: a specific asset,
+ * the children of an asset (<code>{assetId}/+</code>), an asset and all of its descendants (<code>{assetId}/#</code>),
+ * root assets (<code>+</code>) and all assets (<code>#</code>).
+ */
+public class TopicSubscriptionTrie<T> {
+
+    protected static class AssetNode<T> {
+        protected final Set<T> all = ConcurrentHashMap.newKeySet();
+        protected final Set<T> roots = ConcurrentHashMap.newKeySet();
+        protected final Map<String, Set<T>> assets = new ConcurrentHashMap<>();
+        protected final Map<String, Set<T>> children = new ConcurrentHashMap<>();
+        protected final Map<String, Set<T>> descendants = new ConcurrentHashMap<>();
+
+        protected void forEachMatch(AssetInfo assetInfo, Consumer<T> consumer) {
+            all.forEach(consumer);
+            if (assetInfo.getParentId() == null) {
+                roots.forEach(consumer);
+            } else {
+                forEach(children, assetInfo.getParentId(), consumer);
+            }
+            forEach(assets, assetInfo.getAssetId(), consumer);
+            if (assetInfo.getPath() != null && !descendants.isEmpty()) {
+                for (String ancestorId : assetInfo.getPath()) {
+                    forEach(descendants, ancestorId, consumer);
+                }
+            }
+        }
+
+        protected static <T> void forEach(Map<String, Set<T>> keyMap, String key, Consumer<T> consumer) {
+            if (key == null) {
+                return;
+            }
+            Set<T> subscribers = keyMap.get(key);
+            if (subscribers != null) {
+                subscribers.forEach(consumer);
+            }
+        }
+    }
+
+    protected static class RealmNode<T> {
+        protected final AssetNode<T> assetTopics = new AssetNode<>();
+        protected final AssetNode<T> anyAttributeTopics = new AssetNode<>();
+        protected final Map<String, AssetNode<T>> attributeTopics = new ConcurrentHashMap<>();
+    }
+
+    protected final Map<String, RealmNode<T>> realms = new ConcurrentHashMap<>();
+    protected final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Adds the subscriber for the topic, the topic must be a valid asset or attribute subscription topic.
+     *
+     * @return false if the topic isn't supported
+     */
+    public boolean add(Topic topic, T subscriber) {
+        return update(topic, subscriber, true);
+    }
+
+    public boolean remove(Topic topic, T subscriber) {
+        return update(topic, subscriber, false);
+    }
+
+    /**
+     * Passes each subscriber whose topic matches the event to the consumer.
+     */
+    public void forEachMatch(SharedEvent event, Consumer<T> consumer) {
+        if (!(event instanceof AssetInfo assetInfo) || assetInfo.getRealm() == null) {
+            return;
+        }
+
+        RealmNode<T> realmNode = realms.get(assetInfo.getRealm());
+        if (realmNode == null) {
+            return;
+        }
+
+        if (event instanceof AssetEvent) {
+            realmNode.assetTopics.forEachMatch(assetInfo, consumer);
+        } else if (event instanceof AttributeEvent attributeEvent) {
+            realmNode.anyAttributeTopics.forEachMatch(assetInfo, consumer);
+            AssetNode<T> attributeNode = attributeEvent.getAttributeName() != null ? realmNode.attributeTopics.get(attributeEvent.getAttributeName()) : null;
+            if (attributeNode != null) {
+                attributeNode.forEachMatch(assetInfo, consumer);
+            }
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    protected boolean update(Topic topic, T subscriber, boolean add) {
+        String realm = topicRealm(topic);
+        boolean isAssetTopic = DefaultMQTTHandler.isAssetTopic(topic);
+        boolean isAttributeTopic = DefaultMQTTHandler.isAttributeTopic(topic);
+
+        if (realm == null || (!isAssetTopic && !isAttributeTopic)) {
+            return false;
+        }
+
+        // Asset tokens follow {realm}/{clientId}/asset or {realm}/{clientId}/attribute/{attributeName}
+        int assetTokenIndex = isAssetTopic ? 3 : 4;
+        int tokenCount = topic.getTokens().size();
+        if (tokenCount != assetTokenIndex + 1 && tokenCount != assetTokenIndex + 2) {
+            return false;
+        }
+
+        RealmNode<T> realmNode = add ? realms.computeIfAbsent(realm, r -> new RealmNode<>()) : realms.get(realm);
+        if (realmNode == null) {
+            return false;
+        }
+
+        AssetNode<T> assetNode;
+        if (isAssetTopic) {
+            assetNode = realmNode.assetTopics;
+        } else {
+            String attributeName = topicTokenIndexToString(topic, 3);
+            if (TOKEN_SINGLE_LEVEL_WILDCARD.equals(attributeName)) {
+                assetNode = realmNode.anyAttributeTopics;
+            } else if (add) {
+                assetNode = realmNode.attributeTopics.computeIfAbsent(attributeName, name -> new AssetNode<>());
+            } else {
+                assetNode = realmNode.attributeTopics.get(attributeName);
+            }
+        }
+        if (assetNode == null) {
+            return false;
+        }
+
+        String assetToken = topicTokenIndexToString(topic, assetTokenIndex);
+        boolean updated;
+
+        if (tokenCount == assetTokenIndex + 1) {
+            if (TOKEN_MULTI_LEVEL_WILDCARD.equals(assetToken)) {
+                updated = add ? assetNode.all.add(subscriber) : assetNode.all.remove(subscriber);
+            } else if (TOKEN_SINGLE_LEVEL_WILDCARD.equals(assetToken)) {
+                updated = add ? assetNode.roots.add(subscriber) : assetNode.roots.remove(subscriber);
+            } else {
+                updated = update(assetNode.assets, assetToken, subscriber, add);
+            }
+        } else {
+            String wildcardToken = topicTokenIndexToString(topic, assetTokenIndex + 1);
+            if (TOKEN_MULTI_LEVEL_WILDCARD.equals(wildcardToken)) {
+                updated = update(assetNode.descendants, assetToken, subscriber, add);
+            } else if (TOKEN_SINGLE_LEVEL_WILDCARD.equals(wildcardToken)) {
+                updated = update(assetNode.children, assetToken, subscriber, add);
+            } else {
+                return false;
+            }
+        }
+
+        if (updated) {
+            size.addAndGet(add ? 1 : -1);
+        }
+        return true;
+    }
+
+    protected static <T> boolean update(Map<String, Set<T>> keyMap, String key, T subscriber, boolean add) {
+        boolean[] updated = new boolean[1];
+        if (add) {
+            keyMap.compute(key, (k, subscribers) -> {
+                if (subscribers == null) {
+                    subscribers = ConcurrentHashMap.newKeySet();
+                }
+                updated[0] = subscribers.add(subscriber);
+                return subscribers;
+            });
+        } else {
+            keyMap.computeIfPresent(key, (k, subscribers) -> {
+                updated[0] = subscribers.remove(subscriber);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+        return updated[0];
+    }
+}
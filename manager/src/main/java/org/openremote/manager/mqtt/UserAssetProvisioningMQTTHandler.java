@@ -19,11 +19,19 @@
  */
 package org.openremote.manager.mqtt;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.mqtt.MqttQoS;
 import org.apache.activemq.artemis.spi.core.protocol.RemotingConnection;
 import org.apache.camel.builder.RouteBuilder;
 import org.keycloak.KeycloakSecurityContext;
+import org.openremote.container.concurrent.ContainerExecutor;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.timer.TimerService;
 import org.openremote.container.util.UniqueIdentifierGenerator;
@@ -43,7 +51,10 @@ import org.openremote.model.syslog.SyslogCategory;
 import org.openremote.model.util.TextUtil;
 import org.openremote.model.util.ValueUtil;
 
+import javax.security.auth.x500.X500Principal;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
@@ -51,17 +62,26 @@ import java.security.cert.X509Certificate;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.openremote.container.persistence.PersistenceService.PERSISTENCE_TOPIC;
 import static org.openremote.container.persistence.PersistenceService.isPersistenceEventForEntityType;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.model.Constants.RESTRICTED_USER_REALM_ROLE;
 import static org.openremote.model.syslog.SyslogCategory.API;
 
 /**
  * This {@link MQTTHandler} is responsible for provisioning service users and assets and authenticating the client
  * against the configured {@link org.openremote.model.provisioning.ProvisioningConfig}s.
+ * <p>
+ * Requests are processed on a bounded worker pool so that a reconnect storm of many devices doesn't block other MQTT
+ * publishes; X.509 configs are indexed by CA certificate subject and verified client certificates are cached by
+ * fingerprint so reconnecting devices only incur the user and asset lookups.
  */
 public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
 
@@ -83,6 +103,8 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
                 .process(exchange -> {
                     PersistenceEvent<ProvisioningConfig<?,?>> persistenceEvent = (PersistenceEvent<ProvisioningConfig<?,?>>)exchange.getIn().getBody(PersistenceEvent.class);
 
+                    mqttHandler.invalidateX509ProvisioningConfigs();
+
                     boolean forceDisconnect = persistenceEvent.getCause() == PersistenceEvent.Cause.DELETE;
 
                     if (persistenceEvent.getCause() == PersistenceEvent.Cause.UPDATE) {
@@ -99,7 +121,26 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
         }
     }
 
+    /**
+     * A client certificate that has been verified against the CA certificate of a provisioning config.
+     */
+    protected static class VerifiedCertificate {
+        protected final X509Certificate certificate;
+        protected final X509ProvisioningConfig config;
+
+        protected VerifiedCertificate(X509Certificate certificate, X509ProvisioningConfig config) {
+            this.certificate = certificate;
+            this.config = config;
+        }
+    }
+
     protected static final Logger LOG = SyslogCategory.getLogger(API, UserAssetProvisioningMQTTHandler.class);
+    public static final String MQTT_PROVISIONING_THREADS = "MQTT_PROVISIONING_THREADS";
+    public static final int MQTT_PROVISIONING_THREADS_DEFAULT = Math.min(8, Runtime.getRuntime().availableProcessors());
+    public static final String MQTT_PROVISIONING_QUEUE_SIZE = "MQTT_PROVISIONING_QUEUE_SIZE";
+    public static final int MQTT_PROVISIONING_QUEUE_SIZE_DEFAULT = 50000;
+    public static final String MQTT_PROVISIONING_CERTIFICATE_CACHE_SECONDS = "MQTT_PROVISIONING_CERTIFICATE_CACHE_SECONDS";
+    public static final int MQTT_PROVISIONING_CERTIFICATE_CACHE_SECONDS_DEFAULT = 3600;
     public static final String PROVISIONING_TOKEN = "provisioning";
     public static final String REQUEST_TOKEN = "request";
     public static final String RESPONSE_TOKEN = "response";
@@ -111,6 +152,18 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
     protected ManagerKeycloakIdentityProvider identityProvider;
     protected boolean isKeycloak;
     protected final ConcurrentMap<Long, Set<RemotingConnection>> provisioningConfigAuthenticatedConnectionMap = new ConcurrentHashMap<>();
+    // X.509 provisioning configs indexed by the subject of their CA certificate, rebuilt when any config changes
+    protected Map<X500Principal, List<X509ProvisioningConfig>> x509ProvisioningConfigIndex;
+    // Client certificates (keyed by the SHA-256 fingerprint of their PEM) that have already been verified against a config
+    protected Cache<String, VerifiedCertificate> verifiedCertificateCache;
+    // Provisioning involves identity provider and database calls so it is done off the MQTT consumer thread
+    protected ContainerExecutor provisioningExecutor;
+    // Serialises provisioning of the same device so concurrent requests don't create duplicate users
+    protected final Striped<Lock> provisioningLocks = Striped.lazyWeakLock(1024);
+    protected MeterRegistry meterRegistry;
+    protected Timer provisioningTimer;
+    protected Counter certificateCacheHitCounter;
+    protected Counter certificateCacheMissCounter;
 
     @Override
     public void start(Container container) throws Exception {
@@ -120,6 +173,34 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
         assetStorageService = container.getService(AssetStorageService.class);
         ManagerIdentityService identityService = container.getService(ManagerIdentityService.class);
 
+        int threads = Math.max(1, getInteger(container.getConfig(), MQTT_PROVISIONING_THREADS, MQTT_PROVISIONING_THREADS_DEFAULT));
+        int queueSize = Math.max(1, getInteger(container.getConfig(), MQTT_PROVISIONING_QUEUE_SIZE, MQTT_PROVISIONING_QUEUE_SIZE_DEFAULT));
+        provisioningExecutor = new ContainerExecutor("MQTT provisioning", threads, threads, 60, queueSize);
+        provisioningExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        verifiedCertificateCache = CacheBuilder.newBuilder()
+            .maximumSize(100000)
+            .expireAfterWrite(getInteger(container.getConfig(), MQTT_PROVISIONING_CERTIFICATE_CACHE_SECONDS, MQTT_PROVISIONING_CERTIFICATE_CACHE_SECONDS_DEFAULT), TimeUnit.SECONDS)
+            .build();
+
+        meterRegistry = container.getMeterRegistry();
+        if (meterRegistry != null) {
+            provisioningTimer = Timer.builder("or.mqtt.provisioning")
+                .description("Time taken to process an MQTT provisioning request excluding time spent queued")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+            certificateCacheHitCounter = Counter.builder("or.mqtt.provisioning.certificate.cache")
+                .description("Client certificate verifications by whether the verified certificate cache was used")
+                .tag("result", "hit")
+                .register(meterRegistry);
+            certificateCacheMissCounter = Counter.builder("or.mqtt.provisioning.certificate.cache")
+                .description("Client certificate verifications by whether the verified certificate cache was used")
+                .tag("result", "miss")
+                .register(meterRegistry);
+            Gauge.builder("or.mqtt.provisioning.queue", provisioningExecutor, executor -> executor.getQueue().size())
+                .description("Number of MQTT provisioning requests waiting to be processed")
+                .register(meterRegistry);
+        }
+
         if (!identityService.isKeycloakEnabled()) {
             LOG.warning("MQTT connections are not supported when not using Keycloak identity provider");
             isKeycloak = false;
@@ -130,6 +211,14 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
         }
     }
 
+    @Override
+    public void stop() throws Exception {
+        super.stop();
+        if (provisioningExecutor != null) {
+            provisioningExecutor.shutdownNow();
+        }
+    }
+
     @Override
     public boolean handlesTopic(Topic topic) {
         // Skip standard checks
@@ -216,7 +305,7 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
         ProvisioningMessage provisioningMessage = ValueUtil.parse(payloadContent, ProvisioningMessage.class)
             .orElseGet(() -> {
                 LOG.info("Failed to parse message from client: topic=" + topic + mqttBrokerService.connectionToString(connection));
-                mqttBrokerService.publishMessage(getResponseTopic(topic), new ErrorResponseMessage(ErrorResponseMessage.Error.MESSAGE_INVALID), MqttQoS.AT_MOST_ONCE);
+                publishResponse(topic, new ErrorResponseMessage(ErrorResponseMessage.Error.MESSAGE_INVALID));
                 return null;
             });
 
@@ -224,8 +313,26 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
             return;
         }
 
-        if (provisioningMessage instanceof X509ProvisioningMessage) {
-            processX509ProvisioningMessage(connection, topic, (X509ProvisioningMessage)provisioningMessage);
+        if (provisioningMessage instanceof X509ProvisioningMessage x509ProvisioningMessage) {
+            try {
+                provisioningExecutor.execute(() -> {
+                    if (connection.isDestroyed()) {
+                        LOG.fine("Client disconnected before provisioning request was processed: topic=" + topic + mqttBrokerService.connectionToString(connection));
+                        return;
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        processX509ProvisioningMessage(connection, topic, x509ProvisioningMessage);
+                    } finally {
+                        if (provisioningTimer != null) {
+                            provisioningTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                LOG.info("Provisioning queue is full so rejecting request: topic=" + topic + mqttBrokerService.connectionToString(connection));
+                publishResponse(topic, new ErrorResponseMessage(ErrorResponseMessage.Error.SERVER_ERROR));
+            }
         }
     }
 
@@ -255,38 +362,70 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
         return PROVISIONING_TOKEN + "/" + topicTokenIndexToString(topic, 1) + "/" + RESPONSE_TOKEN;
     }
 
+    protected void publishResponse(Topic topic, ProvisioningMessage response) {
+        if (meterRegistry != null) {
+            String result = response instanceof ErrorResponseMessage errorResponse ? errorResponse.getError().name() : "SUCCESS";
+            meterRegistry.counter("or.mqtt.provisioning.requests", "result", result).increment();
+        }
+        mqttBrokerService.publishMessage(getResponseTopic(topic), response, MqttQoS.AT_MOST_ONCE);
+    }
+
     protected void processX509ProvisioningMessage(RemotingConnection connection, Topic topic, X509ProvisioningMessage provisioningMessage) {
 
         LOG.fine("Processing provisioning message on: topic=" + topic + mqttBrokerService.connectionToString(connection));
 
         if (TextUtil.isNullOrEmpty(provisioningMessage.getCert())) {
             LOG.warning("Certificate is missing from X509 provisioning message: topic=" + topic + mqttBrokerService.connectionToString(connection));
-            mqttBrokerService.publishMessage(getResponseTopic(topic), new ErrorResponseMessage(ErrorResponseMessage.Error.CERTIFICATE_INVALID), MqttQoS.AT_MOST_ONCE);
+            publishResponse(topic, new ErrorResponseMessage(ErrorResponseMessage.Error.CERTIFICATE_INVALID));
             return;
         }
 
-        // Parse client cert
+        // Devices present the same certificate each time they reconnect so skip parsing and verification of
+        // certificates that have already been verified
+        String fingerprint = getCertificateFingerprint(provisioningMessage.getCert());
+        VerifiedCertificate verifiedCertificate = verifiedCertificateCache.getIfPresent(fingerprint);
         X509Certificate clientCertificate;
-        try {
-            clientCertificate = ProvisioningUtil.getX509Certificate(provisioningMessage.getCert());
-        } catch (CertificateException e) {
-            LOG.log(Level.WARNING, "Failed to parse client X.509 certificate: topic=" + topic+ mqttBrokerService.connectionToString(connection), e);
-            mqttBrokerService.publishMessage(getResponseTopic(topic), new ErrorResponseMessage(ErrorResponseMessage.Error.CERTIFICATE_INVALID), MqttQoS.AT_MOST_ONCE);
-            return;
-        }
+        X509ProvisioningConfig matchingConfig;
+
+        if (verifiedCertificate != null) {
+            if (certificateCacheHitCounter != null) {
+                certificateCacheHitCounter.increment();
+            }
+            clientCertificate = verifiedCertificate.certificate;
+            matchingConfig = isCertificateValid(connection, verifiedCertificate.config, clientCertificate) ? verifiedCertificate.config : null;
+        } else {
+            if (certificateCacheMissCounter != null) {
+                certificateCacheMissCounter.increment();
+            }
+
+            // Parse client cert
+            try {
+                clientCertificate = ProvisioningUtil.getX509Certificate(provisioningMessage.getCert());
+            } catch (CertificateException e) {
+                LOG.log(Level.WARNING, "Failed to parse client X.509 certificate: topic=" + topic+ mqttBrokerService.connectionToString(connection), e);
+                publishResponse(topic, new ErrorResponseMessage(ErrorResponseMessage.Error.CERTIFICATE_INVALID));
+                return;
+            }
 
-        X509ProvisioningConfig matchingConfig = getMatchingX509ProvisioningConfig(connection, clientCertificate);
+            if (clientCertificate == null) {
+                LOG.warning("Failed to parse client X.509 certificate: topic=" + topic+ mqttBrokerService.connectionToString(connection));
+                publishResponse(topic, new ErrorResponseMessage(ErrorResponseMessage.Error.CERTIFICATE_INVALID));
+                return;
+            }
+
+            matchingConfig = getMatchingX509ProvisioningConfig(connection, fingerprint, clientCertificate);
+        }
 
         if (matchingConfig == null) {
             LOG.finest("No matching provisioning config found for client certificate: topic=" + topic+ mqttBrokerService.connectionToString(connection));
-            mqttBrokerService.publishMessage(getResponseTopic(topic), new ErrorResponseMessage(ErrorResponseMessage.Error.UNAUTHORIZED), MqttQoS.AT_MOST_ONCE);
+            publishResponse(topic, new ErrorResponseMessage(ErrorResponseMessage.Error.UNAUTHORIZED));
             return;
         }
 
         // Check if config is disabled
         if (matchingConfig.isDisabled()) {
             LOG.finest("Matching provisioning config is disabled for client certificate: topic=" + topic+ mqttBrokerService.connectionToString(connection));
-            mqttBrokerService.publishMessage(getResponseTopic(topic), new ErrorResponseMessage(ErrorResponseMessage.Error.CONFIG_DISABLED), MqttQoS.AT_MOST_ONCE);
+            publishResponse(topic, new ErrorResponseMessage(ErrorResponseMessage.Error.CONFIG_DISABLED));
             return;
         }
 
@@ -296,13 +435,13 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
 
         if (TextUtil.isNullOrEmpty(certUniqueId)) {
             LOG.finest("Client X.509 certificate missing unique ID in subject CN: topic=" + topic+ mqttBrokerService.connectionToString(connection));
-            mqttBrokerService.publishMessage(getResponseTopic(topic), new ErrorResponseMessage(ErrorResponseMessage.Error.UNIQUE_ID_MISMATCH), MqttQoS.AT_MOST_ONCE);
+            publishResponse(topic, new ErrorResponseMessage(ErrorResponseMessage.Error.UNIQUE_ID_MISMATCH));
             return;
         }
 
         if (TextUtil.isNullOrEmpty(uniqueId) || !certUniqueId.equals(uniqueId)) {
             LOG.finest("Client X.509 certificate unique ID doesn't match topic unique ID: topic=" + topic+ mqttBrokerService.connectionToString(connection));
-            mqttBrokerService.publishMessage(getResponseTopic(topic), new ErrorResponseMessage(ErrorResponseMessage.Error.UNIQUE_ID_MISMATCH), MqttQoS.AT_MOST_ONCE);
+            publishResponse(topic, new ErrorResponseMessage(ErrorResponseMessage.Error.UNIQUE_ID_MISMATCH));
             return;
         }
 
@@ -315,51 +454,56 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
             serviceUsername = serviceUsername.substring(0, 254);
         }
         User serviceUser;
+        Asset<?> asset;
+        Lock provisioningLock = provisioningLocks.get(realm + "/" + serviceUsername);
+        provisioningLock.lock();
 
         try {
-            serviceUser = identityProvider.getUserByUsername(realm, User.SERVICE_ACCOUNT_PREFIX + serviceUsername);
-
-            if (serviceUser != null) {
-                if (!serviceUser.getEnabled()) {
-                    LOG.finest("Client service user has been disabled: topic=" + topic+ mqttBrokerService.connectionToString(connection));
-                    mqttBrokerService.publishMessage(getResponseTopic(topic), new ErrorResponseMessage(ErrorResponseMessage.Error.USER_DISABLED), MqttQoS.AT_MOST_ONCE);
-                    return;
+            try {
+                serviceUser = identityProvider.getUserByUsername(realm, User.SERVICE_ACCOUNT_PREFIX + serviceUsername);
+
+                if (serviceUser != null) {
+                    if (!serviceUser.getEnabled()) {
+                        LOG.finest("Client service user has been disabled: topic=" + topic+ mqttBrokerService.connectionToString(connection));
+                        publishResponse(topic, new ErrorResponseMessage(ErrorResponseMessage.Error.USER_DISABLED));
+                        return;
+                    }
+                } else {
+                    serviceUser = createClientServiceUser(realm, serviceUsername, matchingConfig);
                 }
-            } else {
-                serviceUser = createClientServiceUser(realm, serviceUsername, matchingConfig);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to retrieve/create service user: topic=" + topic + mqttBrokerService.connectionToString(connection), e);
+                publishResponse(topic, new ErrorResponseMessage(ErrorResponseMessage.Error.SERVER_ERROR));
+                return;
             }
-        } catch (Exception e) {
-            LOG.log(Level.WARNING, "Failed to retrieve/create service user: topic=" + topic + mqttBrokerService.connectionToString(connection), e);
-            mqttBrokerService.publishMessage(getResponseTopic(topic), new ErrorResponseMessage(ErrorResponseMessage.Error.SERVER_ERROR), MqttQoS.AT_MOST_ONCE);
-            return;
-        }
 
-        Asset<?> asset;
-
-        // Prepend realm name to unique ID to generate asset ID to further improve uniqueness
-        String assetId = UniqueIdentifierGenerator.generateId(matchingConfig.getRealm() + uniqueId);
-        LOG.finest("Client unique ID '" + uniqueId + "' mapped to asset ID '" + assetId + "': topic=" + topic+ mqttBrokerService.connectionToString(connection));
+            // Prepend realm name to unique ID to generate asset ID to further improve uniqueness
+            String assetId = UniqueIdentifierGenerator.generateId(matchingConfig.getRealm() + uniqueId);
+            LOG.finest("Client unique ID '" + uniqueId + "' mapped to asset ID '" + assetId + "': topic=" + topic+ mqttBrokerService.connectionToString(connection));
 
-        try {
-            // Look for existing asset
-            asset = assetStorageService.find(assetId);
+            try {
+                // Look for existing asset
+                asset = assetStorageService.find(assetId);
 
-            if (asset != null) {
-                LOG.finest("Client asset found: topic=" + topic + mqttBrokerService.connectionToString(connection) + ", assetId=" + assetId);
+                if (asset != null) {
+                    LOG.finest("Client asset found: topic=" + topic + mqttBrokerService.connectionToString(connection) + ", assetId=" + assetId);
 
-                if (!matchingConfig.getRealm().equals(asset.getRealm())) {
-                    LOG.warning("Client asset realm mismatch : topic=" + topic + mqttBrokerService.connectionToString(connection) + ", assetId=" + assetId);
-                    mqttBrokerService.publishMessage(getResponseTopic(topic), new ErrorResponseMessage(ErrorResponseMessage.Error.ASSET_ERROR), MqttQoS.AT_MOST_ONCE);
-                    return;
+                    if (!matchingConfig.getRealm().equals(asset.getRealm())) {
+                        LOG.warning("Client asset realm mismatch : topic=" + topic + mqttBrokerService.connectionToString(connection) + ", assetId=" + assetId);
+                        publishResponse(topic, new ErrorResponseMessage(ErrorResponseMessage.Error.ASSET_ERROR));
+                        return;
+                    }
+                } else {
+                    LOG.finest("Creating client asset: topic=" + topic + mqttBrokerService.connectionToString(connection) + ", assetId=" + assetId);
+                    asset = createClientAsset(realm, assetId, uniqueId, serviceUser, matchingConfig);
                 }
-            } else {
-                LOG.finest("Creating client asset: topic=" + topic + mqttBrokerService.connectionToString(connection) + ", assetId=" + assetId);
-                asset = createClientAsset(realm, assetId, uniqueId, serviceUser, matchingConfig);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to retrieve/create asset: topic=" + topic + mqttBrokerService.connectionToString(connection) + ", config=" + matchingConfig, e);
+                publishResponse(topic, new ErrorResponseMessage(ErrorResponseMessage.Error.SERVER_ERROR));
+                return;
             }
-        } catch (Exception e) {
-            LOG.log(Level.WARNING, "Failed to retrieve/create asset: topic=" + topic + mqttBrokerService.connectionToString(connection) + ", config=" + matchingConfig, e);
-            mqttBrokerService.publishMessage(getResponseTopic(topic), new ErrorResponseMessage(ErrorResponseMessage.Error.SERVER_ERROR), MqttQoS.AT_MOST_ONCE);
-            return;
+        } finally {
+            provisioningLock.unlock();
         }
 
         LOG.fine("Client successfully initialised: topic=" + topic + mqttBrokerService.connectionToString(connection) + ", config=" + matchingConfig + ", username=" + serviceUsername + ", asset=" + asset);
@@ -377,47 +521,99 @@ public class UserAssetProvisioningMQTTHandler extends MQTTHandler {
             return connections;
         });
 
-        mqttBrokerService.publishMessage(getResponseTopic(topic), new SuccessResponseMessage(realm, asset), MqttQoS.AT_MOST_ONCE);
+        publishResponse(topic, new SuccessResponseMessage(realm, asset));
     }
 
-    protected X509ProvisioningConfig getMatchingX509ProvisioningConfig(RemotingConnection connection, X509Certificate clientCertificate) {
-        return provisioningService
-            .getProvisioningConfigs()
-            .stream()
-            .filter(config -> config instanceof X509ProvisioningConfig)
-            .map(config -> (X509ProvisioningConfig)config)
-            .filter(config -> {
-                try {
-                    X509Certificate caCertificate = config.getCertificate();
-                    if (caCertificate != null) {
-                        if (caCertificate.getSubjectX500Principal().getName().equals(clientCertificate.getIssuerX500Principal().getName())) {
-                            LOG.fine("Client certificate issuer matches provisioning config CA certificate subject: connection=" + connection + ", config=" + config);
-                            Date now = Date.from(timerService.getNow());
-
-                            try {
-                                clientCertificate.verify(caCertificate.getPublicKey());
-                                LOG.fine("Client certificate verified against CA certificate: connection=" + connection + ", config=" + config);
-
-                                if (!config.getData().isIgnoreExpiryDate()) {
-                                    LOG.fine("Validating client certificate validity: connection=" + connection + ", timestamp=" + now);
-                                    clientCertificate.checkValidity(now);
-                                }
-
-                                return true;
-                            } catch (CertificateExpiredException | CertificateNotYetValidException e) {
-                                LOG.log(Level.INFO, "Client certificate failed validity check: connection=" + connection + ", timestamp=" + now, e);
-                            } catch (Exception e) {
-                                LOG.log(Level.INFO, "Client certificate failed verification against CA certificate: connection=" + connection + ", config=" + config, e);
-                            }
+    /**
+     * Finds the config whose CA certificate subject matches the issuer of the client certificate and which signed the
+     * client certificate; the matching config is added to the verified certificate cache.
+     */
+    protected X509ProvisioningConfig getMatchingX509ProvisioningConfig(RemotingConnection connection, String fingerprint, X509Certificate clientCertificate) {
+        Map<X500Principal, List<X509ProvisioningConfig>> configIndex = getX509ProvisioningConfigIndex();
+        List<X509ProvisioningConfig> configs = configIndex.getOrDefault(clientCertificate.getIssuerX500Principal(), Collections.emptyList());
+
+        for (X509ProvisioningConfig config : configs) {
+            LOG.fine("Client certificate issuer matches provisioning config CA certificate subject: connection=" + connection + ", config=" + config);
+
+            try {
+                clientCertificate.verify(config.getCertificate().getPublicKey());
+                LOG.fine("Client certificate verified against CA certificate: connection=" + connection + ", config=" + config);
+            } catch (Exception e) {
+                LOG.log(Level.INFO, "Client certificate failed verification against CA certificate: connection=" + connection + ", config=" + config, e);
+                continue;
+            }
+
+            if (!isCertificateValid(connection, config, clientCertificate)) {
+                continue;
+            }
+
+            synchronized (this) {
+                // Don't cache the verification if the configs have changed in the meantime
+                if (configIndex == x509ProvisioningConfigIndex) {
+                    verifiedCertificateCache.put(fingerprint, new VerifiedCertificate(clientCertificate, config));
+                }
+            }
+            return config;
+        }
+
+        return null;
+    }
+
+    protected boolean isCertificateValid(RemotingConnection connection, X509ProvisioningConfig config, X509Certificate clientCertificate) {
+        if (config.getData().isIgnoreExpiryDate()) {
+            return true;
+        }
+
+        Date now = Date.from(timerService.getNow());
+        LOG.fine("Validating client certificate validity: connection=" + connection + ", timestamp=" + now);
+
+        try {
+            clientCertificate.checkValidity(now);
+            return true;
+        } catch (CertificateExpiredException | CertificateNotYetValidException e) {
+            LOG.log(Level.INFO, "Client certificate failed validity check: connection=" + connection + ", timestamp=" + now, e);
+            return false;
+        }
+    }
+
+    /**
+     * Gets the X.509 provisioning configs indexed by the subject of their CA certificate; the index is built from the
+     * DB on first use after any provisioning config change so provisioning requests don't load and parse every config.
+     */
+    protected synchronized Map<X500Principal, List<X509ProvisioningConfig>> getX509ProvisioningConfigIndex() {
+        if (x509ProvisioningConfigIndex == null) {
+            Map<X500Principal, List<X509ProvisioningConfig>> configIndex = new HashMap<>();
+
+            provisioningService.getProvisioningConfigs().stream()
+                .filter(config -> config instanceof X509ProvisioningConfig)
+                .map(config -> (X509ProvisioningConfig)config)
+                .forEach(config -> {
+                    try {
+                        X509Certificate caCertificate = config.getCertificate();
+                        if (caCertificate != null) {
+                            configIndex.computeIfAbsent(caCertificate.getSubjectX500Principal(), subject -> new ArrayList<>()).add(config);
                         }
+                    } catch (Exception e) {
+                        LOG.log(Level.WARNING, "Failed to extract certificate from provisioning config: config=" + config, e);
                     }
-                } catch (Exception e) {
-                    LOG.log(Level.WARNING, "Failed to extract certificate from provisioning config: config=" + config, e);
-                }
-                return false;
-            })
-            .findFirst()
-            .orElse(null);
+                });
+
+            x509ProvisioningConfigIndex = configIndex;
+        }
+        return x509ProvisioningConfigIndex;
+    }
+
+    protected synchronized void invalidateX509ProvisioningConfigs() {
+        x509ProvisioningConfigIndex = null;
+        verifiedCertificateCache.invalidateAll();
+    }
+
+    protected static String getCertificateFingerprint(String pem) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(pem.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     protected User createClientServiceUser(String realm, String username, ProvisioningConfig<?, ?> provisioningConfig) {
@@ -0,0 +1,12 @@
+/*
+  ############################# TYPED NUMERIC DATAPOINT VALUES #############################
+
+  Number and boolean datapoints are additionally stored in a double precision column so aggregation queries don't
+  need to cast the jsonb value; existing rows can be back filled using the OR_DATA_POINTS_MIGRATE_NUMERIC_VALUES
+  setting (see AssetDatapointService).
+ */
+alter table ASSET_DATAPOINT
+  add column NUMERIC_VALUE double precision;
+
+alter table ASSET_PREDICTED_DATAPOINT
+  add column NUMERIC_VALUE double precision;
@@ -0,0 +1,26 @@
+/*
+  ############################# DATAPOINT PERIOD #############################
+
+  Oldest/latest timestamp, count and latest value of the datapoints of each attribute; maintained by
+  AssetDatapointService when storing and purging datapoints so these don't need to be calculated from the hypertable.
+ */
+create table ASSET_DATAPOINT_PERIOD (
+  ENTITY_ID        varchar(22)  not null,
+  ATTRIBUTE_NAME   varchar(255) not null,
+  OLDEST_TIMESTAMP timestamp    not null,
+  LATEST_TIMESTAMP timestamp    not null,
+  COUNT            int8         not null,
+  LATEST_VALUE     jsonb,
+  primary key (ENTITY_ID, ATTRIBUTE_NAME)
+);
+
+alter table ASSET_DATAPOINT_PERIOD
+  add foreign key (ENTITY_ID) references ASSET (ID) on delete cascade;
+
+insert into ASSET_DATAPOINT_PERIOD (ENTITY_ID, ATTRIBUTE_NAME, OLDEST_TIMESTAMP, LATEST_TIMESTAMP, COUNT, LATEST_VALUE)
+select P.ENTITY_ID, P.ATTRIBUTE_NAME, P.OLDEST_TIMESTAMP, P.LATEST_TIMESTAMP, P.COUNT, DP.VALUE
+from (select ENTITY_ID, ATTRIBUTE_NAME, min(TIMESTAMP) as OLDEST_TIMESTAMP, max(TIMESTAMP) as LATEST_TIMESTAMP, count(*) as COUNT
+      from ASSET_DATAPOINT
+      group by ENTITY_ID, ATTRIBUTE_NAME) P
+       join ASSET_DATAPOINT DP
+            on DP.ENTITY_ID = P.ENTITY_ID and DP.ATTRIBUTE_NAME = P.ATTRIBUTE_NAME and DP.TIMESTAMP = P.LATEST_TIMESTAMP;
@@ -55,7 +55,11 @@ import org.openremote.model.value.ValueFormat;
 import org.openremote.model.value.ValueType;
 
 import java.io.IOException;
+import java.lang.reflect.Constructor;
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import static jakarta.persistence.DiscriminatorType.STRING;
@@ -452,6 +456,38 @@ public abstract class Asset<T extends Asset<?>> implements IdentifiableEntity<T>
         return (T) this;
     }
 
+    /**
+     * Creates a shallow copy of this asset that only contains the attributes that match the filter; the attribute
+     * instances are shared with this asset so the copy must be treated as read only. This is much cheaper than
+     * {@link ValueUtil#clone} when a filtered representation of the asset is only needed for publishing.
+     */
+    public Asset<?> createView(Predicate<Attribute<?>> attributeFilter) {
+        Asset<?> view;
+        try {
+            Constructor<? extends Asset> constructor = getClass().getDeclaredConstructor();
+            constructor.setAccessible(true);
+            view = constructor.newInstance();
+        } catch (Exception e) {
+            Logger.getLogger(Asset.class.getName()).log(Level.FINE, "Failed to instantiate asset view so falling back to clone: " + getClass(), e);
+            view = ValueUtil.clone(this);
+            if (view == null) {
+                return null;
+            }
+        }
+
+        view.id = id;
+        view.version = version;
+        view.createdOn = createdOn;
+        view.name = name;
+        view.accessPublicRead = accessPublicRead;
+        view.parentId = parentId;
+        view.realm = realm;
+        view.type = type;
+        view.path = path;
+        view.attributes = new AttributeMap(getAttributes().values().stream().filter(attributeFilter).collect(Collectors.toList()));
+        return view;
+    }
+
     public <T> Optional<Attribute<T>> getAttribute(AttributeDescriptor<T> descriptor) {
         return getAttributes().get(descriptor);
     }
@@ -20,12 +20,16 @@
 package org.openremote.model.asset;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.openremote.model.event.shared.EventFilter;
 import org.openremote.model.event.shared.AssetInfo;
 import org.openremote.model.event.shared.SharedEvent;
+import org.openremote.model.value.MetaItemDescriptor;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This event is used when an {@link Asset} is created, read, updated or deleted (updates are only fired when one or more top
@@ -45,6 +49,8 @@ public class AssetEvent extends SharedEvent implements AssetInfo {
     protected Cause cause;
     protected Asset<?> asset;
     protected String[] updatedProperties;
+    @JsonIgnore
+    protected transient Map<String, AssetEvent> attributeFilteredViews;
 
     @JsonCreator
     public AssetEvent(@JsonProperty("cause") Cause cause, @JsonProperty("asset") Asset<?> asset, @JsonProperty("updatedProperties") String[] updatedProperties) {
@@ -93,6 +99,23 @@ public class AssetEvent extends SharedEvent implements AssetInfo {
         return updatedProperties;
     }
 
+    /**
+     * @return A copy of this event whose asset is a read only view containing only the attributes that have the
+     * specified meta item (see {@link Asset#createView}); the view is created once per meta item and shared by all
+     * callers so publishing to many public/restricted subscribers doesn't copy the asset for each of them.
+     */
+    public synchronized AssetEvent getAttributeFilteredView(MetaItemDescriptor<?> metaItemDescriptor) {
+        if (attributeFilteredViews == null) {
+            attributeFilteredViews = new HashMap<>(2);
+        }
+        return attributeFilteredViews.computeIfAbsent(metaItemDescriptor.getName(), name -> {
+            Asset<?> assetView = asset.createView(attribute -> attribute.hasMeta(metaItemDescriptor));
+            AssetEvent view = new AssetEvent(cause, assetView, updatedProperties);
+            view.timestamp = timestamp;
+            return view;
+        });
+    }
+
     public boolean isAccessPublicRead() {
         return asset.isAccessPublicRead();
     }
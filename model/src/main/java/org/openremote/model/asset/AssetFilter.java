@@ -25,13 +25,11 @@ import org.openremote.model.event.shared.EventFilter;
 import org.openremote.model.event.shared.SharedEvent;
 import org.openremote.model.util.TextUtil;
 import org.openremote.model.util.TsIgnoreTypeParams;
-import org.openremote.model.util.ValueUtil;
 import org.openremote.model.value.MetaItemDescriptor;
 import org.openremote.model.value.MetaItemType;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 // TODO: Merge this with AssetQuery and use AssetQueryPredicate to resolve
 @TsIgnoreTypeParams
@@ -181,10 +179,8 @@ public class AssetFilter<T extends SharedEvent & AssetInfo> extends EventFilter<
             // Filter attributes before doing name match
             AssetEvent assetEvent = (AssetEvent) event;
             if (assetEvent.getAsset() != null) {
-                Asset<?> asset = ValueUtil.clone(assetEvent.getAsset());
-                MetaItemDescriptor<?> finalFilterAttributesBy = filterAttributesBy;
-                asset.setAttributes(asset.getAttributes().values().stream().filter(attribute -> attribute.hasMeta(finalFilterAttributesBy)).collect(Collectors.toList()));
-                event = (T) new AssetEvent(assetEvent.getCause(), asset, assetEvent.getUpdatedProperties());
+                // Shared by all subscribers with the same access level
+                event = (T) assetEvent.getAttributeFilteredView(filterAttributesBy);
             }
         }
 
@@ -77,9 +77,9 @@ import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
  * #SENSOR_QUEUE_SOURCE_PROTOCOL}.
  * <p>
  * If the user writes a new value into the linked attribute, the protocol translates this value change into a device (or
- * service) action. Write operations on attributes linked to an {@link Agent} can be consumed by the agent's protocol on
- * the {@link #ACTUATOR_TOPIC} where the message body will be an {@link AttributeEvent}. Each message also contains the
- * target protocol name in header {@link #ACTUATOR_TOPIC_TARGET_PROTOCOL}.
+ * service) action. Write operations on attributes linked to an {@link Agent} are passed to the agent's protocol
+ * instance via a call to {@link #processLinkedAttributeWrite}; writes to a protocol instance are made sequentially in
+ * the order they occurred.
  * <p>
  * To simplify protocol development some common protocol behaviour is recommended for generic protocols:
  * <h1>Inbound value conversion (Protocol -> Linked Attribute)</h1>
@@ -154,11 +154,21 @@ import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
 public interface Protocol<T extends Agent<T, ?, ?>> {
 
     Logger LOG = SyslogCategory.getLogger(PROTOCOL, Protocol.class);
+    /**
+     * @deprecated see {@link #ACTUATOR_TOPIC}
+     */
+    @Deprecated
     String ACTUATOR_TOPIC_TARGET_PROTOCOL = "Protocol";
     String SENSOR_QUEUE_SOURCE_PROTOCOL = "Protocol";
 
     // TODO: Some of these options should be configurable depending on expected load etc.
-    // Message topic for communicating from asset/thing to protocol layer (asset attribute changed, trigger actuator)
+    /**
+     * Message topic for communicating from asset/thing to protocol layer (asset attribute changed, trigger actuator).
+     *
+     * @deprecated attribute writes are passed to protocol instances via {@link #processLinkedAttributeWrite} and are
+     * only sent on this topic for implementations that don't override it
+     */
+    @Deprecated
     String ACTUATOR_TOPIC = "seda://ActuatorTopic?multipleConsumers=true&concurrentConsumers=1&waitForTaskToComplete=NEVER&purgeWhenStopping=true&discardIfNoConsumers=true&limitConcurrentConsumers=false&size=1000";
 
     // Message queue for communicating from protocol to asset/thing layer (sensor changed, trigger asset attribute update)
@@ -211,6 +221,21 @@ public interface Protocol<T extends Agent<T, ?, ?>> {
      */
     void unlinkAttribute(String assetId, Attribute<?> attribute) throws Exception;
 
+    /**
+     * Called when the value of an {@link Attribute} linked to this protocol instance is written; calls are made
+     * sequentially from a thread shared with other protocol instances so implementations should not block for long.
+     * Writes to different protocol instances are processed concurrently.
+     * <p>
+     * The default implementation returns false so the write is sent on the {@link #ACTUATOR_TOPIC} with the protocol
+     * instance in header {@link #ACTUATOR_TOPIC_TARGET_PROTOCOL} as before, for implementations that consume writes
+     * from that topic.
+     *
+     * @return true if the write was processed, false if it should be sent on the {@link #ACTUATOR_TOPIC}
+     */
+    default boolean processLinkedAttributeWrite(AttributeEvent event) {
+        return false;
+    }
+
     /**
      * Called before any calls to {@link #linkAttribute} to allow the protocol to perform required tasks with {@link
      * ContainerService}s (e.g. register Camel routes). The protocol instance should validate the settings defined in
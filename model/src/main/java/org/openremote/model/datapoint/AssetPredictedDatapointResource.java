@@ -36,12 +36,14 @@ public interface AssetPredictedDatapointResource {
      * authenticated realm, the superuser can access assets in other (all) realms. A 403 status is returned if a
      * regular user tries to access an asset in a realm different than its authenticated realm, or if the user is
      * restricted and the asset is not linked to the user. A 400 status is returned if the asset attribute does
-     * not have datapoint storage enabled.
+     * not have datapoint storage enabled. The response can be requested in the more compact
+     * {@link ValueDatapoint#COLUMNAR_JSON_MEDIA_TYPE} or {@link ValueDatapoint#BINARY_MEDIA_TYPE} encodings using the
+     * Accept header.
      */
     @POST
     @Path("{assetId}/attribute/{attributeName}")
     @Consumes(APPLICATION_JSON)
-    @Produces(APPLICATION_JSON)
+    @Produces({APPLICATION_JSON, ValueDatapoint.COLUMNAR_JSON_MEDIA_TYPE + ";qs=0.5", ValueDatapoint.BINARY_MEDIA_TYPE + ";qs=0.5"})
     ValueDatapoint<?>[] getPredictedDatapoints(@BeanParam RequestParams requestParams,
                                                @PathParam("assetId") String assetId,
                                                @PathParam("attributeName") String attributeName,
@@ -24,6 +24,26 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class ValueDatapoint<T> {
 
+    /**
+     * Alternative response encoding of a datapoint array as parallel timestamp and value arrays:
+     * <code>{"x": [timestamps...], "y": [values...]}</code>
+     */
+    public static final String COLUMNAR_JSON_MEDIA_TYPE = "application/vnd.openremote.datapoints+json";
+    /**
+     * Alternative binary response encoding of a datapoint array (all integers are big endian):
+     * <ol>
+     * <li>Datapoint count as int32</li>
+     * <li>Value type as a single byte; {@link #BINARY_VALUE_TYPE_NUMBER} or {@link #BINARY_VALUE_TYPE_JSON}</li>
+     * <li>First timestamp as int64 followed by the delta to the previous timestamp of each subsequent datapoint as a
+     * zigzag encoded unsigned LEB128 varint</li>
+     * <li>The values; for numbers a float64 per datapoint (NaN for null), otherwise the length of the UTF-8 JSON
+     * representation as an unsigned LEB128 varint followed by the JSON bytes</li>
+     * </ol>
+     */
+    public static final String BINARY_MEDIA_TYPE = "application/vnd.openremote.datapoints";
+    public static final byte BINARY_VALUE_TYPE_NUMBER = 0;
+    public static final byte BINARY_VALUE_TYPE_JSON = 1;
+
     protected long timestamp;
     protected T value;
 
@@ -28,9 +28,9 @@ public final class AssetDatapointLTTBQuery extends AssetDatapointQuery {
         boolean isNumber = Number.class.isAssignableFrom(attributeType);
         boolean isBoolean = Boolean.class.isAssignableFrom(attributeType);
         if (isNumber) {
-            return "select * from public.unnest((select public.lttb(timestamp::timestamptz, value::double precision, ?) from " + tableName + " where ENTITY_ID = ? and ATTRIBUTE_NAME = ? and TIMESTAMP >= ? and TIMESTAMP <= ?))";
+            return "select * from public.unnest((select public.lttb(timestamp::timestamptz, coalesce(NUMERIC_VALUE, VALUE::double precision), ?) from " + tableName + " where ENTITY_ID = ? and ATTRIBUTE_NAME = ? and TIMESTAMP >= ? and TIMESTAMP <= ?))";
         } else if (isBoolean) {
-            return "select * from public.unnest((select public.lttb(timestamp::timestamptz, (case when VALUE::text::boolean is true then 1 else 0 end), ?) from " + tableName + " where ENTITY_ID = ? and ATTRIBUTE_NAME = ? and TIMESTAMP >= ? and TIMESTAMP <= ?))";
+            return "select * from public.unnest((select public.lttb(timestamp::timestamptz, " + BOOLEAN_VALUE_SQL + ", ?) from " + tableName + " where ENTITY_ID = ? and ATTRIBUTE_NAME = ? and TIMESTAMP >= ? and TIMESTAMP <= ?))";
         } else {
             throw new IllegalStateException("Query of type LTTB requires either a number or a boolean attribute.");
         }
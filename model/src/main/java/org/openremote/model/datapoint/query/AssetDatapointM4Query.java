@@ -0,0 +1,144 @@
+package org.openremote.model.datapoint.query;
+
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.datapoint.ValueDatapoint;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * M4 downsampling; the requested period is divided into {@link #width} buckets (typically one per pixel column of the
+ * chart) and for each bucket the first, last, minimum and maximum datapoints are returned. A line chart drawn from
+ * this result is identical to one drawn from all datapoints, whilst at most 4 datapoints per bucket are transferred.
+ */
+public final class AssetDatapointM4Query extends AssetDatapointQuery {
+
+    public int width;
+
+    public AssetDatapointM4Query() {}
+    public AssetDatapointM4Query(long fromTimestamp, long toTimestamp, int width) {
+        this.fromTimestamp = fromTimestamp;
+        this.toTimestamp = toTimestamp;
+        this.width = width;
+    }
+    public AssetDatapointM4Query(LocalDateTime fromTime, LocalDateTime toTime, int width) {
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+        this.width = width;
+    }
+
+    @Override
+    public String getSQLQuery(String tableName, Class<?> attributeType) throws IllegalStateException {
+        boolean isNumber = Number.class.isAssignableFrom(attributeType);
+        boolean isBoolean = Boolean.class.isAssignableFrom(attributeType);
+        String value;
+        if (isNumber) {
+            value = NUMBER_VALUE_SQL;
+        } else if (isBoolean) {
+            value = BOOLEAN_VALUE_SQL;
+        } else {
+            throw new IllegalStateException("Query of type M4 requires either a number or a boolean attribute.");
+        }
+        if (width <= 0) {
+            throw new IllegalStateException("Query of type M4 requires a width greater than zero.");
+        }
+        return "select x, y from (" +
+            "select x, y, " +
+            "row_number() over (partition by bucket order by x) as first_rank, " +
+            "row_number() over (partition by bucket order by x desc) as last_rank, " +
+            "row_number() over (partition by bucket order by y, x) as min_rank, " +
+            "row_number() over (partition by bucket order by y desc, x) as max_rank " +
+            "from (select timestamp as x, " + value + " as y, public.time_bucket(?::interval, timestamp, ?::timestamp) as bucket from " + tableName + " where ENTITY_ID = ? and ATTRIBUTE_NAME = ? and TIMESTAMP >= ? and TIMESTAMP <= ?) as data" +
+            ") as ranked where first_rank = 1 or last_rank = 1 or min_rank = 1 or max_rank = 1 order by x";
+    }
+
+    @Override
+    public HashMap<Integer, Object> getSQLParameters(AttributeRef attributeRef) {
+        LocalDateTime fromTimestamp = (this.fromTime != null) ? this.fromTime : LocalDateTime.ofInstant(Instant.ofEpochMilli(super.fromTimestamp), ZoneId.systemDefault());
+        LocalDateTime toTimestamp = (this.toTime != null) ? this.toTime : LocalDateTime.ofInstant(Instant.ofEpochMilli(super.toTimestamp), ZoneId.systemDefault());
+        HashMap<Integer, Object> parameters = new HashMap<>();
+        parameters.put(1, getBucketMillis(toMillis(fromTimestamp), toMillis(toTimestamp), width) + " milliseconds");
+        parameters.put(2, fromTimestamp);
+        parameters.put(3, attributeRef.getId());
+        parameters.put(4, attributeRef.getName());
+        parameters.put(5, fromTimestamp);
+        parameters.put(6, toTimestamp);
+        return parameters;
+    }
+
+    /**
+     * Java implementation of the same algorithm as the SQL query, for datapoints that are already in memory; the
+     * datapoints can be in any order and datapoints without a numeric value are ignored.
+     * @return The selected datapoints in chronological order
+     */
+    public static ValueDatapoint<?>[] downsample(ValueDatapoint<?>[] datapoints, long fromTimestamp, long toTimestamp, int width) {
+        if (toTimestamp < fromTimestamp) {
+            return new ValueDatapoint<?>[0];
+        }
+        long bucketMillis = getBucketMillis(fromTimestamp, toTimestamp, width);
+        int buckets = (int) ((toTimestamp - fromTimestamp) / bucketMillis) + 1;
+        int[] first = new int[buckets];
+        int[] last = new int[buckets];
+        int[] min = new int[buckets];
+        int[] max = new int[buckets];
+        Arrays.fill(first, -1);
+        Arrays.fill(last, -1);
+        Arrays.fill(min, -1);
+        Arrays.fill(max, -1);
+
+        for (int i = 0; i < datapoints.length; i++) {
+            ValueDatapoint<?> datapoint = datapoints[i];
+            long timestamp = datapoint.getTimestamp();
+            if (!(datapoint.getValue() instanceof Number) || timestamp < fromTimestamp || timestamp > toTimestamp) {
+                continue;
+            }
+            int bucket = (int) ((timestamp - fromTimestamp) / bucketMillis);
+            if (first[bucket] < 0) {
+                first[bucket] = last[bucket] = min[bucket] = max[bucket] = i;
+                continue;
+            }
+            double value = ((Number) datapoint.getValue()).doubleValue();
+            if (timestamp < datapoints[first[bucket]].getTimestamp()) {
+                first[bucket] = i;
+            }
+            if (timestamp > datapoints[last[bucket]].getTimestamp()) {
+                last[bucket] = i;
+            }
+            if (isBetter(value, timestamp, datapoints[min[bucket]], true)) {
+                min[bucket] = i;
+            }
+            if (isBetter(value, timestamp, datapoints[max[bucket]], false)) {
+                max[bucket] = i;
+            }
+        }
+
+        return Arrays.stream(new int[][] {first, last, min, max})
+            .flatMapToInt(Arrays::stream)
+            .filter(i -> i >= 0)
+            .distinct()
+            .mapToObj(i -> datapoints[i])
+            .sorted(Comparator.comparingLong(ValueDatapoint::getTimestamp))
+            .toArray(ValueDatapoint<?>[]::new);
+    }
+
+    // Ties are broken by the earliest timestamp to match the SQL ordering
+    private static boolean isBetter(double value, long timestamp, ValueDatapoint<?> current, boolean lower) {
+        double currentValue = ((Number) current.getValue()).doubleValue();
+        if (value == currentValue) {
+            return timestamp < current.getTimestamp();
+        }
+        return lower ? value < currentValue : value > currentValue;
+    }
+
+    private static long getBucketMillis(long fromTimestamp, long toTimestamp, int width) {
+        return Math.max(1L, (long) Math.ceil((toTimestamp - fromTimestamp) / (double) Math.max(1, width)));
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -30,7 +30,8 @@ import java.util.HashMap;
 @JsonSubTypes({
         @JsonSubTypes.Type(value = AssetDatapointAllQuery.class, name = "all"),
         @JsonSubTypes.Type(value = AssetDatapointLTTBQuery.class, name = "lttb"),
-        @JsonSubTypes.Type(value = AssetDatapointIntervalQuery.class, name = "interval")
+        @JsonSubTypes.Type(value = AssetDatapointIntervalQuery.class, name = "interval"),
+        @JsonSubTypes.Type(value = AssetDatapointM4Query.class, name = "m4")
 })
 @JsonTypeInfo(
         use = JsonTypeInfo.Id.NAME,
@@ -39,6 +40,16 @@ import java.util.HashMap;
 )
 public abstract class AssetDatapointQuery implements Serializable {
 
+    /**
+     * SQL expression for the value of a number attribute; the typed NUMERIC_VALUE column is used with a fallback to the
+     * jsonb VALUE for rows that were stored before the typed column existed.
+     */
+    public static final String NUMBER_VALUE_SQL = "coalesce(NUMERIC_VALUE, VALUE::text::numeric)";
+    /**
+     * SQL expression for the value of a boolean attribute as 1 or 0, see {@link #NUMBER_VALUE_SQL}.
+     */
+    public static final String BOOLEAN_VALUE_SQL = "coalesce(NUMERIC_VALUE, case when VALUE::text::boolean is true then 1 else 0 end)";
+
     public long fromTimestamp;
     public long toTimestamp;
     public LocalDateTime fromTime;
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2023, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.event;
+
+import java.util.Map;
+
+/**
+ * Snapshot of the state and counters of the client event bus; the counters are totals since startup.
+ */
+public class ClientEventDiagnostics {
+
+    protected Map<String, Integer> sessions;
+    protected Map<String, Integer> subscriptions;
+    protected Map<String, Integer> queueDepths;
+    protected long eventsPublished;
+    protected long eventsRejected;
+    protected long eventsFiltered;
+    protected long eventsRateLimited;
+    protected long eventsDelivered;
+    protected long eventsDropped;
+
+    protected ClientEventDiagnostics() {
+    }
+
+    public ClientEventDiagnostics(Map<String, Integer> sessions, Map<String, Integer> subscriptions, Map<String, Integer> queueDepths, long eventsPublished, long eventsRejected, long eventsFiltered, long eventsRateLimited, long eventsDelivered, long eventsDropped) {
+        this.sessions = sessions;
+        this.subscriptions = subscriptions;
+        this.queueDepths = queueDepths;
+        this.eventsPublished = eventsPublished;
+        this.eventsRejected = eventsRejected;
+        this.eventsFiltered = eventsFiltered;
+        this.eventsRateLimited = eventsRateLimited;
+        this.eventsDelivered = eventsDelivered;
+        this.eventsDropped = eventsDropped;
+    }
+
+    /**
+     * @return Number of sessions by connection type.
+     */
+    public Map<String, Integer> getSessions() {
+        return sessions;
+    }
+
+    /**
+     * @return Number of subscriptions by event type.
+     */
+    public Map<String, Integer> getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * @return Number of messages waiting in each stage of the event bus.
+     */
+    public Map<String, Integer> getQueueDepths() {
+        return queueDepths;
+    }
+
+    public long getEventsPublished() {
+        return eventsPublished;
+    }
+
+    public long getEventsRejected() {
+        return eventsRejected;
+    }
+
+    public long getEventsFiltered() {
+        return eventsFiltered;
+    }
+
+    public long getEventsRateLimited() {
+        return eventsRateLimited;
+    }
+
+    public long getEventsDelivered() {
+        return eventsDelivered;
+    }
+
+    public long getEventsDropped() {
+        return eventsDropped;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "sessions=" + sessions +
+            ", subscriptions=" + subscriptions +
+            ", queueDepths=" + queueDepths +
+            ", eventsPublished=" + eventsPublished +
+            ", eventsRejected=" + eventsRejected +
+            ", eventsFiltered=" + eventsFiltered +
+            ", eventsRateLimited=" + eventsRateLimited +
+            ", eventsDelivered=" + eventsDelivered +
+            ", eventsDropped=" + eventsDropped +
+            '}';
+    }
+}
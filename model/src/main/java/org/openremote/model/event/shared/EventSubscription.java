@@ -31,15 +31,33 @@ import java.util.function.Consumer;
  * <p>
  * A subscription can optionally contain a {@link #subscriptionId} which allows a client
  * to have multiple subscriptions for the same event type.
+ * <p>
+ * A subscription can optionally contain a {@link #rateLimitInterval} (milliseconds) to limit how often events are
+ * delivered; the limit applies per attribute for {@link org.openremote.model.attribute.AttributeEvent}s, per asset for
+ * other {@link AssetInfo} events and per subscription for any other events. The {@link #rateLimitMode} determines which
+ * of the events within an interval is delivered.
  */
 public class EventSubscription<E extends SharedEvent> {
 
     public static final String SUBSCRIBE_MESSAGE_PREFIX = "SUBSCRIBE:";
     public static final String SUBSCRIBED_MESSAGE_PREFIX = "SUBSCRIBED:";
 
+    public enum RateLimitMode {
+        /**
+         * Deliver the latest event of each interval at the end of the interval (default)
+         */
+        LATEST,
+        /**
+         * Deliver the first event of each interval and discard the others
+         */
+        FIRST
+    }
+
     protected String eventType;
     protected EventFilter<E> filter;
     protected String subscriptionId;
+    protected Long rateLimitInterval;
+    protected RateLimitMode rateLimitMode;
     @JsonIgnore
     protected boolean subscribed;
 
@@ -124,6 +142,27 @@ public class EventSubscription<E extends SharedEvent> {
         return subscriptionId;
     }
 
+    public Long getRateLimitInterval() {
+        return rateLimitInterval;
+    }
+
+    public void setRateLimitInterval(Long rateLimitInterval) {
+        this.rateLimitInterval = rateLimitInterval;
+    }
+
+    public RateLimitMode getRateLimitMode() {
+        return rateLimitMode != null ? rateLimitMode : RateLimitMode.LATEST;
+    }
+
+    public void setRateLimitMode(RateLimitMode rateLimitMode) {
+        this.rateLimitMode = rateLimitMode;
+    }
+
+    @JsonIgnore
+    public boolean isRateLimited() {
+        return rateLimitInterval != null && rateLimitInterval > 0;
+    }
+
     public void setSubscribed(boolean subscribed) {
         this.subscribed = subscribed;
     }
@@ -138,6 +177,8 @@ public class EventSubscription<E extends SharedEvent> {
             "eventType='" + eventType + '\'' +
             ", filter=" + filter +
             ", subscriptionId='" + subscriptionId + '\'' +
+            ", rateLimitInterval=" + rateLimitInterval +
+            ", rateLimitMode=" + rateLimitMode +
             '}';
     }
 }
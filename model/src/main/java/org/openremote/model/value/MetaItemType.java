@@ -92,6 +92,38 @@ public final class MetaItemType {
      */
     public static final MetaItemDescriptor<Integer> DATA_POINTS_MAX_AGE_DAYS = new MetaItemDescriptor<>("dataPointsMaxAgeDays", ValueType.POSITIVE_INTEGER);
 
+    /**
+     * How many of the most recent data points of a number or boolean attribute to keep in memory, so queries for
+     * recent history can be answered without going to the time series database; overrides the global default.
+     */
+    public static final MetaItemDescriptor<Integer> DATA_POINTS_CACHE_SIZE = new MetaItemDescriptor<>("dataPointsCacheSize", ValueType.POSITIVE_INTEGER);
+
+    /**
+     * Only store a number value when it differs from the last stored value by more than this absolute amount; when
+     * combined with {@link #DATA_POINTS_DEADBAND_PERCENTAGE} the larger of the two applies.
+     */
+    public static final MetaItemDescriptor<Double> DATA_POINTS_DEADBAND = new MetaItemDescriptor<>("dataPointsDeadband", ValueType.POSITIVE_NUMBER);
+
+    /**
+     * Only store a number value when it differs from the last stored value by more than this percentage of the last
+     * stored value.
+     */
+    public static final MetaItemDescriptor<Double> DATA_POINTS_DEADBAND_PERCENTAGE = new MetaItemDescriptor<>("dataPointsDeadbandPercentage", ValueType.POSITIVE_NUMBER);
+
+    /**
+     * Minimum time between stored values, for example "PT10S"; values received sooner after the last stored value
+     * are not stored.
+     */
+    @Pattern(regexp = Constants.ISO8601_DURATION_REGEXP)
+    public static final MetaItemDescriptor<String> DATA_POINTS_MIN_INTERVAL = new MetaItemDescriptor<>("dataPointsMinInterval", ValueType.TEXT);
+
+    /**
+     * Maximum time between stored values, for example "PT15M"; a value received after this time has passed since the
+     * last stored value is always stored even if it is within the deadband.
+     */
+    @Pattern(regexp = Constants.ISO8601_DURATION_REGEXP)
+    public static final MetaItemDescriptor<String> DATA_POINTS_MAX_INTERVAL = new MetaItemDescriptor<>("dataPointsMaxInterval", ValueType.TEXT);
+
     /**
      * Could possibly have predicted data points
      */
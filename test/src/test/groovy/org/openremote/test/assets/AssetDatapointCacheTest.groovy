@@ -0,0 +1,55 @@
+package org.openremote.test.assets
+
+import org.openremote.manager.datapoint.AssetDatapointCache
+import org.openremote.model.attribute.Attribute
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.MetaItem
+import org.openremote.model.datapoint.query.AssetDatapointAllQuery
+import org.openremote.model.datapoint.query.AssetDatapointLTTBQuery
+import org.openremote.model.value.MetaItemType
+import org.openremote.model.value.ValueType
+import spock.lang.Specification
+
+class AssetDatapointCacheTest extends Specification {
+
+    def "Recent datapoints are served from memory only when the query range is covered"() {
+
+        given: "a cache with no default size"
+        def cache = new AssetDatapointCache(0, null)
+        def attribute = new Attribute<>("power", ValueType.NUMBER, null).addMeta(new MetaItem<>(MetaItemType.DATA_POINTS_CACHE_SIZE, 3))
+        def textAttribute = new Attribute<>("status", ValueType.TEXT, null).addMeta(new MetaItem<>(MetaItemType.DATA_POINTS_CACHE_SIZE, 3))
+        def attributeRef = new AttributeRef("asset1", "power")
+
+        when: "the attributes are configured and datapoints are stored"
+        cache.configure("asset1", attribute)
+        cache.configure("asset1", textAttribute)
+        cache.onDatapointStored("asset1", "power", 1000, 1d)
+        cache.onDatapointStored("asset1", "power", 2000, 2d)
+        cache.onDatapointStored("asset1", "power", 3000, 3d)
+        cache.onDatapointStored("asset1", "power", 4000, 4d)
+        cache.onDatapointStored("asset1", "status", 4000, "on")
+
+        then: "a query covered by the buffer should return the newest datapoints in descending order"
+        def datapoints = cache.query(attributeRef, new AssetDatapointAllQuery(2000, 5000))
+        datapoints.length == 3
+        datapoints[0].timestamp == 4000
+        datapoints[0].value == 4d
+        datapoints[2].timestamp == 2000
+
+        and: "a query starting before the oldest buffered datapoint should not be served"
+        cache.query(attributeRef, new AssetDatapointAllQuery(1000, 5000)) == null
+
+        and: "other query types should not be served"
+        cache.query(attributeRef, new AssetDatapointLTTBQuery(2000, 5000, 2)) == null
+
+        and: "non numeric attributes should not be cached"
+        cache.query(new AttributeRef("asset1", "status"), new AssetDatapointAllQuery(2000, 5000)) == null
+
+        when: "an out of order datapoint is stored within the buffered range"
+        cache.onDatapointStored("asset1", "power", 2500, 9d)
+
+        then: "the buffer should start over"
+        cache.query(attributeRef, new AssetDatapointAllQuery(2000, 5000)) == null
+        cache.query(attributeRef, new AssetDatapointAllQuery(2500, 5000)).length == 1
+    }
+}
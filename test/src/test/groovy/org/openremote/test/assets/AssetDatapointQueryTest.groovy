@@ -10,8 +10,10 @@ import org.openremote.model.attribute.Attribute
 import org.openremote.model.attribute.AttributeRef
 import org.openremote.model.attribute.MetaItem
 import org.openremote.model.datapoint.AssetDatapoint
+import org.openremote.model.datapoint.query.AssetDatapointAllQuery
 import org.openremote.model.datapoint.query.AssetDatapointIntervalQuery
 import org.openremote.model.datapoint.query.AssetDatapointLTTBQuery
+import org.openremote.model.datapoint.query.AssetDatapointM4Query
 import org.openremote.model.geo.GeoJSONPoint
 import org.openremote.model.query.AssetQuery
 import org.openremote.model.query.filter.RealmPredicate
@@ -24,8 +26,11 @@ import spock.lang.Specification
 import spock.util.concurrent.PollingConditions
 
 import java.time.LocalDateTime
+import java.time.ZoneId
+import java.time.temporal.ChronoUnit
 
 import static java.util.concurrent.TimeUnit.HOURS
+import static org.openremote.manager.datapoint.AssetDatapointService.OR_DATA_POINTS_MAX_AGE_DAYS_DEFAULT
 
 class AssetDatapointQueryTest extends Specification implements ManagerContainerTrait {
 
@@ -308,4 +313,127 @@ class AssetDatapointQueryTest extends Specification implements ManagerContainerT
         }}
 
     }
+
+    def "M4 query should return the first, last, min and max datapoint of each bucket"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.2)
+
+        and: "the container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+
+        when: "requesting the first light asset in City realm"
+        def asset = assetStorageService.find(
+                new AssetQuery()
+                        .types(LightAsset.class)
+                        .realm(new RealmPredicate(keycloakTestSetup.realmCity.name))
+                        .names("Light 1")
+        )
+        def attributeName = "brightness"
+        def dateTime = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS)
+        def fromMillis = dateTime.minusMinutes(60).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+        def toMillis = dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+        def bucketMillis = (toMillis - fromMillis).intdiv(2)
+        def minutesAgo = { long minutes -> dateTime.minusMinutes(minutes).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() }
+
+        and: "datapoints are added to the asset with a spike in the first half of the period"
+        assetDatapointService.upsertValues(asset.getId(), attributeName,
+                [
+                        new Pair<>(10d, dateTime.minusMinutes(55)),
+                        new Pair<>(90d, dateTime.minusMinutes(50)),
+                        new Pair<>(20d, dateTime.minusMinutes(45)),
+                        new Pair<>(5d, dateTime.minusMinutes(40)),
+                        new Pair<>(30d, dateTime.minusMinutes(35)),
+                        new Pair<>(40d, dateTime.minusMinutes(20)),
+                        new Pair<>(45d, dateTime.minusMinutes(10)),
+                ]
+        )
+
+        then: "datapoints should exist"
+        conditions.eventually {
+            assert assetDatapointService.getDatapoints(new AttributeRef(asset.getId(), attributeName)).size() == 7
+        }
+
+        when: "requesting the period using M4 with two buckets"
+        def m4Datapoints = assetDatapointService.queryDatapoints(
+                asset.getId(),
+                asset.getAttribute(attributeName).orElseThrow({ new RuntimeException("Missing attribute") }),
+                new AssetDatapointM4Query(dateTime.minusMinutes(60), dateTime, 2)
+        )
+
+        then: "the first bucket should return first, max, min and last and the second bucket first and last"
+        assert bucketMillis == 30*60000
+        assert m4Datapoints.size() == 6
+        assert m4Datapoints.collect { it.value } == [10d, 90d, 5d, 30d, 40d, 45d]
+        assert m4Datapoints.collect { it.timestamp } == [55, 50, 40, 35, 20, 10].collect { minutesAgo(it) }
+
+        and: "each point should fall in the expected bucket"
+        def bucketIndexes = m4Datapoints.collect { (it.timestamp - fromMillis).intdiv(bucketMillis) }
+        assert bucketIndexes == [0, 0, 0, 0, 1, 1]
+        assert bucketIndexes.count { it == 0 } == 4
+        assert bucketIndexes.count { it == 1 } == 2
+
+        and: "the Java implementation should give the same result"
+        def allDatapoints = assetDatapointService.queryDatapoints(
+                asset.getId(),
+                asset.getAttribute(attributeName).orElseThrow({ new RuntimeException("Missing attribute") }),
+                new AssetDatapointAllQuery(dateTime.minusMinutes(60), dateTime)
+        )
+        assert allDatapoints.size() == 7
+        def javaDatapoints = AssetDatapointM4Query.downsample(allDatapoints, fromMillis, toMillis, 2)
+        assert javaDatapoints.collect { it.value } == m4Datapoints.collect { it.value }
+        assert javaDatapoints.collect { it.timestamp } == m4Datapoints.collect { it.timestamp }
+    }
+
+    def "Datapoint period should be maintained when storing and purging datapoints"() {
+
+        given: "the container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetDatapointService = container.getService(AssetDatapointService.class)
+
+        when: "requesting the first light asset in City realm"
+        def asset = assetStorageService.find(
+                new AssetQuery()
+                        .types(LightAsset.class)
+                        .realm(new RealmPredicate(keycloakTestSetup.realmCity.name))
+                        .names("Light 1")
+        )
+        def attributeName = "brightness"
+        def attributeRef = new AttributeRef(asset.getId(), attributeName)
+        def dateTime = LocalDateTime.now()
+
+        and: "datapoints are added including one that is older than the max age"
+        assetDatapointService.upsertValues(asset.getId(), attributeName,
+                [
+                        new Pair<>(10d, dateTime.minusDays(OR_DATA_POINTS_MAX_AGE_DAYS_DEFAULT + 5)),
+                        new Pair<>(20d, dateTime.minusMinutes(20)),
+                        new Pair<>(30d, dateTime.minusMinutes(10)),
+                ]
+        )
+        assetDatapointService.upsertValue(asset.getId(), attributeName, 40d, dateTime.minusMinutes(5))
+
+        and: "an existing datapoint is replaced"
+        assetDatapointService.upsertValue(asset.getId(), attributeName, 25d, dateTime.minusMinutes(20))
+
+        then: "the period, count and latest value should reflect the stored datapoints"
+        def period = assetDatapointService.getDatapointPeriod(asset.getId(), attributeName)
+        assert period.oldest == dateTime.minusDays(OR_DATA_POINTS_MAX_AGE_DAYS_DEFAULT + 5).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+        assert period.latest == dateTime.minusMinutes(5).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+        assert assetDatapointService.getDatapointsCount(attributeRef) == 4
+        assert assetDatapointService.getLatestDatapoint(asset.getId(), attributeName).value == 40d
+
+        when: "the datapoints are purged"
+        assetDatapointService.purgeDataPoints()
+
+        then: "the old datapoint should no longer be included"
+        def purgedPeriod = assetDatapointService.getDatapointPeriod(asset.getId(), attributeName)
+        assert purgedPeriod.oldest == dateTime.minusMinutes(20).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+        assert assetDatapointService.getDatapointsCount(attributeRef) == 3
+        assert assetDatapointService.getDatapoints(attributeRef).size() == 3
+    }
 }
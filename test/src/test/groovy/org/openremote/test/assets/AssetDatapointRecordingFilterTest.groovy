@@ -0,0 +1,120 @@
+package org.openremote.test.assets
+
+import org.openremote.manager.datapoint.AssetDatapointRecordingFilter
+import org.openremote.model.attribute.Attribute
+import org.openremote.model.attribute.MetaItem
+import org.openremote.model.value.MetaItemType
+import org.openremote.model.value.ValueType
+import spock.lang.Specification
+
+class AssetDatapointRecordingFilterTest extends Specification {
+
+    def "Values should only be stored when outside the deadband and recording intervals"() {
+
+        given: "an attribute with a deadband, minimum and maximum interval"
+        def filter = new AssetDatapointRecordingFilter(null)
+        def attribute = new Attribute<>("temperature", ValueType.NUMBER, null).addMeta(
+            new MetaItem<>(MetaItemType.DATA_POINTS_DEADBAND, 0.5d),
+            new MetaItem<>(MetaItemType.DATA_POINTS_MIN_INTERVAL, "PT10S"),
+            new MetaItem<>(MetaItemType.DATA_POINTS_MAX_INTERVAL, "PT5M")
+        )
+        def shouldStore = { double value, long timestamp ->
+            attribute.setValue(value)
+            def store = filter.shouldStore("asset1", attribute, timestamp)
+            if (store) {
+                filter.onStored("asset1", attribute, timestamp)
+            }
+            store
+        }
+
+        expect: "the first value to be stored"
+        shouldStore(20d, 0)
+
+        and: "values within the deadband to be suppressed"
+        !shouldStore(20.3d, 60000)
+        !shouldStore(19.6d, 120000)
+
+        and: "values outside the deadband to be stored"
+        shouldStore(21d, 180000)
+
+        and: "values sooner than the minimum interval to be suppressed"
+        !shouldStore(25d, 185000)
+        shouldStore(25d, 190000)
+
+        and: "values after the maximum interval to be stored even if within the deadband"
+        !shouldStore(25.1d, 480000)
+        shouldStore(25.1d, 490000)
+
+        and: "older values to always be stored"
+        shouldStore(25.1d, 100000)
+
+        when: "the recording meta items are removed"
+        attribute.getMeta().clear()
+
+        then: "every value should be stored"
+        shouldStore(25.1d, 490001)
+        shouldStore(25.1d, 490002)
+    }
+
+    def "A percentage deadband should be relative to the last stored value"() {
+
+        given: "an attribute with a percentage deadband"
+        def filter = new AssetDatapointRecordingFilter(null)
+        def attribute = new Attribute<>("power", ValueType.NUMBER, null).addMeta(new MetaItem<>(MetaItemType.DATA_POINTS_DEADBAND_PERCENTAGE, 5d))
+        def shouldStore = { double value, long timestamp ->
+            attribute.setValue(value)
+            def store = filter.shouldStore("asset1", attribute, timestamp)
+            if (store) {
+                filter.onStored("asset1", attribute, timestamp)
+            }
+            store
+        }
+
+        expect: "changes of up to 5% of the last stored value to be suppressed"
+        shouldStore(1000d, 0)
+        !shouldStore(1040d, 1000)
+        shouldStore(1060d, 2000)
+        !shouldStore(1010d, 3000)
+    }
+
+    def "Changes of non-number values should always be stored"() {
+
+        given: "a text attribute with a minimum interval"
+        def filter = new AssetDatapointRecordingFilter(null)
+        def attribute = new Attribute<>("state", ValueType.TEXT, null).addMeta(new MetaItem<>(MetaItemType.DATA_POINTS_MIN_INTERVAL, "PT10S"))
+        def shouldStore = { String value, long timestamp ->
+            attribute.setValue(value)
+            def store = filter.shouldStore("asset1", attribute, timestamp)
+            if (store) {
+                filter.onStored("asset1", attribute, timestamp)
+            }
+            store
+        }
+
+        expect: "changes sooner than the minimum interval to be stored"
+        shouldStore("idle", 0)
+        shouldStore("running", 1000)
+        shouldStore("idle", 2000)
+
+        and: "repeats of the same value sooner than the minimum interval to be suppressed"
+        !shouldStore("idle", 3000)
+        shouldStore("idle", 12000)
+    }
+
+    def "Values should only become the last stored value once they have been stored"() {
+
+        given: "an attribute with a minimum interval"
+        def filter = new AssetDatapointRecordingFilter(null)
+        def attribute = new Attribute<>("temperature", ValueType.NUMBER, 20d).addMeta(new MetaItem<>(MetaItemType.DATA_POINTS_MIN_INTERVAL, "PT10S"))
+
+        expect: "a value that failed to be stored not to suppress the next value"
+        filter.shouldStore("asset1", attribute, 0)
+        filter.shouldStore("asset1", attribute, 1000)
+
+        when: "the value is stored"
+        filter.onStored("asset1", attribute, 1000)
+
+        then: "values sooner than the minimum interval should be suppressed"
+        !filter.shouldStore("asset1", attribute, 2000)
+    }
+}
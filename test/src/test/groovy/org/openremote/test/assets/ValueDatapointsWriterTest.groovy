@@ -0,0 +1,56 @@
+package org.openremote.test.assets
+
+import org.openremote.container.web.ValueDatapointsWriter
+import org.openremote.model.datapoint.ValueDatapoint
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+
+class ValueDatapointsWriterTest extends Specification {
+
+    def "Datapoints should be encoded as parallel timestamp and value arrays"() {
+
+        given: "some datapoints"
+        def datapoints = [
+            new ValueDatapoint<>(1000000L, 1.5d),
+            new ValueDatapoint<>(1000100L, null),
+            new ValueDatapoint<>(1000050L, 3d)
+        ] as ValueDatapoint<?>[]
+
+        when: "the datapoints are written as columnar JSON"
+        def out = new ByteArrayOutputStream()
+        ValueDatapointsWriter.writeColumnarJson(datapoints, out)
+
+        then: "the timestamps and values should be in separate arrays"
+        out.toString("UTF-8") == '{"x":[1000000,1000100,1000050],"y":[1.5,null,3.0]}'
+
+        when: "the datapoints are written in the binary encoding"
+        out = new ByteArrayOutputStream()
+        ValueDatapointsWriter.writeBinary(datapoints, out)
+        def buffer = ByteBuffer.wrap(out.toByteArray())
+
+        then: "the header, delta encoded timestamps and numeric values should be written"
+        buffer.getInt() == 3
+        buffer.get() == ValueDatapoint.BINARY_VALUE_TYPE_NUMBER
+        buffer.getLong() == 1000000L
+        buffer.get() == (byte)0xC8 // +100 zigzag encoded = 200
+        buffer.get() == (byte)0x01
+        buffer.get() == (byte)0x63 // -50 zigzag encoded = 99
+        buffer.getDouble() == 1.5d
+        Double.isNaN(buffer.getDouble())
+        buffer.getDouble() == 3d
+        !buffer.hasRemaining()
+
+        when: "non numeric datapoints are written in the binary encoding"
+        out = new ByteArrayOutputStream()
+        ValueDatapointsWriter.writeBinary([new ValueDatapoint<>(1000L, "on")] as ValueDatapoint<?>[], out)
+        buffer = ByteBuffer.wrap(out.toByteArray())
+
+        then: "the values should be length prefixed JSON"
+        buffer.getInt() == 1
+        buffer.get() == ValueDatapoint.BINARY_VALUE_TYPE_JSON
+        buffer.getLong() == 1000L
+        buffer.get() == 4
+        new String(out.toByteArray(), buffer.position(), 4, "UTF-8") == '"on"'
+    }
+}
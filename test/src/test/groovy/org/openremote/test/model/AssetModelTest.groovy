@@ -91,6 +91,31 @@ class AssetModelTest extends Specification implements ManagerContainerTrait {
         Objects.equals(attributes1, attributes2)
     }
 
+    def "Check asset event attribute filtered views"() {
+        given: "an asset event for an asset with a public attribute"
+        def asset = new ThingAsset("Test").setId("0jSTjWZq9YmmQ6Hz1Myscd").setRealm(MASTER_REALM).addOrReplaceAttributes(
+            new Attribute<>("publicAttribute", ValueType.NUMBER, 1d).addMeta(new MetaItem<>(MetaItemType.ACCESS_PUBLIC_READ)),
+            new Attribute<>("privateAttribute", ValueType.NUMBER, 2d)
+        )
+        def attributeCount = asset.attributes.size()
+        def assetEvent = new AssetEvent(AssetEvent.Cause.UPDATE, asset, ["attributes"] as String[])
+
+        when: "the public view of the event is requested twice"
+        def view1 = assetEvent.getAttributeFilteredView(MetaItemType.ACCESS_PUBLIC_READ)
+        def view2 = assetEvent.getAttributeFilteredView(MetaItemType.ACCESS_PUBLIC_READ)
+
+        then: "the same view should be returned containing only the public attribute"
+        view1.is(view2)
+        view1.asset instanceof ThingAsset
+        view1.asset.id == asset.id
+        view1.asset.realm == MASTER_REALM
+        view1.asset.attributes.keySet() == ["publicAttribute"] as Set
+        view1.asset.attributes.get("publicAttribute").get().is(asset.attributes.get("publicAttribute").get())
+
+        and: "the original asset should be unchanged"
+        asset.attributes.size() == attributeCount
+    }
+
     def "Serialise/Deserialise asset and attribute events and test validation"() {
 
         given: "an authenticated admin user"
@@ -11,20 +11,24 @@ import org.openremote.agent.protocol.mqtt.MQTT_IOClient
 import org.openremote.agent.protocol.simulator.SimulatorProtocol
 import org.openremote.container.util.UniqueIdentifierGenerator
 import org.openremote.manager.agent.AgentService
+import org.openremote.manager.asset.AssetProcessingService
 import org.openremote.manager.asset.AssetStorageService
 import org.openremote.manager.event.ClientEventService
 import org.openremote.manager.mqtt.DefaultMQTTHandler
 import org.openremote.manager.mqtt.MQTTHandler
 import org.openremote.manager.mqtt.MQTTBrokerService
 import org.openremote.manager.setup.SetupService
+import org.openremote.model.asset.Asset
 import org.openremote.model.asset.AssetEvent
 import org.openremote.model.asset.UserAssetLink
 import org.openremote.model.asset.agent.ConnectionStatus
 import org.openremote.model.asset.impl.ThingAsset
 import org.openremote.model.attribute.Attribute
 import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.attribute.AttributeState
 import org.openremote.model.auth.UsernamePassword
 import org.openremote.model.event.shared.SharedEvent
+import org.openremote.model.geo.GeoJSONPoint
 import org.openremote.model.util.ValueUtil
 import org.openremote.test.ManagerContainerTrait
 import org.openremote.setup.integration.KeycloakTestSetup
@@ -32,6 +36,7 @@ import org.openremote.setup.integration.ManagerTestSetup
 import spock.lang.Specification
 import spock.util.concurrent.PollingConditions
 
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.function.Consumer
 
 import static org.openremote.container.util.MapAccess.getInteger
@@ -56,7 +61,9 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
         def mqttBrokerService = container.getService(MQTTBrokerService.class)
         def assetStorageService = container.getService(AssetStorageService.class)
         def clientEventService = container.getService(ClientEventService.class)
+        def defaultMQTTHandler = mqttBrokerService.customHandlers.find {it instanceof DefaultMQTTHandler} as DefaultMQTTHandler
         def agentService = container.getService(AgentService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
         def mqttClientId = UniqueIdentifierGenerator.generateId()
         def username = keycloakTestSetup.realmBuilding.name + ":" + keycloakTestSetup.serviceUser.username // realm and OAuth client id
         def password = keycloakTestSetup.serviceUser.secret
@@ -119,7 +126,7 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
         conditions.eventually {
             assert client.topicConsumerMap.get(topic) == null // Consumer added and removed on failure
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id)[0]
-            assert !clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
+            assert !defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
         }
 
         when: "a mqtt client subscribes with clientId missing"
@@ -130,7 +137,7 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
         conditions.eventually {
             assert client.topicConsumerMap.get(topic) == null // Consumer added and removed on failure
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id)[0]
-            assert !clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
+            assert !defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
         }
 
         when: "a mqtt client subscribes with different clientId"
@@ -143,7 +150,7 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
             assert client.topicConsumerMap.get(topic) == null // Consumer added and removed on failure
             assert mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id).size() == 1
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id)[0]
-            assert !clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
+            assert !defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
         }
 
         when: "a mqtt client subscribes to all attributes of an asset"
@@ -160,8 +167,8 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
             assert client.topicConsumerMap.get(topic).size() == 1
             assert mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id).size() == 1
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id)[0]
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.get(getConnectionIDString(connection)).size() == 1
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.get(getConnectionIDString(connection)).topicSubscriptionMap.size() == 1
         }
 
         when: "An attribute event occurs for a subscribed attribute"
@@ -240,6 +247,26 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
         }
         receivedEvents.clear()
 
+        when: "a mqtt client publishes several attribute values in one message including one for an asset that doesn't exist"
+        topic = "${keycloakTestSetup.realmBuilding.name}/$mqttClientId/$DefaultMQTTHandler.ATTRIBUTE_VALUES_WRITE_TOPIC".toString()
+        payload = ValueUtil.asJSON([
+            new AttributeState(managerTestSetup.apartment1HallwayId, "motionSensor", 80),
+            new AttributeState(UniqueIdentifierGenerator.generateId(), "motionSensor", 90),
+            new AttributeState(managerTestSetup.apartment1HallwayId, "lights", false)
+        ]).orElse(null)
+        client.sendMessage(new MQTTMessage<String>(topic, payload))
+
+        then: "the values of the existing attributes should be updated and the client should have received the events"
+        conditions.eventually {
+            assert assetStorageService.find(managerTestSetup.apartment1HallwayId).getAttribute("motionSensor").get().value.orElse(0) == 80d
+            assert !assetStorageService.find(managerTestSetup.apartment1HallwayId).getAttribute("lights").get().value.orElse(true)
+            assert receivedEvents.size() == 2
+            assert receivedEvents.every { it instanceof AttributeEvent && (it as AttributeEvent).assetId == managerTestSetup.apartment1HallwayId }
+            assert (receivedEvents.find { (it as AttributeEvent).attributeName == "motionSensor" } as AttributeEvent).value.orElse(0) == 80d
+            assert (receivedEvents.find { (it as AttributeEvent).attributeName == "lights" } as AttributeEvent).value.orElse(true) == false
+        }
+        receivedEvents.clear()
+
         when: "a mqtt client unsubscribes from an asset"
         topic = "${keycloakTestSetup.realmBuilding.name}/$mqttClientId/$DefaultMQTTHandler.ATTRIBUTE_TOPIC/$MQTTHandler.TOKEN_SINGLE_LEVEL_WILDCARD/$managerTestSetup.apartment1HallwayId".toString()
         client.removeMessageConsumer(topic, eventConsumer)
@@ -248,7 +275,7 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
         conditions.eventually {
             assert client.topicConsumerMap.get(topic) == null
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id)[0]
-            assert !clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
+            assert !defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
         }
 
         when: "another asset attribute changed without any subscriptions"
@@ -269,8 +296,8 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
             assert client.topicConsumerMap.get(topic) != null
             assert client.topicConsumerMap.get(topic).size() == 1
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id)[0]
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.get(getConnectionIDString(connection)).size() == 1
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.get(getConnectionIDString(connection)).topicSubscriptionMap.size() == 1
         }
 
         when: "that attribute changes"
@@ -303,7 +330,7 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
         conditions.eventually {
             assert client.topicConsumerMap.get(topic) == null
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id)[0]
-            assert !clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
+            assert !defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
         }
 
         when: "a mqtt client subscribes to attributes for descendants of an asset"
@@ -315,8 +342,8 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
             assert client.topicConsumerMap.get(topic) != null
             assert client.topicConsumerMap.get(topic).size() == 1
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id)[0]
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.get(getConnectionIDString(connection)).size() == 1
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.get(getConnectionIDString(connection)).topicSubscriptionMap.size() == 1
         }
 
         when: "a child asset of the subscription attribute event occurs"
@@ -345,8 +372,8 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
             assert client.topicConsumerMap.get(topic) != null
             assert client.topicConsumerMap.get(topic).size() == 1
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id)[0]
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.get(getConnectionIDString(connection)).size() == 2
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.get(getConnectionIDString(connection)).topicSubscriptionMap.size() == 2
         }
 
         when: "a subscribed attribute changes"
@@ -388,8 +415,8 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
             assert client.topicConsumerMap.get(topic) == null
             assert client.topicConsumerMap.size() == 1
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id)[0]
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.get(getConnectionIDString(connection)).size() == 1
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.get(getConnectionIDString(connection)).topicSubscriptionMap.size() == 1
         }
 
         when: "a client disconnects"
@@ -418,8 +445,8 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
         then: "A subscription should exist"
         conditions.eventually {
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id)[0]
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.get(getConnectionIDString(connection)).size() == 1
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.get(getConnectionIDString(connection)).topicSubscriptionMap.size() == 1
         }
 
         when: "an asset is updated with a new attribute"
@@ -445,8 +472,8 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
         conditions.eventually {
             assert client.topicConsumerMap.get(topic) != null
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id)[0]
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.get(getConnectionIDString(connection)).size() == 2
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.get(getConnectionIDString(connection)).topicSubscriptionMap.size() == 2
         }
 
         when: "an asset is added as a descendant to the subscribed asset"
@@ -471,8 +498,8 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
         conditions.eventually {
             assert client.topicConsumerMap.get(topic) == null
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser.id)[0]
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.get(getConnectionIDString(connection)).size() == 1
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.get(getConnectionIDString(connection)).topicSubscriptionMap.size() == 1
         }
 
         when: "the descendant asset is modified"
@@ -600,7 +627,7 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
         conditions.eventually {
             assert newClient.topicConsumerMap.get(topic) == null // Consumer added and removed on failure
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser2.id)[0]
-            assert !clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
+            assert !defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
         }
 
         when: "a restricted mqtt client subscribes to a linked asset"
@@ -611,8 +638,8 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
         conditions.eventually {
             assert newClient.topicConsumerMap.get(topic) != null
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser2.id)[0]
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.get(getConnectionIDString(connection)).size() == 1
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.get(getConnectionIDString(connection)).topicSubscriptionMap.size() == 1
         }
 
         when: "a user asset link is added for a connected restricted user"
@@ -655,21 +682,54 @@ class MqttBrokerTest extends Specification implements ManagerContainerTrait {
         conditions.eventually {
             assert newClient.topicConsumerMap.get(topic) == null // Consumer added and removed on failure
             def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser2.id)[0]
-            assert !clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
-        }
-
-        // TODO: Further MQTT tests
-//        when: "an attribute event occurs on an attribute that the restricted user can access"
-//
-//        then: "they should receive the event"
-//
-//        when: "an attribute event occurs on an attribute that the restricted user cannot access"
-//
-//        then: "they should not receive the event"
-//
-//        when: "an asset event occurs on an asset that the restricted user can access"
-//
-//        then: "they should receive the event but it should only contain restricted attributes"
+            assert !defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
+        }
+
+        when: "the restricted mqtt client subscribes to all attributes of all assets"
+        List<AttributeEvent> restrictedEvents = new CopyOnWriteArrayList<>()
+        topic = "${keycloakTestSetup.realmBuilding.name}/$newClientId/$DefaultMQTTHandler.ATTRIBUTE_TOPIC/$MQTTHandler.TOKEN_SINGLE_LEVEL_WILDCARD/$MQTTHandler.TOKEN_MULTI_LEVEL_WILDCARD".toString()
+        newClient.addMessageConsumer(topic, { msg ->
+            restrictedEvents.add(ValueUtil.parse(msg.payload, AttributeEvent.class).get())
+        } as Consumer<MQTTMessage<String>>)
+
+        then: "a subscription should exist"
+        conditions.eventually {
+            assert newClient.topicConsumerMap.get(topic) != null
+            def connection = mqttBrokerService.getUserConnections(keycloakTestSetup.serviceUser2.id)[0]
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.get(getConnectionIDString(connection))?.topicSubscriptionMap?.containsKey(topic)
+        }
+
+        when: "attribute events occur on an unrestricted attribute of a linked asset and on a restricted attribute of an unlinked asset"
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(managerTestSetup.apartment1BathroomId, Asset.LOCATION.name, new GeoJSONPoint(5.454228, 51.446754)))
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(managerTestSetup.apartment1KitchenId, "lights", false))
+
+        and: "an attribute event occurs on a restricted attribute of a linked asset"
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(managerTestSetup.apartment1BathroomId, "lights", false))
+
+        then: "the restricted client should only receive the event of the restricted attribute of the linked asset"
+        conditions.eventually {
+            assert restrictedEvents.size() == 1
+            assert restrictedEvents[0].assetId == managerTestSetup.apartment1BathroomId
+            assert restrictedEvents[0].attributeName == "lights"
+            assert !restrictedEvents[0].value.orElse(true)
+        }
+
+        and: "no other events should be received"
+        new PollingConditions(initialDelay: 1, timeout: 2, delay: 0.5).eventually {
+            assert restrictedEvents.size() == 1
+        }
+
+        when: "another attribute event occurs on a restricted attribute of an unlinked asset"
+        restrictedEvents.clear()
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(managerTestSetup.apartment1KitchenId, "lights", true))
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(managerTestSetup.apartment1BathroomId, "lights", true))
+
+        then: "only the event of the linked asset should be received"
+        conditions.eventually {
+            assert restrictedEvents.size() == 1
+            assert restrictedEvents[0].assetId == managerTestSetup.apartment1BathroomId
+            assert restrictedEvents[0].value.orElse(false)
+        }
 
         when: "both MQTT clients disconnect"
         client.disconnect()
@@ -0,0 +1,260 @@
+package org.openremote.test.mqtt
+
+import com.hivemq.client.mqtt.MqttClient
+import com.hivemq.client.mqtt.datatypes.MqttQos
+import com.hivemq.client.mqtt.mqtt3.Mqtt3AsyncClient
+import org.openremote.container.util.UniqueIdentifierGenerator
+import org.openremote.manager.mqtt.DefaultMQTTHandler
+import org.openremote.manager.mqtt.MQTTBrokerService
+import org.openremote.manager.provisioning.ProvisioningService
+import org.openremote.manager.setup.SetupService
+import org.openremote.model.asset.impl.ThingAsset
+import org.openremote.model.attribute.Attribute
+import org.openremote.model.provisioning.ProvisioningMessage
+import org.openremote.model.provisioning.SuccessResponseMessage
+import org.openremote.model.provisioning.X509ProvisioningConfig
+import org.openremote.model.provisioning.X509ProvisioningData
+import org.openremote.model.provisioning.X509ProvisioningMessage
+import org.openremote.model.security.ClientRole
+import org.openremote.model.syslog.SyslogCategory
+import org.openremote.model.util.ValueUtil
+import org.openremote.setup.integration.KeycloakTestSetup
+import org.openremote.setup.integration.ManagerTestSetup
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.lang.management.ManagementFactory
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+
+import static org.openremote.manager.mqtt.UserAssetProvisioningMQTTHandler.*
+import static org.openremote.model.syslog.SyslogCategory.API
+import static org.openremote.model.value.ValueType.TEXT
+
+/**
+ * In-process MQTT load benchmark; boots the manager (using the same database and identity provider as the other
+ * integration tests) and simulates many MQTT clients on local sockets. Only runs when the OR_MQTT_BENCHMARK environment
+ * variable is set, e.g.:
+ * <pre>
+ * OR_MQTT_BENCHMARK=true OR_MQTT_BENCHMARK_CLIENTS=2000 ./gradlew :test:test --tests "*MqttLoadBenchmarkTest"
+ * </pre>
+ * The provisioning benchmark also needs the CSV of device certificates generated by
+ * <code>test/load1/device_generator.sh</code> (set OR_MQTT_BENCHMARK_DEVICES to its path). Results are logged; CPU is
+ * that of the whole test process so includes the simulated clients.
+ */
+@Requires({ env["OR_MQTT_BENCHMARK"] })
+class MqttLoadBenchmarkTest extends Specification implements ManagerContainerTrait {
+
+    static final LOG = SyslogCategory.getLogger(API, MqttLoadBenchmarkTest.class)
+    static final int CLIENTS = getEnvInt("OR_MQTT_BENCHMARK_CLIENTS", 1000)
+    static final int MESSAGES = getEnvInt("OR_MQTT_BENCHMARK_MESSAGES", 100)
+    static final int MESSAGE_INTERVAL_MILLIS = getEnvInt("OR_MQTT_BENCHMARK_MESSAGE_INTERVAL_MILLIS", 100)
+    static final int CONCURRENCY = getEnvInt("OR_MQTT_BENCHMARK_CONCURRENCY", 200)
+    static final int TIMEOUT_SECONDS = getEnvInt("OR_MQTT_BENCHMARK_TIMEOUT_SECONDS", 300)
+
+    static int getEnvInt(String name, int defaultValue) {
+        String value = System.getenv(name)
+        value != null ? Integer.parseInt(value) : defaultValue
+    }
+
+    static long processCpuNanos() {
+        (ManagementFactory.getOperatingSystemMXBean() as com.sun.management.OperatingSystemMXBean).getProcessCpuTime()
+    }
+
+    static String percentiles(Collection<Long> nanos) {
+        if (nanos.isEmpty()) {
+            return "no samples"
+        }
+        List<Long> sorted = nanos.sort(false)
+        def percentile = { double p -> String.format("%.2f", sorted[Math.min(sorted.size() - 1, (int) Math.floor(p * sorted.size()))] / 1000000d) }
+        "samples=${sorted.size()}, p50=${percentile(0.5)}ms, p90=${percentile(0.9)}ms, p99=${percentile(0.99)}ms, max=${percentile(1)}ms"
+    }
+
+    /**
+     * Runs the action for each item with at most {@link #CONCURRENCY} actions outstanding and returns the duration of
+     * each action.
+     */
+    static <T> List<Long> runConcurrently(Collection<T> items, Closure<CompletableFuture<?>> action) {
+        def semaphore = new Semaphore(CONCURRENCY)
+        def durations = new ConcurrentLinkedQueue<Long>()
+        def futures = items.collect { item ->
+            semaphore.acquire()
+            long start = System.nanoTime()
+            action.call(item).whenComplete { result, error ->
+                semaphore.release()
+                if (error == null) {
+                    durations.add(System.nanoTime() - start)
+                }
+            }
+        }
+        CompletableFuture.allOf(futures as CompletableFuture[]).get(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+        durations as List<Long>
+    }
+
+    static void report(String phase, int count, long startNanos, long startCpuNanos, Collection<Long> latencies) {
+        double seconds = (System.nanoTime() - startNanos) / 1000000000d
+        double cpu = (processCpuNanos() - startCpuNanos) / 1000000000d
+        LOG.info(String.format("MQTT benchmark %s: count=%d, duration=%.2fs, rate=%.1f/s, cpu=%.2fs (%.0f%% of one core), latency: %s",
+            phase, count, seconds, count / seconds, cpu, 100 * cpu / seconds, percentiles(latencies)))
+    }
+
+    static Mqtt3AsyncClient createClient(String clientId, String host, int port) {
+        MqttClient.builder()
+            .useMqttVersion3()
+            .identifier(clientId)
+            .serverHost(host)
+            .serverPort(port)
+            .buildAsync()
+    }
+
+    def "DefaultMQTTHandler connect, subscribe and publish to delivery benchmark"() {
+
+        given: "the container environment is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def managerTestSetup = container.getService(SetupService.class).getTaskOfType(ManagerTestSetup.class)
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def mqttBrokerService = container.getService(MQTTBrokerService.class)
+        def realm = keycloakTestSetup.realmBuilding.name
+        def username = realm + ":" + keycloakTestSetup.serviceUser.username
+        def password = keycloakTestSetup.serviceUser.secret.getBytes(StandardCharsets.UTF_8)
+        def attributeName = "light1Dimmer"
+        def clients = (1..CLIENTS).collect { createClient(UniqueIdentifierGenerator.generateId("benchmark" + it), mqttBrokerService.host, mqttBrokerService.port) }
+        def sendTimes = new ConcurrentHashMap<Integer, Long>()
+        def deliveryLatencies = new ConcurrentLinkedQueue<Long>()
+
+        when: "the clients connect"
+        long start = System.nanoTime()
+        long startCpu = processCpuNanos()
+        def connectLatencies = runConcurrently(clients) { Mqtt3AsyncClient client ->
+            client.connectWith().simpleAuth().username(username).password(password).applySimpleAuth().send()
+        }
+        report("connect", clients.size(), start, startCpu, connectLatencies)
+
+        then: "all clients should be connected"
+        connectLatencies.size() == clients.size()
+
+        when: "the clients subscribe to the value of an attribute"
+        start = System.nanoTime()
+        startCpu = processCpuNanos()
+        def subscribeLatencies = runConcurrently(clients) { Mqtt3AsyncClient client ->
+            String clientId = client.getConfig().getClientIdentifier().get().toString()
+            client.subscribeWith()
+                .topicFilter("$realm/$clientId/$DefaultMQTTHandler.ATTRIBUTE_VALUE_TOPIC/$attributeName/$managerTestSetup.thingId")
+                .qos(MqttQos.AT_MOST_ONCE)
+                .callback { publish ->
+                    long received = System.nanoTime()
+                    Integer value = ValueUtil.parse(StandardCharsets.UTF_8.decode(publish.getPayload().get()).toString(), Integer.class).orElse(null)
+                    Long sent = value != null ? sendTimes.get(value) : null
+                    if (sent != null) {
+                        deliveryLatencies.add(received - sent)
+                    }
+                }
+                .send()
+        }
+        report("subscribe", clients.size(), start, startCpu, subscribeLatencies)
+
+        then: "all subscriptions should be in place"
+        subscribeLatencies.size() == clients.size()
+
+        when: "a client writes the attribute value repeatedly"
+        def publisher = clients[0]
+        def publisherId = publisher.getConfig().getClientIdentifier().get().toString()
+        def writeTopic = "$realm/$publisherId/$DefaultMQTTHandler.ATTRIBUTE_VALUE_WRITE_TOPIC/$attributeName/$managerTestSetup.thingId".toString()
+        start = System.nanoTime()
+        startCpu = processCpuNanos()
+        (1..MESSAGES).each { value ->
+            sendTimes.put(value, System.nanoTime())
+            publisher.publishWith().topic(writeTopic).payload(Integer.toString(value).getBytes(StandardCharsets.UTF_8)).send()
+            Thread.sleep(MESSAGE_INTERVAL_MILLIS)
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS)
+        while (deliveryLatencies.size() < MESSAGES * clients.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100)
+        }
+        report("publish to delivery", deliveryLatencies.size(), start, startCpu, deliveryLatencies)
+
+        then: "messages should have been delivered to the subscribers"
+        !deliveryLatencies.isEmpty()
+
+        cleanup: "the clients disconnect"
+        clients?.each { it.disconnect() }
+    }
+
+    @Requires({ env["OR_MQTT_BENCHMARK_DEVICES"] })
+    def "UserAssetProvisioningMQTTHandler provisioning and reconnect storm benchmark"() {
+
+        given: "the container environment is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
+        def mqttBrokerService = container.getService(MQTTBrokerService.class)
+        def provisioningService = container.getService(ProvisioningService.class)
+        def caPath = System.getenv("OR_MQTT_BENCHMARK_CA") ?: "setup/src/load1/resources/org/openremote/setup/load1/ca.pem"
+
+        and: "the device certificates generated by the load test device generator"
+        Map<String, String> devices = Files.readAllLines(Paths.get(System.getenv("OR_MQTT_BENCHMARK_DEVICES")))
+            .findAll { !it.isBlank() }
+            .take(CLIENTS)
+            .collectEntries { line ->
+                int separatorIndex = line.indexOf(",")
+                [(line.substring(0, separatorIndex)): line.substring(separatorIndex + 1).replace("\\n", "\n")]
+            }
+
+        and: "a provisioning config for the CA of the devices"
+        provisioningService.merge(new X509ProvisioningConfig("Benchmark config",
+            new X509ProvisioningData().setCACertPEM(Files.readString(Paths.get(caPath)))
+        ).setAssetTemplate(
+            ValueUtil.asJSON(
+                new ThingAsset("Benchmark device").addAttributes(new Attribute<>("serialNumber", TEXT, UNIQUE_ID_PLACEHOLDER))
+            ).orElse("")
+        ).setRealm(keycloakTestSetup.realmBuilding.name)
+            .setUserRoles([ClientRole.WRITE_ATTRIBUTES, ClientRole.READ_ASSETS] as ClientRole[]))
+
+        expect: "the devices to be provisioned and then to be provisioned again after reconnecting"
+        ["provisioning", "reconnect storm"].each { phase ->
+            def clients = devices.keySet().collectEntries { uniqueId -> [(uniqueId): createClient(UniqueIdentifierGenerator.generateId(uniqueId), mqttBrokerService.host, mqttBrokerService.port)] }
+
+            long start = System.nanoTime()
+            long startCpu = processCpuNanos()
+            def connectLatencies = runConcurrently(clients.values()) { Mqtt3AsyncClient client -> client.connect() }
+            report("$phase connect", clients.size(), start, startCpu, connectLatencies)
+            assert connectLatencies.size() == clients.size()
+
+            start = System.nanoTime()
+            startCpu = processCpuNanos()
+            def successes = new ConcurrentLinkedQueue<String>()
+            def provisioningLatencies = runConcurrently(clients.entrySet()) { Map.Entry<String, Mqtt3AsyncClient> entry ->
+                def response = new CompletableFuture<ProvisioningMessage>()
+                entry.value.subscribeWith()
+                    .topicFilter("$PROVISIONING_TOKEN/$entry.key/$RESPONSE_TOKEN")
+                    .qos(MqttQos.AT_MOST_ONCE)
+                    .callback { publish ->
+                        response.complete(ValueUtil.parse(StandardCharsets.UTF_8.decode(publish.getPayload().get()).toString(), ProvisioningMessage.class).orElse(null))
+                    }
+                    .send()
+                    .thenCompose {
+                        entry.value.publishWith()
+                            .topic("$PROVISIONING_TOKEN/$entry.key/$REQUEST_TOKEN")
+                            .payload(ValueUtil.asJSON(new X509ProvisioningMessage(devices[entry.key])).orElse("").getBytes(StandardCharsets.UTF_8))
+                            .send()
+                    }
+                    .thenCompose { response }
+                    .thenAccept { message ->
+                        if (message instanceof SuccessResponseMessage) {
+                            successes.add(entry.key)
+                        }
+                    }
+            }
+            report("$phase request to response", provisioningLatencies.size(), start, startCpu, provisioningLatencies)
+            assert successes.size() == clients.size()
+
+            clients.values().each { it.disconnect() }
+        }
+    }
+}
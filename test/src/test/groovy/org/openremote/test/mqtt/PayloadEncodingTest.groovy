@@ -0,0 +1,104 @@
+package org.openremote.test.mqtt
+
+import io.netty.buffer.Unpooled
+import org.apache.activemq.artemis.api.core.ActiveMQBuffers
+import org.openremote.manager.mqtt.PayloadEncoding
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.attribute.AttributeState
+import org.openremote.model.syslog.SyslogCategory
+import spock.lang.Requires
+import spock.lang.Specification
+
+import static org.openremote.model.syslog.SyslogCategory.API
+
+class PayloadEncodingTest extends Specification {
+
+    static final LOG = SyslogCategory.getLogger(API, PayloadEncodingTest.class)
+
+    static AttributeEvent event(int i) {
+        new AttributeEvent("5g6IyJu9wZuFMa4yCgh2sc", "temperature", [value: 20.5d + i, unit: "celsius", valid: true], 1690000000000L + i)
+            .setRealm("master")
+            .setParentId("4bz1tAgOzW4oWeLXFQRSm2")
+            .setPath("5g6IyJu9wZuFMa4yCgh2sc", "4bz1tAgOzW4oWeLXFQRSm2")
+    }
+
+    static long time(int iterations, Closure closure) {
+        long start = System.nanoTime()
+        for (int i = 0; i < iterations; i++) {
+            closure.call(i)
+        }
+        (System.nanoTime() - start).intdiv(iterations)
+    }
+
+    def "Topic type tokens should select the payload encoding"() {
+
+        expect: "the encoding and topic type to be parsed from the token"
+        PayloadEncoding.fromTopicType(topicType) == encoding
+        PayloadEncoding.stripSuffix(topicType) == strippedType
+
+        where:
+        topicType                   | encoding              | strippedType
+        "attributevalue"            | PayloadEncoding.JSON  | "attributevalue"
+        "attributevalue-cbor"       | PayloadEncoding.CBOR  | "attributevalue"
+        "writeattributevalues-CBOR" | PayloadEncoding.CBOR  | "writeattributevalues"
+        "attribute-unknown"         | PayloadEncoding.JSON  | "attribute-unknown"
+    }
+
+    def "Payloads should round trip in each encoding"() {
+
+        given: "an attribute event and a bulk write payload"
+        def attributeEvent = event(1)
+        def attributeStates = [event(1).attributeState, event(2).attributeState] as AttributeState[]
+
+        when: "the payloads are encoded directly into a message buffer and decoded"
+        def buffer = ActiveMQBuffers.dynamicBuffer(256)
+        encoding.encode(attributeEvent, buffer)
+        def decodedEvent = encoding.decode(Unpooled.wrappedBuffer(buffer.toByteBuffer()), AttributeEvent.class)
+        def decodedStates = encoding.decode(Unpooled.wrappedBuffer(encoding.encode(attributeStates)), AttributeState[].class)
+
+        then: "the decoded payloads should match the originals"
+        decodedEvent.attributeRef == attributeEvent.attributeRef
+        decodedEvent.timestamp == attributeEvent.timestamp
+        decodedEvent.value.orElse(null) == attributeEvent.value.orElse(null)
+        decodedStates.length == 2
+        decodedStates[1].ref == attributeStates[1].ref
+        decodedStates[1].value.orElse(null) == attributeStates[1].value.orElse(null)
+
+        where:
+        encoding << PayloadEncoding.values()
+    }
+
+    def "Binary encoding should be smaller than JSON"() {
+
+        expect: "the CBOR payload of an attribute event to be smaller than the JSON payload"
+        PayloadEncoding.CBOR.encode(event(1)).length < PayloadEncoding.JSON.encode(event(1)).length
+    }
+
+    @Requires({ env["OR_MQTT_BENCHMARK"] })
+    def "Report the serialise and parse cost of each encoding"() {
+
+        given: "a set of attribute events"
+        int iterations = 20000
+        def events = (0..<iterations).collect { event(it) }
+        def results = [:]
+
+        when: "each encoding serialises and parses the events (after warming up)"
+        PayloadEncoding.values().each { encoding ->
+            2.times {
+                time(iterations) { int i -> encoding.encode(events[i]) }
+            }
+            long serialise = time(iterations) { int i -> encoding.encode(events[i]) }
+            byte[] payload = encoding.encode(events[0])
+            def buffer = Unpooled.wrappedBuffer(payload)
+            2.times {
+                time(iterations) { int i -> encoding.decode(buffer, AttributeEvent.class) }
+            }
+            long parse = time(iterations) { int i -> encoding.decode(buffer, AttributeEvent.class) }
+            results[encoding] = [serialise: serialise, parse: parse, size: payload.length]
+            LOG.info("MQTT payload encoding $encoding: size=${payload.length} bytes, serialise=${serialise}ns, parse=${parse}ns")
+        }
+
+        then: "the cost of each encoding should have been reported"
+        results.size() == PayloadEncoding.values().length
+    }
+}
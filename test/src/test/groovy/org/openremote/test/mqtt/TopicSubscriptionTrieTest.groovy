@@ -0,0 +1,84 @@
+package org.openremote.test.mqtt
+
+import org.openremote.manager.mqtt.Topic
+import org.openremote.manager.mqtt.TopicSubscriptionTrie
+import org.openremote.model.attribute.AttributeEvent
+import spock.lang.Specification
+
+class TopicSubscriptionTrieTest extends Specification {
+
+    static AttributeEvent event(String assetId, String attributeName, String parentId, String... path) {
+        new AttributeEvent(assetId, attributeName, 1)
+            .setRealm("realm1")
+            .setParentId(parentId)
+            .setPath(path)
+    }
+
+    static Set<String> matches(TopicSubscriptionTrie<String> trie, AttributeEvent event) {
+        def matches = [] as Set<String>
+        trie.forEachMatch(event, { matches.add(it) })
+        matches
+    }
+
+    def "Attribute events should only match subscribed topics"() {
+
+        given: "a trie with attribute topic subscriptions"
+        def trie = new TopicSubscriptionTrie<String>()
+        def topics = [
+            "realm1/client1/attribute/+/#",
+            "realm1/client1/attribute/+/+",
+            "realm1/client1/attribute/temperature/asset2",
+            "realm1/client1/attributevalue/+/asset1/+",
+            "realm1/client1/attribute/+/asset1/#",
+            "realm1/client2/attribute/humidity/asset1/#",
+            "realm2/client1/attribute/+/#"
+        ]
+        topics.each { assert trie.add(Topic.parse(it), it) }
+
+        expect: "all subscriptions to have been added"
+        trie.size() == topics.size()
+
+        and: "a root asset event to match the realm and root asset topics"
+        matches(trie, event("asset1", "temperature", null, "asset1")) == [
+            "realm1/client1/attribute/+/#",
+            "realm1/client1/attribute/+/+",
+            "realm1/client1/attribute/+/asset1/#"
+        ] as Set
+
+        and: "a child asset event to match the asset, children and descendants topics"
+        matches(trie, event("asset2", "temperature", "asset1", "asset2", "asset1")) == [
+            "realm1/client1/attribute/+/#",
+            "realm1/client1/attribute/temperature/asset2",
+            "realm1/client1/attributevalue/+/asset1/+",
+            "realm1/client1/attribute/+/asset1/#"
+        ] as Set
+
+        and: "a grandchild asset event to only match descendants topics for its attribute"
+        matches(trie, event("asset3", "humidity", "asset2", "asset3", "asset2", "asset1")) == [
+            "realm1/client1/attribute/+/#",
+            "realm1/client1/attribute/+/asset1/#",
+            "realm1/client2/attribute/humidity/asset1/#"
+        ] as Set
+
+        when: "subscriptions are removed"
+        trie.remove(Topic.parse("realm1/client1/attribute/+/#"), "realm1/client1/attribute/+/#")
+        trie.remove(Topic.parse("realm1/client2/attribute/humidity/asset1/#"), "realm1/client2/attribute/humidity/asset1/#")
+
+        then: "they should no longer match"
+        trie.size() == topics.size() - 2
+        matches(trie, event("asset3", "humidity", "asset2", "asset3", "asset2", "asset1")) == [
+            "realm1/client1/attribute/+/asset1/#"
+        ] as Set
+    }
+
+    def "Unsupported topics should be rejected"() {
+
+        given: "a trie"
+        def trie = new TopicSubscriptionTrie<String>()
+
+        expect: "topics that aren't asset or attribute subscriptions to be rejected"
+        !trie.add(Topic.parse("realm1/client1/other/+"), "other")
+        !trie.add(Topic.parse("realm1/client1/attribute/+/asset1/asset2"), "attribute")
+        trie.size() == 0
+    }
+}
@@ -0,0 +1,161 @@
+package org.openremote.test.protocol
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.openremote.manager.agent.ProtocolWriteDispatcher
+import org.openremote.model.asset.agent.Protocol
+import org.openremote.model.attribute.AttributeEvent
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class ProtocolWriteDispatcherTest extends Specification {
+
+    def "Writes should be passed to the protocol instance of each agent in order"() {
+
+        given: "a dispatcher and a protocol instance per agent"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.1)
+        def dispatcher = new ProtocolWriteDispatcher(4, 1000, null)
+        def agent1Writes = new ConcurrentLinkedQueue<Integer>()
+        def agent2Writes = new ConcurrentLinkedQueue<Integer>()
+        def protocol1 = Stub(Protocol) {
+            getProtocolName() >> "Protocol1"
+            processLinkedAttributeWrite(_ as AttributeEvent) >> { AttributeEvent event -> agent1Writes.add(event.value.orElse(null) as Integer); true }
+        }
+        def protocol2 = Stub(Protocol) {
+            getProtocolName() >> "Protocol2"
+            processLinkedAttributeWrite(_ as AttributeEvent) >> { AttributeEvent event -> agent2Writes.add(event.value.orElse(null) as Integer); true }
+        }
+
+        when: "writes are dispatched to both agents"
+        (1..500).each {
+            dispatcher.dispatch("agent1", protocol1, new AttributeEvent("asset1", "attribute1", it))
+            dispatcher.dispatch("agent2", protocol2, new AttributeEvent("asset2", "attribute1", it))
+        }
+
+        then: "each protocol instance should receive only its' own writes in the order they were dispatched"
+        conditions.eventually {
+            assert agent1Writes.size() == 500
+            assert agent2Writes.size() == 500
+        }
+        agent1Writes as List == (1..500) as List
+        agent2Writes as List == (1..500) as List
+
+        cleanup:
+        dispatcher?.stop()
+    }
+
+    def "Writes should be dropped when the queue of an agent is full"() {
+
+        given: "a dispatcher and a protocol instance that blocks"
+        def dispatcher = new ProtocolWriteDispatcher(1, 2, null)
+        def blocked = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def protocol = Stub(Protocol) {
+            getProtocolName() >> "Protocol1"
+            processLinkedAttributeWrite(_ as AttributeEvent) >> { blocked.countDown(); release.await(10, TimeUnit.SECONDS); true }
+        }
+
+        when: "the protocol instance is busy processing a write"
+        assert dispatcher.dispatch("agent1", protocol, new AttributeEvent("asset1", "attribute1", 0))
+        assert blocked.await(10, TimeUnit.SECONDS)
+
+        then: "writes up to the queue size should be accepted and the rest dropped"
+        dispatcher.dispatch("agent1", protocol, new AttributeEvent("asset1", "attribute1", 1))
+        dispatcher.dispatch("agent1", protocol, new AttributeEvent("asset1", "attribute1", 2))
+        !dispatcher.dispatch("agent1", protocol, new AttributeEvent("asset1", "attribute1", 3))
+
+        and: "writes to other agents should still be accepted"
+        dispatcher.dispatch("agent2", protocol, new AttributeEvent("asset2", "attribute1", 1))
+
+        cleanup:
+        release.countDown()
+        dispatcher?.stop()
+    }
+
+    def "Pending writes should be discarded when the protocol instance of an agent changes"() {
+
+        given: "a dispatcher and a protocol instance that blocks"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.1)
+        def meterRegistry = new SimpleMeterRegistry()
+        def dispatcher = new ProtocolWriteDispatcher(2, 10, meterRegistry)
+        def blocked = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def processed = new CountDownLatch(1)
+        def oldWrites = new ConcurrentLinkedQueue<Integer>()
+        def newWrites = new ConcurrentLinkedQueue<Integer>()
+        def oldProtocol = Stub(Protocol) {
+            getProtocolName() >> "Protocol1"
+            processLinkedAttributeWrite(_ as AttributeEvent) >> { AttributeEvent event ->
+                oldWrites.add(event.value.orElse(null) as Integer)
+                blocked.countDown()
+                release.await(10, TimeUnit.SECONDS)
+                processed.countDown()
+                true
+            }
+        }
+        def newProtocol = Stub(Protocol) {
+            getProtocolName() >> "Protocol1"
+            processLinkedAttributeWrite(_ as AttributeEvent) >> { AttributeEvent event -> newWrites.add(event.value.orElse(null) as Integer); true }
+        }
+
+        when: "the old protocol instance is busy processing a write and more writes are pending"
+        assert dispatcher.dispatch("agent1", oldProtocol, new AttributeEvent("asset1", "attribute1", 0))
+        assert blocked.await(10, TimeUnit.SECONDS)
+        assert dispatcher.dispatch("agent1", oldProtocol, new AttributeEvent("asset1", "attribute1", 1))
+        assert dispatcher.dispatch("agent1", oldProtocol, new AttributeEvent("asset1", "attribute1", 2))
+        def oldQueue = dispatcher.agentQueues.get("agent1")
+
+        and: "a write is dispatched to a new protocol instance of the agent"
+        assert dispatcher.dispatch("agent1", newProtocol, new AttributeEvent("asset1", "attribute1", 3))
+
+        then: "the new protocol instance should receive the write"
+        conditions.eventually {
+            assert newWrites as List == [3]
+        }
+
+        and: "the pending writes of the old protocol instance should be counted as dropped"
+        meterRegistry.counter("or.protocol.write.dropped").count() == 2d
+
+        when: "the old protocol instance finishes processing its' write"
+        release.countDown()
+
+        then: "the old queue should stop draining without passing the discarded writes to the old protocol instance"
+        processed.await(10, TimeUnit.SECONDS)
+        conditions.eventually {
+            assert !oldQueue.draining.get()
+        }
+        oldWrites as List == [0]
+        dispatcher.queuedWrites.get() == 0
+
+        cleanup:
+        release.countDown()
+        dispatcher?.stop()
+    }
+
+    def "Writes not processed by the protocol instance should be passed to the fallback writer"() {
+
+        given: "a dispatcher with a fallback writer and a protocol instance that doesn't process writes itself"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.1)
+        def fallbackWrites = new ConcurrentLinkedQueue<Integer>()
+        def dispatcher = new ProtocolWriteDispatcher(1, 10, null, { protocol, event -> fallbackWrites.add(event.value.orElse(null) as Integer) })
+        def protocol = Stub(Protocol) {
+            getProtocolName() >> "Protocol1"
+            processLinkedAttributeWrite(_ as AttributeEvent) >> false
+        }
+
+        when: "writes are dispatched"
+        dispatcher.dispatch("agent1", protocol, new AttributeEvent("asset1", "attribute1", 1))
+        dispatcher.dispatch("agent1", protocol, new AttributeEvent("asset1", "attribute1", 2))
+
+        then: "the fallback writer should receive them in order"
+        conditions.eventually {
+            assert fallbackWrites as List == [1, 2]
+        }
+
+        cleanup:
+        dispatcher?.stop()
+    }
+}
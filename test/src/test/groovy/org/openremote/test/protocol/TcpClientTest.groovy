@@ -24,6 +24,7 @@ import io.netty.handler.codec.string.StringDecoder
 import io.netty.handler.codec.string.StringEncoder
 import io.netty.util.CharsetUtil
 import org.openremote.agent.protocol.io.AbstractNettyIOClient
+import org.openremote.agent.protocol.io.NettyEventLoopService
 import org.openremote.agent.protocol.tcp.TCPIOClient
 import org.openremote.agent.protocol.tcp.TCPStringServer
 import org.openremote.container.timer.TimerService
@@ -214,4 +215,76 @@ class TcpClientTest extends Specification implements ManagerContainerTrait {
         client.disconnect()
         echoServer.stop()
     }
+
+    def "Clients should share the event loop group"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 20, delay: 0.2)
+
+        and: "the container is started"
+        def container = startContainer(defaultConfig(), [new TimerService()])
+
+        and: "a simple TCP echo server"
+        def echoServerPort = findEphemeralPort()
+        def echoServer = new TCPStringServer(new InetSocketAddress("127.0.0.1", echoServerPort), ";", Integer.MAX_VALUE, true)
+        echoServer.addMessageConsumer({
+            message, channel, sender -> echoServer.sendMessage(message)
+        })
+        echoServer.start()
+
+        and: "two simple TCP clients"
+        def clients = (1..2).collect {
+            TCPIOClient<String> client = new TCPIOClient<String>("127.0.0.1", echoServerPort)
+            client.setEncoderDecoderProvider({
+                [new StringEncoder(CharsetUtil.UTF_8),
+                 new StringDecoder(CharsetUtil.UTF_8),
+                 new AbstractNettyIOClient.MessageToMessageDecoder<String>(String.class, client)].toArray(new ChannelHandler[0])
+            })
+            client
+        }
+        def lastMessage = null
+        clients[1].addMessageConsumer({
+            message -> lastMessage = message
+        })
+
+        when: "both clients connect"
+        clients*.connect()
+
+        then: "both clients should be connected using the shared event loop group"
+        conditions.eventually {
+            assert clients.every { it.connectionStatus == ConnectionStatus.CONNECTED }
+            assert echoServer.allChannels.size() == 2
+        }
+        clients.every { NettyEventLoopService.isSharedEventLoopGroup(it.workerGroup) }
+
+        when: "one client disconnects"
+        def sharedGroup = NettyEventLoopService.getEventLoopGroup()
+        clients[0].disconnect()
+
+        then: "the shared event loop group should still be running"
+        conditions.eventually {
+            assert clients[0].connectionStatus == ConnectionStatus.DISCONNECTED
+        }
+        !sharedGroup.isShuttingDown()
+
+        and: "the other client should still be able to communicate"
+        clients[1].sendMessage("Test;")
+        conditions.eventually {
+            assert lastMessage == "Test"
+        }
+
+        when: "the other client also disconnects"
+        clients[1].disconnect()
+
+        then: "the shared event loop group should still be running"
+        conditions.eventually {
+            assert clients[1].connectionStatus == ConnectionStatus.DISCONNECTED
+        }
+        !sharedGroup.isShuttingDown()
+        NettyEventLoopService.isSharedEventLoopGroup(sharedGroup)
+
+        cleanup: "the clients and server should be stopped"
+        clients*.disconnect()
+        echoServer.stop()
+    }
 }
@@ -27,7 +27,6 @@ import org.openremote.container.util.UniqueIdentifierGenerator
 import org.openremote.manager.agent.AgentService
 import org.openremote.manager.asset.AssetProcessingService
 import org.openremote.manager.asset.AssetStorageService
-import org.openremote.manager.event.ClientEventService
 import org.openremote.manager.mqtt.DefaultMQTTHandler
 import org.openremote.manager.mqtt.MQTTBrokerService
 import org.openremote.manager.setup.SetupService
@@ -66,7 +65,7 @@ class MQTTClientProtocolTest extends Specification implements ManagerContainerTr
         def brokerService = container.getService(MQTTBrokerService.class)
         def managerTestSetup = container.getService(SetupService.class).getTaskOfType(ManagerTestSetup.class)
         def keycloakTestSetup = container.getService(SetupService.class).getTaskOfType(KeycloakTestSetup.class)
-        def clientEventService = container.getService(ClientEventService.class)
+        def defaultMQTTHandler = brokerService.customHandlers.find {it instanceof DefaultMQTTHandler} as DefaultMQTTHandler
         def mqttHost = brokerService.host
         def mqttPort = brokerService.port
 
@@ -110,7 +109,7 @@ class MQTTClientProtocolTest extends Specification implements ManagerContainerTr
             assert !(agentService.getProtocolInstance(agent.id) as MQTTProtocol).protocolMessageConsumers.isEmpty()
             def connection = brokerService.getConnectionFromClientID(clientId)
             assert connection != null
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
         }
 
         when: "the attribute referenced in the agent link is updated"
@@ -0,0 +1,89 @@
+package org.openremote.test.protocol.websocket
+
+import org.openremote.manager.event.EventSubscriptionRateLimiter
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.attribute.AttributeRef
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+
+import static org.openremote.model.event.shared.EventSubscription.RateLimitMode.FIRST
+import static org.openremote.model.event.shared.EventSubscription.RateLimitMode.LATEST
+
+class EventSubscriptionRateLimiterTest extends Specification {
+
+    static AttributeEvent event(String attributeName, Object value) {
+        new AttributeEvent(new AttributeRef("asset1", attributeName), value)
+    }
+
+    def "Events should be limited per attribute to one per interval"() {
+
+        given: "a rate limiter in latest mode with a controllable clock"
+        def executor = Executors.newSingleThreadScheduledExecutor()
+        def conditions = new PollingConditions(timeout: 5)
+        long now = 0
+        def deferred = new CopyOnWriteArrayList<AttributeEvent>()
+        def rateLimiter = new EventSubscriptionRateLimiter<AttributeEvent>(200, LATEST, executor, { deferred.add(it) }, { now })
+
+        expect: "the first event of each attribute to be delivered immediately"
+        rateLimiter.offer(event("a", 1))
+        rateLimiter.offer(event("b", 1))
+
+        and: "further events within the interval to be held back"
+        !rateLimiter.offer(event("a", 2))
+        !rateLimiter.offer(event("a", 3))
+
+        and: "only the latest held back event to be delivered at the end of the interval"
+        conditions.eventually {
+            assert deferred.size() == 1
+            assert deferred[0].value.orElse(null) == 3
+        }
+
+        when: "the interval has passed without further events"
+        now = 1000
+
+        then: "the next event should be delivered immediately"
+        rateLimiter.offer(event("b", 2))
+
+        and: "a further event within the interval should be held back"
+        !rateLimiter.offer(event("b", 3))
+
+        when: "the limiter is cancelled and the executor has finished any scheduled deliveries"
+        rateLimiter.cancel()
+        executor.shutdown()
+
+        then: "held back events should not be delivered"
+        conditions.eventually {
+            assert executor.isTerminated()
+        }
+        deferred.size() == 1
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "Events within the interval should be discarded in first mode"() {
+
+        given: "a rate limiter in first mode with a controllable clock"
+        def executor = Executors.newSingleThreadScheduledExecutor()
+        long now = 0
+        def deferred = []
+        def rateLimiter = new EventSubscriptionRateLimiter<AttributeEvent>(1000, FIRST, executor, { deferred.add(it) }, { now })
+
+        expect: "only the first event of each interval to be delivered"
+        rateLimiter.offer(event("a", 1))
+        !rateLimiter.offer(event("a", 2))
+
+        when: "the interval has passed"
+        now = 1000
+
+        then: "the next event should be delivered and nothing should have been deferred"
+        rateLimiter.offer(event("a", 3))
+        deferred.isEmpty()
+
+        cleanup:
+        executor.shutdownNow()
+    }
+}
@@ -0,0 +1,114 @@
+package org.openremote.test.protocol.websocket
+
+import org.openremote.manager.event.EventTypeConverters
+import org.openremote.manager.event.SerializedEvent
+import org.openremote.manager.event.SessionEventBuffer
+import org.openremote.manager.event.SharedTriggeredEventSubscription
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.event.TriggeredEventSubscription
+import spock.lang.Specification
+
+import static org.openremote.manager.event.SessionEventBuffer.AddResult.*
+import static org.openremote.manager.event.SessionEventBuffer.SlowConsumerPolicy.*
+
+class SessionEventBufferTest extends Specification {
+
+    static SharedTriggeredEventSubscription triggered(String subscriptionId, String attributeName, Object value) {
+        new SharedTriggeredEventSubscription<>(new SerializedEvent(new AttributeEvent(new AttributeRef("asset1", attributeName), value, 1000L), null), subscriptionId)
+    }
+
+    def "Buffered events should be combined into one message"() {
+
+        given: "a buffer"
+        def buffer = new SessionEventBuffer(10, DROP_OLDEST)
+
+        when: "events for two subscriptions are buffered"
+        buffer.add(triggered("sub1", "temperature", 20d))
+        buffer.add(triggered("sub2", "humidity", 50d))
+        buffer.add(triggered("sub1", "temperature", 21d))
+
+        and: "the buffer is drained"
+        def drained = buffer.drain()
+
+        then: "there should be one message containing the events of each subscription in order"
+        buffer.size() == 0
+        drained.size() == 1
+        def frame = drained[0] as TriggeredEventSubscription[]
+        frame.length == 2
+        frame[0].subscriptionId == "sub1"
+        frame[0].events.collect { it.value.orElse(null) } == [20d, 21d]
+        frame[1].subscriptionId == "sub2"
+        frame[1].events.size() == 1
+
+        and: "the message should contain the JSON of each event"
+        def message = new EventTypeConverters().writeTriggeredEventSubscriptionArray(frame, null)
+        message.startsWith('TRIGGERED:[{"events":[{')
+        message.contains('],"subscriptionId":"sub1"},{"events":[{')
+        message.endsWith('],"subscriptionId":"sub2"}]')
+
+        when: "events for a single subscription are buffered"
+        buffer.add(triggered("sub1", "temperature", 22d))
+        drained = buffer.drain()
+
+        then: "the message should be for that subscription"
+        drained.size() == 1
+        (drained[0] as SharedTriggeredEventSubscription).toMessage().startsWith('TRIGGERED:{"events":[{')
+    }
+
+    def "Other messages should be sent after the events buffered before them"() {
+
+        given: "a buffer"
+        def buffer = new SessionEventBuffer(10, DROP_OLDEST)
+
+        expect: "messages not to be buffered when there are no buffered events"
+        !buffer.addIfPending("EVENT:{}")
+
+        when: "events and messages are buffered"
+        buffer.add(triggered("sub1", "temperature", 20d))
+        buffer.addIfPending("REQUESTRESPONSE:{}")
+        buffer.add(triggered("sub1", "temperature", 21d))
+
+        then: "the drained messages should be in order"
+        def drained = buffer.drain()
+        drained.size() == 3
+        drained[0].events.collect { it.value.orElse(null) } == [20d]
+        drained[1] == "REQUESTRESPONSE:{}"
+        drained[2].events.collect { it.value.orElse(null) } == [21d]
+    }
+
+    def "The slow consumer policy should apply when the buffer is full"() {
+
+        when: "a drop oldest buffer overflows"
+        def buffer = new SessionEventBuffer(2, DROP_OLDEST)
+
+        then: "the oldest event should be dropped"
+        buffer.add(triggered("sub1", "a", 1)) == ADDED
+        buffer.add(triggered("sub1", "a", 2)) == ADDED
+        buffer.add(triggered("sub1", "a", 3)) == DROPPED_OLDEST
+        buffer.drain()[0].events.collect { it.value.orElse(null) } == [2, 3]
+
+        when: "a keep latest buffer receives several values for an attribute"
+        buffer = new SessionEventBuffer(2, KEEP_LATEST)
+
+        then: "values should be coalesced without counting as dropped whilst the buffer isn't full"
+        buffer.add(triggered("sub1", "a", 1)) == ADDED
+        buffer.add(triggered("sub1", "a", 2)) == COALESCED
+        buffer.add(triggered("sub1", "b", 1)) == ADDED
+
+        and: "replacing a value once the buffer is full should count as dropped"
+        buffer.add(triggered("sub1", "b", 2)) == REPLACED
+
+        and: "the oldest event should be dropped for a new attribute once the buffer is full"
+        buffer.add(triggered("sub1", "c", 1)) == DROPPED_OLDEST
+        buffer.drain()[0].events.collect { it.attributeName } == ["b", "c"]
+
+        when: "a disconnect buffer overflows"
+        buffer = new SessionEventBuffer(1, DISCONNECT)
+
+        then: "the overflow should be reported"
+        buffer.add(triggered("sub1", "a", 1)) == ADDED
+        buffer.add(triggered("sub1", "a", 2)) == OVERFLOW
+        buffer.clear() == 1
+    }
+}
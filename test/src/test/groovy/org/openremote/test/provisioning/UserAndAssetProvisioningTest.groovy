@@ -83,6 +83,7 @@ class UserAndAssetProvisioningTest extends Specification implements ManagerConta
         def provisioningService = container.getService(ProvisioningService.class)
         def mqttBrokerService = container.getService(MQTTBrokerService.class)
         def clientEventService = container.getService(ClientEventService.class)
+        def defaultMQTTHandler = mqttBrokerService.customHandlers.find {it instanceof DefaultMQTTHandler} as DefaultMQTTHandler
         def assetProcessingService = container.getService(AssetProcessingService.class)
         def identityService = container.getService(ManagerIdentityService.class)
         def managerTestSetup = container.getService(SetupService.class).getTaskOfType(ManagerTestSetup.class)
@@ -296,8 +297,8 @@ class UserAndAssetProvisioningTest extends Specification implements ManagerConta
             assert device1Client.topicConsumerMap.get(attributeSubscriptionTopic).size() == 1
             connection = mqttBrokerService.getConnectionFromClientID(mqttDevice1ClientId)
             assert connection != null
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.get(getConnectionIDString(connection)).size() == 2
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.get(getConnectionIDString(connection)).topicSubscriptionMap.size() == 2
         }
 
         when: "the client updates one of the provisioned asset's attributes"
@@ -354,7 +355,7 @@ class UserAndAssetProvisioningTest extends Specification implements ManagerConta
 
         then: "all subscriptions should be removed and the client should be disconnected"
         conditions.eventually {
-            assert !clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
+            assert !defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
             assert device1Client.getConnectionStatus() == ConnectionStatus.DISCONNECTED
         }
 
@@ -423,8 +424,8 @@ class UserAndAssetProvisioningTest extends Specification implements ManagerConta
             assert device1Client.topicConsumerMap.get(attributeSubscriptionTopic).size() == 1
             connection = mqttBrokerService.getConnectionFromClientID(mqttDevice1ClientId)
             assert connection != null
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(connection))
-            assert clientEventService.eventSubscriptions.sessionSubscriptionIdMap.get(getConnectionIDString(connection)).size() == 2
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(connection))
+            assert defaultMQTTHandler.connectionSubscriberInfoMap.get(getConnectionIDString(connection)).topicSubscriptionMap.size() == 2
         }
 
         when: "a second device connects"
@@ -697,7 +698,7 @@ class UserAndAssetProvisioningTest extends Specification implements ManagerConta
         conditions.eventually {
             assert mqttBrokerService.getConnectionFromClientID(mqttDevice1ClientId) != null
             assert mqttBrokerService.getConnectionFromClientID(mqttDevice1ClientId) != existingConnection
-            assert !clientEventService.eventSubscriptions.sessionSubscriptionIdMap.containsKey(getConnectionIDString(existingConnection))
+            assert !defaultMQTTHandler.connectionSubscriberInfoMap.containsKey(getConnectionIDString(existingConnection))
         }
 
         when: "the re-connected client re-authenticates"
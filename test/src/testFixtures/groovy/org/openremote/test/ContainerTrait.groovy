@@ -27,6 +27,7 @@ import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder
 import org.jboss.resteasy.client.jaxrs.ResteasyWebTarget
 import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientBuilderImpl
 import org.keycloak.representations.AccessTokenResponse
+import org.openremote.agent.protocol.io.NettyEventLoopService
 import org.openremote.container.Container
 import org.openremote.container.message.MessageBrokerService
 import org.openremote.container.persistence.PersistenceService
@@ -475,6 +476,8 @@ trait ContainerTrait {
         } catch (Exception e) {
             LOG.warn("Failed to stop container", e)
         }
+        // Subsequent tests might use IO clients without the event loop service
+        NettyEventLoopService.reset()
     }
 
     ResteasyWebTarget getClientTarget(UriBuilder serverUri, String accessToken) {
@@ -681,12 +681,16 @@ export class WebSocketEventProvider extends EventProviderImpl {
                 }
             } else if (msg.startsWith(TRIGGERED_MESSAGE_PREFIX)) {
                 const str = msg.substring(TRIGGERED_MESSAGE_PREFIX.length);
-                const triggered = JSON.parse(str) as TriggeredEventSubscription<SharedEvent>;
-                if (triggered.events) {
-                    triggered.events.forEach((event) => {
-                        this._onMessageReceived(triggered.subscriptionId!, event);
-                    });
-                }
+                const parsed = JSON.parse(str) as TriggeredEventSubscription<SharedEvent> | TriggeredEventSubscription<SharedEvent>[];
+                // Events of several subscriptions can be batched into one message
+                const triggeredArray = Array.isArray(parsed) ? parsed : [parsed];
+                triggeredArray.forEach((triggered) => {
+                    if (triggered.events) {
+                        triggered.events.forEach((event) => {
+                            this._onMessageReceived(triggered.subscriptionId!, event);
+                        });
+                    }
+                });
             } else if (msg.startsWith(EVENT_REQUEST_RESPONSE_MESSAGE_PREFIX)) {
                 const str = msg.substring(EVENT_REQUEST_RESPONSE_MESSAGE_PREFIX.length);
                 const event = JSON.parse(str) as EventRequestResponseWrapper<SharedEvent>;
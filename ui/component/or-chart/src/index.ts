@@ -1147,6 +1147,8 @@ export class OrChart extends translate(i18next)(LitElement) {
                     console.error("Could not grab width of the Chart for estimating amount of datapoints. Using 10 points instead.")
                 }
                 query.amountOfPoints = (this._chartElem.clientWidth == 0) ? 100 : Math.round(this._chartElem.clientWidth / 10); // set amount of datapoints based on current chart width.
+            } else if(query.type == 'm4' && !query.width) {
+                query.width = (this._chartElem.clientWidth == 0) ? 100 : this._chartElem.clientWidth; // one bucket per pixel column; at most 4 datapoints each
             } else if(query.type == 'interval' && !query.interval) {
                 const diffInHours = (this.datapointQuery.toTimestamp! - this.datapointQuery.fromTimestamp!) / 1000 / 60 / 60;
                 const intervalArr = this._getInterval(diffInHours);
@@ -45,7 +45,7 @@ function getDefaultTimePresetOptions(): Map<string, TimePresetCallback> {
 }
 
 function getDefaultSamplingOptions(): Map<string, string> {
-    return new Map<string, string>([["lttb", 'lttb'], ["withInterval", 'interval']]);
+    return new Map<string, string>([["lttb", 'lttb'], ["m4", 'm4'], ["withInterval", 'interval']]);
 }
 
 function getDefaultWidgetConfig(): ChartWidgetConfig {